@@ -4,8 +4,10 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Log4j2
+@EnableScheduling
 @EnableJpaRepositories(basePackages = "su.kartushin.busAPI.repositories")
 @SpringBootApplication(scanBasePackages = "su.kartushin.busAPI")
 public class BusAPIApplication {
@@ -13,6 +13,126 @@ public class Config {
         return getValue("ServerToken");
     }
 
+    /**
+     * Таймаут установки соединения с VPN нодой в миллисекундах
+     * @return таймаут, по умолчанию 5000
+     */
+    public static int getNodeConnectTimeout(){
+        return getIntValue("NodeConnectTimeout", 5000);
+    }
+
+    /**
+     * Таймаут чтения ответа от VPN ноды в миллисекундах
+     * @return таймаут, по умолчанию 15000
+     */
+    public static int getNodeReadTimeout(){
+        return getIntValue("NodeReadTimeout", 15000);
+    }
+
+    /**
+     * Таймаут записи запроса в VPN ноду в миллисекундах
+     * @return таймаут, по умолчанию 15000
+     */
+    public static int getNodeWriteTimeout(){
+        return getIntValue("NodeWriteTimeout", 15000);
+    }
+
+    /**
+     * Максимальное количество простаивающих соединений в пуле одной ноды
+     * @return количество соединений, по умолчанию 16
+     */
+    public static int getNodeMaxIdleConnections(){
+        return getIntValue("NodeMaxIdleConnections", 16);
+    }
+
+    /**
+     * Время жизни простаивающего соединения с нодой в секундах
+     * @return время в секундах, по умолчанию 300
+     */
+    public static int getNodeKeepAlive(){
+        return getIntValue("NodeKeepAlive", 300);
+    }
+
+    /**
+     * Максимальное количество одновременных асинхронных запросов к одной ноде
+     * @return количество запросов, по умолчанию 64
+     */
+    public static int getNodeMaxRequestsPerHost(){
+        return getIntValue("NodeMaxRequestsPerHost", 64);
+    }
+
+    /**
+     * Размер скользящего окна вызовов предохранителя ноды
+     * @return количество вызовов, по умолчанию 50
+     */
+    public static int getBreakerWindowSize(){
+        return getIntValue("BreakerWindowSize", 50);
+    }
+
+    /**
+     * Минимальное количество вызовов в окне, после которого предохранитель оценивает ноду
+     * @return количество вызовов, по умолчанию 10
+     */
+    public static int getBreakerMinimumCalls(){
+        return getIntValue("BreakerMinimumCalls", 10);
+    }
+
+    /**
+     * Процент ошибочных вызовов, при котором предохранитель размыкается
+     * @return процент, по умолчанию 50
+     */
+    public static int getBreakerFailureRateThreshold(){
+        return getIntValue("BreakerFailureRateThreshold", 50);
+    }
+
+    /**
+     * Длительность вызова в миллисекундах, после которой он считается медленным
+     * @return длительность, по умолчанию 5000
+     */
+    public static int getBreakerSlowCallDuration(){
+        return getIntValue("BreakerSlowCallDuration", 5000);
+    }
+
+    /**
+     * Процент медленных вызовов, при котором предохранитель размыкается
+     * @return процент, по умолчанию 80
+     */
+    public static int getBreakerSlowCallRateThreshold(){
+        return getIntValue("BreakerSlowCallRateThreshold", 80);
+    }
+
+    /**
+     * Время в миллисекундах, на которое предохранитель размыкается
+     * @return время, по умолчанию 30000
+     */
+    public static int getBreakerOpenDuration(){
+        return getIntValue("BreakerOpenDuration", 30000);
+    }
+
+    /**
+     * Количество пробных вызовов в полуоткрытом состоянии предохранителя
+     * @return количество вызовов, по умолчанию 5
+     */
+    public static int getBreakerHalfOpenCalls(){
+        return getIntValue("BreakerHalfOpenCalls", 5);
+    }
+
+    /**
+     * Ограничение одновременных запросов к ноде, если у ноды не задан maxConnection
+     * @return количество запросов, по умолчанию 32
+     */
+    public static int getBulkheadDefaultLimit(){
+        return getIntValue("BulkheadDefaultLimit", 32);
+    }
+
+    /**
+     * Время ожидания свободного слота ноды в миллисекундах
+     * @return время ожидания, по умолчанию 2000
+     */
+    public static int getBulkheadWaitTimeout(){
+        return getIntValue("BulkheadWaitTimeout", 2000);
+    }
+
     /**
      * Метод получения значения переменной окружения
      * @param variableName название переменной окружения
@@ -30,4 +150,26 @@ public class Config {
             return null;
         }
     }
+
+    /**
+     * Метод получения числового значения необязательной переменной окружения
+     * @param variableName название переменной окружения
+     * @param defaultValue значение по умолчанию
+     * @return значение переменной или defaultValue, если переменная не найдена или некорректна
+     */
+    private static int getIntValue(String variableName, int defaultValue){
+        String value = System.getenv(variableName);
+
+        if (value == null) {
+            log.debug("Переменная окружения {} не найдена, используется значение {}", variableName, defaultValue);
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Переменная окружения {} содержит некорректное число: {}", variableName, value);
+            return defaultValue;
+        }
+    }
 }
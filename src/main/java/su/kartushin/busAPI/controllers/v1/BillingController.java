@@ -1,18 +1,111 @@
 package su.kartushin.busAPI.controllers.v1;
 
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.Balance;
 import su.kartushin.busAPI.objects.Billing;
+import su.kartushin.busAPI.objects.ResponseObject;
 import su.kartushin.busAPI.services.BillingService;
 
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
 @RestController
 @RequestMapping("/api/v1/billing")
 @Tag(name = "Billing Controller", description = "API для работы с Билингом")
+@Log4j2
 public class BillingController extends AbstractCrudController<Billing, Long> {
 
     public BillingController(){
         service = new BillingService();
         entity = "Billing";
     }
+
+    @Operation(summary = "Получить баланс пользователя")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Пользователь не найден")
+    })
+    @GetMapping("/user/{userId}/balance")
+    public ResponseEntity<ResponseObject<Balance>> getBalance(
+            @Parameter(description = "ID пользователя", required = true)
+            @PathVariable("userId") long userId,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на получение баланса пользователя с ID {}", userId);
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/billing/user/{}/balance", userId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ((BillingService)service).balance(userId)
+                .map(data -> ResponseEntity.ok(new ResponseObject<>("success", "Баланс получен", data)))
+                .orElseGet(() -> ResponseEntity.status(404).body(
+                        new ResponseObject<>("error", "Пользователь не найден")));
+    }
+
+    @Operation(summary = "Получить последние записи журнала пользователя")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/user/{userId}/history")
+    public ResponseEntity<ResponseObject<List<Billing>>> getHistory(
+            @Parameter(description = "ID пользователя", required = true)
+            @PathVariable("userId") long userId,
+            @Parameter(description = "Количество записей")
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на получение журнала пользователя с ID {}", userId);
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/billing/user/{}/history", userId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Журнал получен",
+                ((BillingService)service).history(userId, limit)));
+    }
+
+    @Operation(summary = "Сбросить баланс пользователя из кэша",
+            description = "Нужно после исправления таблицы балансов в обход журнала")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @DeleteMapping("/user/{userId}/balance/cache")
+    public ResponseEntity<ResponseObject<Object>> invalidateBalance(
+            @Parameter(description = "ID пользователя", required = true)
+            @PathVariable("userId") long userId,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на сброс баланса пользователя с ID {} из кэша", userId);
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/billing/user/{}/balance/cache", userId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        ((BillingService)service).invalidateBalance(userId);
+        return ResponseEntity.ok(new ResponseObject<>("success", "Баланс сброшен из кэша"));
+    }
 }
@@ -0,0 +1,99 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.objects.BulkActionJob;
+import su.kartushin.busAPI.objects.BulkActionRequest;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.BulkActionService;
+
+import java.util.Arrays;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/account/action")
+@Tag(name = "Bulk Action Controller", description = "API для массовой блокировки, разблокировки и перезагрузки аккаунтов")
+@Log4j2
+public class BulkActionController {
+
+    @Autowired
+    private BulkActionService service;
+
+    @Operation(summary = "Запустить массовое действие над аккаунтами")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Задача запущена"),
+            @ApiResponse(responseCode = "400", description = "Неизвестное действие или некорректный выбор аккаунтов"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @PostMapping("/{action}")
+    public ResponseEntity<ResponseObject<BulkActionJob>> start(
+            @Parameter(description = "Действие: block, unblock или restart")
+            @PathVariable("action") String action,
+            @Parameter(description = "Выбор аккаунтов: список ID, ID чата, ID сервера или страна")
+            @RequestBody BulkActionRequest body,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на массовое действие {} с телом {}", action, body);
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/account/action/{}", action);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var optAction = Arrays.stream(Action.values())
+                .filter(value -> value.name().equalsIgnoreCase(action))
+                .findFirst();
+        if (optAction.isEmpty()) {
+            log.error("Неизвестное действие {}", action);
+            return ResponseEntity.status(400).body(new ResponseObject<>("error", "Неизвестное действие"));
+        }
+
+        var result = service.start(optAction.get(), body, requestID);
+        if (result.isPresent())
+            return ResponseEntity.status(202).body(new ResponseObject<>("success", "Задача запущена", result.get()));
+        else
+            return ResponseEntity.status(400).body(
+                    new ResponseObject<>("error", "Нужно задать ровно одно: accountIds, chatId, serverId или country"));
+    }
+
+    @Operation(summary = "Получить прогресс и результаты массового действия")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Задача не найдена")
+    })
+    @GetMapping("/job/{jobId}")
+    public ResponseEntity<ResponseObject<BulkActionJob>> getJob(
+            @Parameter(description = "ID задачи")
+            @PathVariable("jobId") String jobId,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на получение массового действия с ID {}", jobId);
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/account/action/job/{}", jobId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.find(jobId);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Задача найдена", result.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Задача не найдена"));
+    }
+}
@@ -0,0 +1,56 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.BalanceCache;
+import su.kartushin.busAPI.services.ConfigService;
+import su.kartushin.busAPI.utils.BoundedCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/cache")
+@Tag(name = "Cache Controller", description = "API для контроля кэшей")
+@Log4j2
+public class CacheController {
+
+    @Autowired
+    protected ConfigService configService;
+    @Autowired
+    protected BalanceCache balanceCache;
+
+    /**
+     * Получить счетчики кэшей.
+     */
+    @Operation(summary = "Получить счетчики кэшей")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping
+    public ResponseEntity<ResponseObject<List<BoundedCache.Stats>>> getStats(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение счетчиков кэшей");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/cache");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var stats = new ArrayList<>(configService.cacheStats());
+        stats.addAll(balanceCache.stats());
+        return ResponseEntity.ok(new ResponseObject<>("success", "Счетчики кэшей получены", stats));
+    }
+}
@@ -0,0 +1,116 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.enums.Country;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.CapacityIndex;
+
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/capacity")
+@Tag(name = "Capacity Controller", description = "API для контроля загрузки серверов")
+@Log4j2
+public class CapacityController {
+
+    @Autowired
+    private CapacityIndex capacityIndex;
+
+    @Operation(summary = "Получить загрузку всех серверов")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/server")
+    public ResponseEntity<ResponseObject<List<CapacityIndex.ServerCapacity>>> getServers(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение загрузки серверов");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/capacity/server");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Загрузка серверов получена",
+                capacityIndex.servers()));
+    }
+
+    @Operation(summary = "Получить загрузку сервера")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Сервер не найден")
+    })
+    @GetMapping("/server/{sId}")
+    public ResponseEntity<ResponseObject<CapacityIndex.ServerCapacity>> getServer(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение загрузки сервера с ID {}", sId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/capacity/server/{}", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var capacity = capacityIndex.server(sId);
+        if (capacity == null) {
+            log.warn("Сервер с ID {} не найден в индексе загрузки", sId);
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Сервер не найден"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Загрузка сервера получена", capacity));
+    }
+
+    @Operation(summary = "Получить загрузку серверов по странам")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/country")
+    public ResponseEntity<ResponseObject<List<CapacityIndex.CountryCapacity>>> getCountries(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение загрузки по странам");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/capacity/country");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Загрузка по странам получена",
+                capacityIndex.countries()));
+    }
+
+    @Operation(summary = "Получить загрузку серверов страны")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/country/{country}")
+    public ResponseEntity<ResponseObject<CapacityIndex.CountryCapacity>> getCountry(
+            @Parameter(description = "Страна") @PathVariable("country") Country country,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение загрузки серверов страны {}", country);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/capacity/country/{}", country);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Загрузка серверов страны получена",
+                capacityIndex.country(country)));
+    }
+}
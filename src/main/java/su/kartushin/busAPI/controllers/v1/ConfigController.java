@@ -10,11 +10,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import su.kartushin.busAPI.objects.Config;
+import su.kartushin.busAPI.objects.ConfigFile;
 import su.kartushin.busAPI.objects.ResponseObject;
 import su.kartushin.busAPI.services.ConfigService;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
 
@@ -41,7 +43,7 @@ public class ConfigController {
             @ApiResponse(responseCode = "404", description = "Конфиги не найдены")
     })
     @GetMapping("/")
-    public ResponseEntity<ResponseObject<List<Config>>> getAllConfigs(
+    public CompletableFuture<ResponseEntity<ResponseObject<List<Config>>>> getAllConfigs(
             @Parameter(description = "ID аккаунта") @PathVariable("aId") long aId,
             @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
             @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
@@ -49,17 +51,17 @@ public class ConfigController {
         log.info("Запрос на получение всех конфигов для аккаунта с ID {}", aId);
         if (incorrectAuthorization(authHeader)) {
             log.info("Авторизация не пройдена для получения конфигов аккаунта с ID {}", aId);
-            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!")));
         }
 
-        Optional<List<Config>> result = service.findAll(aId, requestID);
-        return result.map(configs -> {
+        return service.findAllAsync(aId, requestID).thenApply(result -> result.map(configs -> {
             log.info("Конфиги успешно получены для аккаунта с ID {}", aId);
             return ResponseEntity.ok(new ResponseObject<>("success", "Конфиги успешно получены", configs));
         }).orElseGet(() -> {
             log.error("Конфиги не найдены для аккаунта с ID {}", aId);
             return ResponseEntity.status(404).body(new ResponseObject<>("error", "Конфиги не найдены"));
-        });
+        }));
     }
 
     /**
@@ -193,19 +195,22 @@ public class ConfigController {
 
     /**
      * Получить файл конфига.
+     * Ответ содержит ETag; при совпадении If-None-Match возвращается 304 без тела.
      */
     @Operation(summary = "Получить файл конфига")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Файл успешно получен"),
+            @ApiResponse(responseCode = "304", description = "Файл не изменился"),
             @ApiResponse(responseCode = "403", description = "Не авторизован"),
             @ApiResponse(responseCode = "404", description = "Конфиг не найден")
     })
     @GetMapping("/{name}/file")
-    public ResponseEntity<ResponseObject> getConfigFile(
+    public ResponseEntity<ResponseObject<String>> getConfigFile(
             @Parameter(description = "ID аккаунта") @PathVariable("aId") long aId,
             @Parameter(description = "Имя конфига") @PathVariable("name") String name,
             @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
-            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID,
+            @Parameter(description = "ETag файла, уже имеющегося у клиента") @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch
     ) {
         log.info("Запрос на получение файла конфига {} для аккаунта с ID {}", name, aId);
         if (incorrectAuthorization(authHeader)) {
@@ -213,13 +218,18 @@ public class ConfigController {
             return ResponseEntity.status(403).build();
         }
 
-        Optional<String> fileContent = service.getConfigFile(aId, name, requestID);
-        return fileContent.map(content -> {
+        Optional<ConfigFile> file = service.getConfigFileWithTag(aId, name, requestID);
+        return file.map(configFile -> {
+            if (configFile.matches(ifNoneMatch)) {
+                log.info("Файл конфига {} аккаунта с ID {} не изменился", name, aId);
+                return ResponseEntity.status(304).eTag(configFile.getEtag()).<ResponseObject<String>>build();
+            }
             log.info("Файл конфига {} успешно получен для аккаунта с ID {}", name, aId);
-            return ResponseEntity.ok(new ResponseObject("success", "Файл получен", content));
+            return ResponseEntity.ok().eTag(configFile.getEtag())
+                    .body(new ResponseObject<>("success", "Файл получен", configFile.getContent()));
         }).orElseGet(() -> {
             log.error("Файл конфига {} не найден для аккаунта с ID {}", name, aId);
-            return ResponseEntity.status(404).body(new ResponseObject("error", "Файл не найден"));
+            return ResponseEntity.status(404).body(new ResponseObject<String>("error", "Файл не найден"));
         });
     }
-}
\ No newline at end of file
+}
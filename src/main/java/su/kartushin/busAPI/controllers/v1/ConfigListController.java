@@ -0,0 +1,59 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.AccountConfigs;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.ConfigService;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/config")
+@Tag(name = "Config List Controller", description = "API для получения конфигов нескольких аккаунтов")
+@Log4j2
+public class ConfigListController {
+
+    @Autowired
+    private ConfigService service;
+
+    /**
+     * Получить конфиги всех аккаунтов пользователя или аккаунтов из списка.
+     */
+    @Operation(summary = "Получить конфиги нескольких аккаунтов")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос, результат по каждому аккаунту"),
+            @ApiResponse(responseCode = "400", description = "Не передан ни chatId, ни accountIds, или передано оба"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/")
+    public CompletableFuture<ResponseEntity<ResponseObject<List<AccountConfigs>>>> getConfigs(
+            @Parameter(description = "ID чата пользователя") @RequestParam(value = "chatId", required = false) String chatId,
+            @Parameter(description = "Список ID аккаунтов") @RequestParam(value = "accountIds", required = false) List<Long> accountIds,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение конфигов аккаунтов: chatId {}, accountIds {}", chatId, accountIds);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/config/");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!")));
+        }
+
+        return service.findAllForAccountsAsync(chatId, accountIds, requestID).thenApply(result -> result.map(configs -> {
+            log.info("Конфиги получены для {} аккаунтов", configs.size());
+            return ResponseEntity.ok(new ResponseObject<>("success", "Конфиги получены", configs));
+        }).orElseGet(() -> ResponseEntity.status(400).body(
+                new ResponseObject<>("error", "Нужно передать либо chatId, либо accountIds"))));
+    }
+}
@@ -0,0 +1,187 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.utils.NodeBulkhead;
+import su.kartushin.busAPI.utils.NodeBulkheadRegistry;
+import su.kartushin.busAPI.utils.NodeCircuitBreaker;
+import su.kartushin.busAPI.utils.NodeCircuitBreakerRegistry;
+import su.kartushin.busAPI.utils.NodeHealth;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/node")
+@Tag(name = "Node Controller", description = "API для контроля состояния VPN нод")
+@Log4j2
+public class NodeController {
+
+    /**
+     * Получить состояние предохранителей всех нод.
+     */
+    @Operation(summary = "Получить состояние предохранителей всех нод")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/breaker")
+    public ResponseEntity<ResponseObject<List<NodeCircuitBreaker.Snapshot>>> getBreakers(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение состояния предохранителей нод");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/node/breaker");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Состояние предохранителей получено",
+                NodeCircuitBreakerRegistry.snapshots()));
+    }
+
+    /**
+     * Получить состояние предохранителя ноды.
+     */
+    @Operation(summary = "Получить состояние предохранителя ноды")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "К ноде еще не было запросов")
+    })
+    @GetMapping("/{sId}/breaker")
+    public ResponseEntity<ResponseObject<NodeCircuitBreaker.Snapshot>> getBreaker(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение состояния предохранителя ноды с ID {}", sId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/node/{}/breaker", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var snapshot = NodeCircuitBreakerRegistry.snapshot(sId);
+        if (snapshot == null) {
+            log.warn("Предохранитель ноды с ID {} не найден", sId);
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Предохранитель не найден"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Состояние предохранителя получено", snapshot));
+    }
+
+    /**
+     * Получить счетчики ограничителей запросов всех нод.
+     */
+    @Operation(summary = "Получить счетчики ограничителей запросов всех нод")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/bulkhead")
+    public ResponseEntity<ResponseObject<List<NodeBulkhead.Snapshot>>> getBulkheads(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение счетчиков ограничителей нод");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/node/bulkhead");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Счетчики ограничителей получены",
+                NodeBulkheadRegistry.snapshots()));
+    }
+
+    /**
+     * Получить счетчики ограничителя запросов ноды.
+     */
+    @Operation(summary = "Получить счетчики ограничителя запросов ноды")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "К ноде еще не было запросов")
+    })
+    @GetMapping("/{sId}/bulkhead")
+    public ResponseEntity<ResponseObject<NodeBulkhead.Snapshot>> getBulkhead(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение счетчиков ограничителя ноды с ID {}", sId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/node/{}/bulkhead", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var snapshot = NodeBulkheadRegistry.snapshot(sId);
+        if (snapshot == null) {
+            log.warn("Ограничитель ноды с ID {} не найден", sId);
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Ограничитель не найден"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Счетчики ограничителя получены", snapshot));
+    }
+
+    /**
+     * Получить результаты проверок доступности всех нод.
+     */
+    @Operation(summary = "Получить результаты проверок доступности всех нод")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/health")
+    public ResponseEntity<ResponseObject<List<NodeHealth.Snapshot>>> getHealth(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение доступности нод");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/node/health");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Доступность нод получена",
+                NodeHealthRegistry.snapshots()));
+    }
+
+    /**
+     * Получить результаты проверок доступности ноды.
+     */
+    @Operation(summary = "Получить результаты проверок доступности ноды")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Нода еще не проверялась")
+    })
+    @GetMapping("/{sId}/health")
+    public ResponseEntity<ResponseObject<NodeHealth.Snapshot>> getNodeHealth(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение доступности ноды с ID {}", sId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/node/{}/health", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var snapshot = NodeHealthRegistry.snapshot(sId);
+        if (snapshot == null) {
+            log.warn("Нода с ID {} еще не проверялась", sId);
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Нода еще не проверялась"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Доступность ноды получена", snapshot));
+    }
+}
@@ -0,0 +1,30 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+
+/**
+ * Обработчик ошибок обращения к VPN нодам для всех контроллеров.
+ */
+@RestControllerAdvice
+@Log4j2
+public class NodeExceptionHandler {
+
+    /**
+     * Быстрый отказ при недоступности ноды.
+     *
+     * @param e Исключение недоступности ноды
+     * @return Ответ 503 с объектом {@link ResponseObject}
+     */
+    @ExceptionHandler(NodeUnavailableException.class)
+    public ResponseEntity<ResponseObject<Long>> handleNodeUnavailable(NodeUnavailableException e) {
+        log.warn("Запрос отклонен: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ResponseObject<>("unavailable", e.getMessage(), e.getServerId()));
+    }
+}
@@ -0,0 +1,144 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.AccountCommand;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.services.AccountCommandService;
+import su.kartushin.busAPI.services.AccountService;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/operation")
+@Tag(name = "Operation Controller", description = "API для асинхронных операций над аккаунтами")
+@Log4j2
+public class OperationController {
+
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private AccountCommandService commandService;
+
+    @Operation(summary = "Поставить создание аккаунта в очередь")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Операция принята"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Пользователь или сервер не найден")
+    })
+    @PostMapping("/server/{sId}/account/")
+    public ResponseEntity<ResponseObject<AccountCommand>> create(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Аккаунт с идентификатором чата") @RequestBody Account body,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на асинхронное создание аккаунта с телом {}", body);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/operation/server/{}/account/", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        body.setServer(VPNProxy.builder().id(sId).build());
+        return accepted(accountService.enqueueCreate(body, requestID));
+    }
+
+    @Operation(summary = "Поставить удаление аккаунта в очередь")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Операция принята"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Аккаунт не найден")
+    })
+    @DeleteMapping("/server/{sId}/account/{id}")
+    public ResponseEntity<ResponseObject<AccountCommand>> delete(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "ID аккаунта") @PathVariable("id") long id,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на асинхронное удаление аккаунта с ID {}", id);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/operation/server/{}/account/{}", sId, id);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return accepted(accountService.enqueueDelete(sId, id, requestID));
+    }
+
+    @Operation(summary = "Поставить действие над аккаунтом в очередь")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Операция принята"),
+            @ApiResponse(responseCode = "400", description = "Неизвестное действие"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Аккаунт не найден")
+    })
+    @PostMapping("/server/{sId}/account/{action}/{id}")
+    public ResponseEntity<ResponseObject<AccountCommand>> action(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Действие: block, unblock или restart") @PathVariable("action") String action,
+            @Parameter(description = "ID аккаунта") @PathVariable("id") long id,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на асинхронное действие {} над аккаунтом с ID {}", action, id);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/operation/server/{}/account/{}/{}", sId, action, id);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var optAction = Arrays.stream(Action.values())
+                .filter(value -> value.name().equalsIgnoreCase(action))
+                .findFirst();
+        if (optAction.isEmpty()) {
+            log.error("Неизвестное действие {}", action);
+            return ResponseEntity.status(400).body(new ResponseObject<>("error", "Неизвестное действие"));
+        }
+
+        return accepted(accountService.enqueueAction(sId, id, optAction.get(), requestID));
+    }
+
+    @Operation(summary = "Получить статус операции")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Операция не найдена")
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<ResponseObject<AccountCommand>> get(
+            @Parameter(description = "ID операции") @PathVariable("id") long id,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение операции с ID {}", id);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/operation/{}", id);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = commandService.find(id);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Операция найдена", result.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Операция не найдена"));
+    }
+
+    private static ResponseEntity<ResponseObject<AccountCommand>> accepted(Optional<AccountCommand> command) {
+        if (command.isPresent())
+            return ResponseEntity.status(202).body(new ResponseObject<>("success", "Операция принята", command.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Аккаунт, пользователь или сервер не найден"));
+    }
+}
@@ -0,0 +1,55 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.PlacementService;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/placement")
+@Tag(name = "Placement Controller", description = "API для создания аккаунтов с автоматическим выбором сервера")
+@Log4j2
+public class PlacementController {
+
+    @Autowired
+    private PlacementService service;
+
+    @Operation(summary = "Создать аккаунт на наименее загруженном сервере страны")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Сущность не создана")
+    })
+    @PostMapping("/")
+    public ResponseEntity<ResponseObject<Account>> place(
+            @Parameter(description = "Аккаунт: идентификатор чата и страна")
+            @RequestBody Account body,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на размещение аккаунта с телом {}", body);
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/placement/");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.place(body.getChatId(), body.getCountry(), requestID);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Аккаунт успешно создан", result.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Ошибка при размещении аккаунта"));
+    }
+}
@@ -0,0 +1,58 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.ProvisionItem;
+import su.kartushin.busAPI.objects.ProvisionResult;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.ProvisioningService;
+
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/account/bulk")
+@Tag(name = "Provisioning Controller", description = "API для массового создания аккаунтов")
+@Log4j2
+public class ProvisioningController {
+
+    @Autowired
+    private ProvisioningService service;
+
+    @Operation(summary = "Создать аккаунты списком")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Запрос обработан, результат по каждому элементу"),
+            @ApiResponse(responseCode = "400", description = "Пустой или слишком большой список"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @PostMapping("/")
+    public ResponseEntity<ResponseObject<List<ProvisionResult>>> provision(
+            @Parameter(description = "Список: идентификатор чата и сервер или страна")
+            @RequestBody List<ProvisionItem> body,
+            @Parameter(description = "Заголовок авторизации")
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID")
+            @RequestHeader(value = "requestID", required = false) String requestID
+    ){
+        log.info("Запрос на массовое создание аккаунтов: {} элементов", body == null ? 0 : body.size());
+
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/account/bulk/");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.provision(body, requestID);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Запрос обработан", result.get()));
+        else
+            return ResponseEntity.status(400).body(new ResponseObject<>("error", "Пустой или слишком большой список"));
+    }
+}
@@ -0,0 +1,123 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.ReconcileCheckpoint;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.ReconciliationService;
+
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/reconcile")
+@Tag(name = "Reconciliation Controller", description = "API для сверки аккаунтов в базе с нодами")
+@Log4j2
+public class ReconciliationController {
+
+    @Autowired
+    private ReconciliationService service;
+
+    @Operation(summary = "Запустить сверку всех нод")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Сверка запущена"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "409", description = "Сверка уже выполняется")
+    })
+    @PostMapping("/")
+    public ResponseEntity<ResponseObject<Object>> startAll(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на сверку всех нод");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/reconcile/");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        if (service.startAll())
+            return ResponseEntity.status(202).body(new ResponseObject<>("success", "Сверка запущена"));
+        else
+            return ResponseEntity.status(409).body(new ResponseObject<>("error", "Сверка уже выполняется"));
+    }
+
+    @Operation(summary = "Запустить сверку ноды")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Сверка запущена"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Сервер не найден"),
+            @ApiResponse(responseCode = "409", description = "Сверка ноды уже выполняется")
+    })
+    @PostMapping("/{sId}")
+    public ResponseEntity<ResponseObject<Object>> start(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на сверку сервера с ID {}", sId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/reconcile/{}", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.start(sId);
+        if (result.isEmpty())
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Сервер не найден"));
+        if (result.get())
+            return ResponseEntity.status(202).body(new ResponseObject<>("success", "Сверка запущена"));
+        else
+            return ResponseEntity.status(409).body(new ResponseObject<>("error", "Сверка ноды уже выполняется"));
+    }
+
+    @Operation(summary = "Получить состояние сверки и расхождения по всем нодам")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/")
+    public ResponseEntity<ResponseObject<List<ReconcileCheckpoint>>> getAll(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение состояния сверки нод");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/reconcile/");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Состояние сверки получено", service.checkpoints()));
+    }
+
+    @Operation(summary = "Получить состояние сверки и расхождения ноды")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Сверка ноды еще не выполнялась")
+    })
+    @GetMapping("/{sId}")
+    public ResponseEntity<ResponseObject<ReconcileCheckpoint>> get(
+            @Parameter(description = "ID сервера") @PathVariable("sId") long sId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение состояния сверки сервера с ID {}", sId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/reconcile/{}", sId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.checkpoint(sId);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Состояние сверки получено", result.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Сверка ноды еще не выполнялась"));
+    }
+}
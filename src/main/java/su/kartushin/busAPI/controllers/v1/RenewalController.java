@@ -0,0 +1,100 @@
+package su.kartushin.busAPI.controllers.v1;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.enums.RenewalStatus;
+import su.kartushin.busAPI.objects.RenewalRun;
+import su.kartushin.busAPI.objects.ResponseObject;
+import su.kartushin.busAPI.services.RenewalService;
+
+import java.util.List;
+
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
+@RestController
+@RequestMapping("/api/v1/renewal")
+@Tag(name = "Renewal Controller", description = "API для продления подписок за период")
+@Log4j2
+public class RenewalController {
+
+    @Autowired
+    private RenewalService service;
+
+    @Operation(summary = "Запустить или продолжить продление за период")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Продление запущено или уже идет"),
+            @ApiResponse(responseCode = "400", description = "Неверный период"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "409", description = "Продление за период уже завершено")
+    })
+    @PostMapping("/{period}")
+    public ResponseEntity<ResponseObject<RenewalRun>> start(
+            @Parameter(description = "Период в формате yyyy-MM") @PathVariable("period") String period,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на продление за период {}", period);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/renewal/{}", period);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.start(period);
+        if (result.isEmpty())
+            return ResponseEntity.status(400).body(new ResponseObject<>("error", "Неверный период"));
+        if (result.get().getStatus() == RenewalStatus.DONE)
+            return ResponseEntity.status(409).body(new ResponseObject<>("error", "Продление за период уже завершено", result.get()));
+        return ResponseEntity.status(202).body(new ResponseObject<>("success", "Продление запущено", result.get()));
+    }
+
+    @Operation(summary = "Получить последние продления")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @GetMapping("/")
+    public ResponseEntity<ResponseObject<List<RenewalRun>>> getAll(
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение последних продлений");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/renewal/");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        return ResponseEntity.ok(new ResponseObject<>("success", "Продления получены", service.findRecent()));
+    }
+
+    @Operation(summary = "Получить ход продления за период")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Продление за период не запускалось")
+    })
+    @GetMapping("/{period}")
+    public ResponseEntity<ResponseObject<RenewalRun>> get(
+            @Parameter(description = "Период в формате yyyy-MM") @PathVariable("period") String period,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение хода продления за период {}", period);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/renewal/{}", period);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = service.find(period);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Ход продления получен", result.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Продление за период не запускалось"));
+    }
+}
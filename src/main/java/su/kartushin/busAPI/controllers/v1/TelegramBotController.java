@@ -1,18 +1,84 @@
 package su.kartushin.busAPI.controllers.v1;
 
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import su.kartushin.busAPI.objects.BroadcastJob;
+import su.kartushin.busAPI.objects.BroadcastRequest;
+import su.kartushin.busAPI.objects.ResponseObject;
 import su.kartushin.busAPI.objects.TelegramBot;
+import su.kartushin.busAPI.services.BroadcastService;
 import su.kartushin.busAPI.services.TelegramBotService;
 
+import static su.kartushin.busAPI.utils.AuthCheck.incorrectAuthorization;
+
 @RestController
 @RequestMapping("/api/v1/telegramBot")
 @Tag(name = "Telegram Bot Controller", description = "API для работы с Telegram Bot")
+@Log4j2
 public class TelegramBotController extends AbstractCrudController<TelegramBot, Long>{
 
+    @Autowired
+    private BroadcastService broadcastService;
+
     public TelegramBotController(){
         service = new TelegramBotService();
         entity = "Telegram Bot";
     }
+
+    @Operation(summary = "Запустить рассылку сообщения всем пользователям")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Рассылка запущена"),
+            @ApiResponse(responseCode = "400", description = "Текст не задан или бот выключен"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован")
+    })
+    @PostMapping("/broadcast")
+    public ResponseEntity<ResponseObject<BroadcastJob>> broadcast(
+            @RequestBody BroadcastRequest request,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на рассылку сообщения");
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/telegramBot/broadcast");
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = broadcastService.start(request.getText(), requestID);
+        if (result.isPresent())
+            return ResponseEntity.status(202).body(new ResponseObject<>("success", "Рассылка запущена", result.get()));
+        else
+            return ResponseEntity.status(400).body(new ResponseObject<>("error", "Текст не задан или бот выключен"));
+    }
+
+    @Operation(summary = "Получить прогресс рассылки")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "403", description = "Не авторизован"),
+            @ApiResponse(responseCode = "404", description = "Рассылка не найдена")
+    })
+    @GetMapping("/broadcast/{jobId}")
+    public ResponseEntity<ResponseObject<BroadcastJob>> getBroadcast(
+            @Parameter(description = "ID рассылки") @PathVariable("jobId") String jobId,
+            @Parameter(description = "Заголовок авторизации") @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "Заголовок requestID") @RequestHeader(value = "requestID", required = false) String requestID
+    ) {
+        log.info("Запрос на получение прогресса рассылки {}", jobId);
+        if (incorrectAuthorization(authHeader)) {
+            log.info("Авторизация не пройдена для /api/v1/telegramBot/broadcast/{}", jobId);
+            return ResponseEntity.status(403).body(new ResponseObject<>("error", "Доступ запрещен!"));
+        }
+
+        var result = broadcastService.find(jobId);
+        if (result.isPresent())
+            return ResponseEntity.ok(new ResponseObject<>("success", "Прогресс рассылки получен", result.get()));
+        else
+            return ResponseEntity.status(404).body(new ResponseObject<>("error", "Рассылка не найдена"));
+    }
 }
@@ -0,0 +1,8 @@
+package su.kartushin.busAPI.enums;
+
+public enum BillingType {
+    // Списание, уменьшает баланс
+    CHARGE,
+    // Пополнение, увеличивает баланс
+    PAYMENT
+}
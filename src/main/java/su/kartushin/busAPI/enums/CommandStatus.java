@@ -0,0 +1,8 @@
+package su.kartushin.busAPI.enums;
+
+public enum CommandStatus {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED
+}
@@ -0,0 +1,8 @@
+package su.kartushin.busAPI.enums;
+
+public enum MessagePriority {
+    // Ответы пользователю и уведомления о его аккаунтах
+    TRANSACTIONAL,
+    // Рассылки всем пользователям, отправляются, когда нет транзакционных сообщений
+    BROADCAST
+}
@@ -0,0 +1,12 @@
+package su.kartushin.busAPI.enums;
+
+/**
+ * Что делать с задачей, срок которой пропущен больше чем на допустимое время,
+ * например пока сервис был остановлен.
+ */
+public enum MisfirePolicy {
+    // Выполнить один раз сразу
+    FIRE_NOW,
+    // Не выполнять; повторяющаяся задача переносится на следующий срок в будущем
+    SKIP
+}
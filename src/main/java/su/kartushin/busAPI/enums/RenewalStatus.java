@@ -0,0 +1,7 @@
+package su.kartushin.busAPI.enums;
+
+public enum RenewalStatus {
+    RUNNING,
+    DONE,
+    FAILED
+}
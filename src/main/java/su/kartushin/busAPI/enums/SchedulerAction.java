@@ -0,0 +1,8 @@
+package su.kartushin.busAPI.enums;
+
+public enum SchedulerAction {
+    BLOCK,
+    UNBLOCK,
+    RESTART,
+    EXPIRE
+}
@@ -0,0 +1,9 @@
+package su.kartushin.busAPI.enums;
+
+public enum SchedulerStatus {
+    SCHEDULED,
+    RUNNING,
+    DONE,
+    FAILED,
+    MISSED
+}
@@ -1,12 +1,16 @@
 package su.kartushin.busAPI.objects;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.ColumnDefault;
 import su.kartushin.busAPI.enums.Country;
 import su.kartushin.busAPI.enums.Status;
 
+import java.time.Instant;
+
 @Entity
 @AllArgsConstructor
 @NoArgsConstructor
@@ -33,4 +37,19 @@ public class Account {
     Country country;
     @Enumerated(EnumType.STRING)
     Status status;
+
+    // Время последней загрузки конфигов с ноды в локальную копию, null если копия не актуальна.
+    // Меняется только запросом в AccountRepository, сохранение аккаунта его не перезаписывает
+    @JsonIgnore
+    @ToString.Exclude
+    @Column(updatable = false)
+    Instant configsSyncedAt;
+
+    // Версия локальной копии конфигов, растет при каждом изменении конфигов аккаунта.
+    // Список с ноды, запрошенный на старой версии, копию не заменяет. Меняется только запросом в AccountRepository
+    @JsonIgnore
+    @ToString.Exclude
+    @Column(updatable = false)
+    @ColumnDefault("0")
+    long configsVersion;
 }
@@ -0,0 +1,51 @@
+package su.kartushin.busAPI.objects;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.enums.CommandStatus;
+import su.kartushin.busAPI.enums.CommandType;
+
+import java.time.Instant;
+
+/**
+ * Команда над аккаунтом в очереди (outbox). Записывается вместо синхронного вызова ноды
+ * и выполняется фоновым обработчиком с повторами. ID команды возвращается клиенту как ID операции.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "status, next_attempt_at"))
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class AccountCommand {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    long id;
+
+    @Enumerated(EnumType.STRING)
+    CommandType type;
+    // Действие для команды ACTION
+    @Enumerated(EnumType.STRING)
+    Action action;
+
+    String chatId;
+    long serverId;
+    // ID аккаунта; для команды CREATE заполняется после создания
+    Long accountId;
+
+    @Enumerated(EnumType.STRING)
+    CommandStatus status;
+    int attempts;
+    Instant nextAttemptAt;
+    String lastError;
+
+    String requestId;
+    Instant createdAt;
+    Instant updatedAt;
+    Instant finishedAt;
+}
@@ -0,0 +1,24 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Конфиги одного аккаунта при получении конфигов нескольких аккаунтов.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class AccountConfigs {
+
+    private final long accountId;
+    private final Long serverId;
+    private final String status;          // success или error
+    private final String message;
+    private final List<Config> configs;   // null при ошибке
+
+    public static AccountConfigs error(long accountId, Long serverId, String message) {
+        return new AccountConfigs(accountId, serverId, "error", message, null);
+    }
+}
@@ -0,0 +1,27 @@
+package su.kartushin.busAPI.objects;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+/**
+ * Текущий баланс пользователя в копейках: сумма всех записей журнала {@link Billing}.
+ * Обновляется в той же транзакции, что и журнал, чтобы чтение баланса было одним запросом по ключу.
+ */
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class Balance {
+    @Id
+    long userId;
+
+    long balance;
+    Instant updatedAt;
+}
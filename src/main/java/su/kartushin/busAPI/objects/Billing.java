@@ -1,4 +1,48 @@
 package su.kartushin.busAPI.objects;
 
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import su.kartushin.busAPI.enums.BillingType;
+
+import java.time.Instant;
+
+/**
+ * Запись журнала биллинга: списание или пополнение баланса пользователя.
+ * Журнал только дополняется, записи не изменяются и не удаляются.
+ * Сумма хранится в копейках и всегда положительна, знак задает тип.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "user_id, id"),
+        uniqueConstraints = @UniqueConstraint(columnNames = "idempotency_key"))
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
 public class Billing {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    long id;
+
+    long userId;
+    Long accountId;
+
+    @Enumerated(EnumType.STRING)
+    BillingType type;
+    long amount;
+    String description;
+
+    // Ключ для защиты от повторной записи одного события, null если не нужен
+    String idempotencyKey;
+    Instant createdAt;
+
+    /**
+     * Изменение баланса этой записью.
+     */
+    public long balanceDelta() {
+        return type == BillingType.PAYMENT ? amount : -amount;
+    }
 }
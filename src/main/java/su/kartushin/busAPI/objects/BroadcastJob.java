@@ -0,0 +1,70 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Задача рассылки: прогресс постановки получателей в очередь и доставки.
+ * Обновляется потоком рассылки и потоками отправки, читается контроллером.
+ * Задача завершается, когда все получатели поставлены в очередь и все сообщения отправлены или отклонены.
+ */
+@Getter
+@ToString
+public class BroadcastJob {
+
+    public enum State {
+        RUNNING,
+        DONE
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String text;
+    private final Instant createdAt = Instant.now();
+    private volatile State state = State.RUNNING;
+    private volatile Instant finishedAt;
+    // Все получатели поставлены в очередь
+    private volatile boolean enqueued;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger delivered = new AtomicInteger();
+    // Пользователь заблокировал бота или чат не найден
+    private final AtomicInteger blocked = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    // Пользователи с некорректным chat ID
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    public BroadcastJob(String text) {
+        this.text = text;
+    }
+
+    public int getCompleted() {
+        return delivered.get() + blocked.get() + failed.get();
+    }
+
+    public void record(Boolean result, Throwable error) {
+        if (error != null) {
+            failed.incrementAndGet();
+        } else if (Boolean.TRUE.equals(result)) {
+            delivered.incrementAndGet();
+        } else {
+            blocked.incrementAndGet();
+        }
+        tryFinish();
+    }
+
+    public void enqueueFinished() {
+        enqueued = true;
+        tryFinish();
+    }
+
+    private synchronized void tryFinish() {
+        if (enqueued && state == State.RUNNING && getCompleted() >= queued.get()) {
+            finishedAt = Instant.now();
+            state = State.DONE;
+        }
+    }
+}
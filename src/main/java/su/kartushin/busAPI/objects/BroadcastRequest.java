@@ -0,0 +1,16 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+
+/**
+ * Рассылка сообщения всем пользователям бота.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class BroadcastRequest {
+
+    private String text;
+}
@@ -0,0 +1,64 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.Getter;
+import lombok.ToString;
+import su.kartushin.busAPI.enums.Action;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Задача массового действия над аккаунтами: прогресс и результаты по каждому аккаунту.
+ * Обновляется потоками выполнения, читается контроллером.
+ */
+@Getter
+@ToString(exclude = "results")
+public class BulkActionJob {
+
+    public enum State {
+        RUNNING,
+        DONE
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Action action;
+    private final int total;
+    private final Instant createdAt = Instant.now();
+    private volatile State state = State.RUNNING;
+    private volatile Instant finishedAt;
+
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Queue<BulkActionResult> results = new ConcurrentLinkedQueue<>();
+
+    public BulkActionJob(Action action, int total) {
+        this.action = action;
+        this.total = total;
+    }
+
+    public int getCompleted() {
+        return succeeded.get() + failed.get();
+    }
+
+    public void record(BulkActionResult result) {
+        results.add(result);
+        if ("success".equals(result.getStatus())) {
+            succeeded.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+
+    public void finish() {
+        finishedAt = Instant.now();
+        state = State.DONE;
+    }
+
+    public List<BulkActionResult> getResults() {
+        return List.copyOf(results);
+    }
+}
@@ -0,0 +1,23 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+import su.kartushin.busAPI.enums.Country;
+
+import java.util.List;
+
+/**
+ * Выбор аккаунтов для массового действия.
+ * Задается ровно одно поле: список ID аккаунтов, ID чата пользователя, ID сервера или страна.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class BulkActionRequest {
+
+    private List<Long> accountIds;
+    private String chatId;
+    private Long serverId;
+    private Country country;
+}
@@ -0,0 +1,17 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+
+/**
+ * Результат действия над одним аккаунтом при массовом действии.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class BulkActionResult {
+
+    private final long accountId;
+    private final Long serverId;
+    private final String status;    // success или error
+    private final String message;
+}
@@ -1,8 +1,15 @@
 package su.kartushin.busAPI.objects;
 
+import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
+/**
+ * Локальная копия конфига с ноды. Записывается при изменениях конфигов через API,
+ * чтобы чтение списка и поиск по имени не обращались к ноде.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"account_id", "name"}))
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
@@ -11,7 +18,14 @@ import lombok.experimental.FieldDefaults;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Builder
 public class Config {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    long id;
+
     String name;
     String idOnServer;
+
+    @ManyToOne
+    @JoinColumn(name = "account_id")
     Account account;
 }
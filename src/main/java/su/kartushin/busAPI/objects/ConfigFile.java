@@ -0,0 +1,58 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Содержимое файла конфига с его ETag (SHA-256 от содержимого).
+ */
+@Getter
+@AllArgsConstructor
+@ToString(exclude = "content")
+public class ConfigFile {
+
+    private final String content;
+    private final String etag;
+
+    /**
+     * Создание файла конфига с вычислением ETag по содержимому.
+     *
+     * @param content Содержимое файла
+     * @return файл конфига
+     */
+    public static ConfigFile of(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return new ConfigFile(content, "\"" + HexFormat.of().formatHex(hash) + "\"");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Проверка заголовка If-None-Match на совпадение с ETag файла.
+     *
+     * @param ifNoneMatch Значение заголовка If-None-Match
+     * @return true, если у клиента уже есть этот файл
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+
+/**
+ * Разобранный ответ VPN ноды: HTTP-код и тело в виде {@link ResponseObject}.
+ *
+ * @param <T> Тип данных в теле ответа
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class NodeResponse<T> {
+
+    private final int code;                 // HTTP-код ответа ноды
+    private final ResponseObject<T> body;   // Разобранное тело, null если тело пустое или не разобрано
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * Данные из тела ответа.
+     *
+     * @return данные или null, если тела нет
+     */
+    public T getData() {
+        return body == null ? null : body.getData();
+    }
+}
@@ -0,0 +1,20 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+import su.kartushin.busAPI.enums.Country;
+
+/**
+ * Элемент массового создания аккаунтов: пользователь и сервер или страна для размещения.
+ * Если сервер не указан, он выбирается автоматически среди серверов страны.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ProvisionItem {
+
+    private String chatId;
+    private Long serverId;
+    private Country country;
+}
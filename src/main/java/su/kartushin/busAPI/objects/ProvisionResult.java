@@ -0,0 +1,24 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.*;
+
+/**
+ * Результат создания одного аккаунта при массовом создании.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ProvisionResult {
+
+    private String chatId;
+    private Long serverId;
+    private Long accountId;   // ID созданного аккаунта, null при ошибке
+    private String status;    // success или error
+    private String message;
+
+    public static ProvisionResult error(String chatId, Long serverId, String message) {
+        return new ProvisionResult(chatId, serverId, null, "error", message);
+    }
+}
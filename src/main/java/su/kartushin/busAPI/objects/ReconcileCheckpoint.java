@@ -0,0 +1,68 @@
+package su.kartushin.busAPI.objects;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+/**
+ * Состояние сверки аккаунтов одной ноды: позиция в текущем проходе и счетчики расхождений.
+ * Сохраняется после каждой страницы, поэтому прерванная сверка продолжается с места остановки.
+ */
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ReconcileCheckpoint {
+    @Id
+    long serverId;
+
+    // ID последнего проверенного аккаунта в текущем проходе, 0 в начале прохода
+    long lastAccountId;
+    Instant passStartedAt;
+    Instant passCompletedAt;
+    Instant updatedAt;
+    long passes;
+
+    // Счетчики текущего прохода: найденные расхождения и исправленные в базе
+    long checked;
+    long missingOnNode;
+    long idMismatch;
+    long errors;
+    long fixed;
+
+    // Счетчики последнего завершенного прохода
+    long lastPassChecked;
+    long lastPassMissingOnNode;
+    long lastPassIdMismatch;
+    long lastPassErrors;
+    long lastPassFixed;
+
+    public ReconcileCheckpoint(long serverId) {
+        this.serverId = serverId;
+    }
+
+    /**
+     * Завершение прохода: счетчики переносятся в последний проход, позиция сбрасывается.
+     */
+    public void completePass(Instant now) {
+        lastPassChecked = checked;
+        lastPassMissingOnNode = missingOnNode;
+        lastPassIdMismatch = idMismatch;
+        lastPassErrors = errors;
+        lastPassFixed = fixed;
+        checked = 0;
+        missingOnNode = 0;
+        idMismatch = 0;
+        errors = 0;
+        fixed = 0;
+        lastAccountId = 0;
+        passCompletedAt = now;
+        passStartedAt = null;
+        passes++;
+    }
+}
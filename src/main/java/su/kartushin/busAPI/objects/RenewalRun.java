@@ -0,0 +1,47 @@
+package su.kartushin.busAPI.objects;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import su.kartushin.busAPI.enums.RenewalStatus;
+
+import java.time.Instant;
+
+/**
+ * Продление подписок за период: контрольная точка и счетчики.
+ * Пользователи обрабатываются по возрастанию ID, lastUserId - граница, до которой все пользователи
+ * обработаны, с неё продолжается прерванный запуск.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = "period"))
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class RenewalRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    long id;
+
+    // Период продления, например 2026-10
+    String period;
+    @Enumerated(EnumType.STRING)
+    RenewalStatus status;
+    long lastUserId;
+
+    long usersProcessed;
+    long accountsCharged;
+    long amountCharged;
+    long usersBlocked;
+    long accountsBlocked;
+    long chargeErrors;
+    long blockErrors;
+    String lastError;
+
+    Instant startedAt;
+    Instant updatedAt;
+    Instant finishedAt;
+}
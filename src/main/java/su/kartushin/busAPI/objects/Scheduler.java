@@ -1,4 +1,69 @@
 package su.kartushin.busAPI.objects;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import su.kartushin.busAPI.enums.MisfirePolicy;
+import su.kartushin.busAPI.enums.SchedulerAction;
+import su.kartushin.busAPI.enums.SchedulerStatus;
+
+import java.time.Instant;
+
+/**
+ * Отложенное или повторяющееся действие над аккаунтом.
+ * Задача без интервала выполняется один раз в runAt, с интервалом - каждые intervalSeconds начиная с runAt.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "status, due_bucket, run_at"))
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
 public class Scheduler {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    long id;
+
+    @Enumerated(EnumType.STRING)
+    SchedulerAction action;
+    Long accountId;
+
+    // Срок следующего выполнения
+    Instant runAt;
+    // Интервал повторения в секундах, null для однократной задачи
+    Long intervalSeconds;
+    @Enumerated(EnumType.STRING)
+    MisfirePolicy misfirePolicy;
+
+    // Минута срока (runAt в секундах / 60), ведущая колонка индекса для выборки наступивших задач
+    @JsonIgnore
+    long dueBucket;
+
+    @Enumerated(EnumType.STRING)
+    SchedulerStatus status;
+    // Экземпляр сервиса, захвативший задачу, и срок его аренды
+    String leaseOwner;
+    Instant leaseUntil;
+    int runs;
+    Instant lastRunAt;
+    String lastError;
+
+    Instant createdAt;
+    Instant updatedAt;
+
+    public static long dueBucket(Instant runAt) {
+        return runAt.getEpochSecond() / 60;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateDueBucket() {
+        if (runAt != null) {
+            dueBucket = dueBucket(runAt);
+        }
+    }
 }
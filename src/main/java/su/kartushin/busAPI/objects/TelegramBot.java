@@ -1,4 +1,37 @@
 package su.kartushin.busAPI.objects;
 
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Состояние Telegram бота и счетчики конвейера обновлений.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
 public class TelegramBot {
+    // ID бота в Telegram, 0 если бот еще не получил свои данные
+    long id;
+    String userName;
+    boolean running;
+
+    // Следующее запрашиваемое обновление, все предыдущие подтверждены
+    long offset;
+    long received;
+    long duplicates;
+    long ignored;
+    long handled;
+    long failed;
+
+    // Обновления, ожидающие разбора и маршрутизации
+    int queued;
+    // Обновления, переданные обработчикам и еще не обработанные
+    int inFlight;
+    int activeChats;
+
+    TelegramOutboxStats outbox;
 }
@@ -0,0 +1,23 @@
+package su.kartushin.busAPI.objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Снимок счетчиков очереди исходящих сообщений Telegram.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class TelegramOutboxStats {
+    private final int transactional;
+    private final int broadcast;
+    private final int delayed;
+    private final long sent;
+    private final long rateLimited;
+    private final long retried;
+    // Пользователь заблокировал бота или чат не найден
+    private final long blocked;
+    private final long failed;
+}
@@ -0,0 +1,109 @@
+package su.kartushin.busAPI.objects;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Обновление Telegram Bot API: сообщение или нажатие кнопки.
+ * Разбираются только поля, которые нужны боту.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class TelegramUpdate {
+    @JsonProperty("update_id")
+    long updateId;
+
+    Message message;
+    @JsonProperty("callback_query")
+    CallbackQuery callbackQuery;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @NoArgsConstructor
+    @ToString
+    @Getter
+    @Setter
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Message {
+        @JsonProperty("message_id")
+        long messageId;
+        From from;
+        Chat chat;
+        String text;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @NoArgsConstructor
+    @ToString
+    @Getter
+    @Setter
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class CallbackQuery {
+        String id;
+        From from;
+        Message message;
+        String data;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @NoArgsConstructor
+    @ToString
+    @Getter
+    @Setter
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Chat {
+        long id;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @NoArgsConstructor
+    @ToString
+    @Getter
+    @Setter
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class From {
+        long id;
+        String username;
+        @JsonProperty("first_name")
+        String firstName;
+    }
+
+    /**
+     * Чат обновления или null, если обновление не относится к чату.
+     */
+    public Long chatId() {
+        if (message != null && message.getChat() != null) {
+            return message.getChat().getId();
+        }
+        if (callbackQuery != null && callbackQuery.getMessage() != null && callbackQuery.getMessage().getChat() != null) {
+            return callbackQuery.getMessage().getChat().getId();
+        }
+        return null;
+    }
+
+    /**
+     * Текст команды: текст сообщения или данные нажатой кнопки.
+     */
+    public String text() {
+        if (message != null) {
+            return message.getText();
+        }
+        return callbackQuery != null ? callbackQuery.getData() : null;
+    }
+
+    /**
+     * Отправитель обновления.
+     */
+    public From from() {
+        if (message != null) {
+            return message.getFrom();
+        }
+        return callbackQuery != null ? callbackQuery.getFrom() : null;
+    }
+}
@@ -36,4 +36,9 @@ public class VPNProxy {
 
     @Enumerated(EnumType.STRING)
     Status status;
+
+    // Нода отключена фоновой проверкой, и проверка включит её после восстановления.
+    // Меняется только запросами в VPNProxyRepository, сохранение ноды его не перезаписывает
+    @Column(updatable = false)
+    boolean disabledByProbe;
 }
@@ -0,0 +1,50 @@
+package su.kartushin.busAPI.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import su.kartushin.busAPI.enums.CommandStatus;
+import su.kartushin.busAPI.objects.AccountCommand;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface AccountCommandRepository extends JpaRepository<AccountCommand, Long> {
+
+    /**
+     * Команды в статусе, время попытки которых наступило, в порядке времени попытки.
+     */
+    @Query("select c from AccountCommand c where c.status = :status and c.nextAttemptAt <= :now " +
+            "order by c.nextAttemptAt, c.id")
+    List<AccountCommand> findDue(@Param("status") CommandStatus status, @Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Захват команды обработчиком: смена статуса, только если команда еще ждет выполнения.
+     * Не дает двум обработчикам выполнить одну команду.
+     *
+     * @return количество обновленных записей
+     */
+    @Modifying
+    @Transactional
+    @Query("update AccountCommand c set c.status = :running, c.updatedAt = :now " +
+            "where c.id = :id and c.status = :pending")
+    int claim(@Param("id") long id, @Param("pending") CommandStatus pending,
+              @Param("running") CommandStatus running, @Param("now") Instant now);
+
+    /**
+     * Возврат в очередь команд, которые выполняются дольше заданного, например после остановки процесса.
+     *
+     * @return количество возвращенных команд
+     */
+    @Modifying
+    @Transactional
+    @Query("update AccountCommand c set c.status = :pending, c.nextAttemptAt = :now, c.updatedAt = :now " +
+            "where c.status = :running and c.updatedAt < :staleBefore")
+    int requeueStale(@Param("running") CommandStatus running, @Param("pending") CommandStatus pending,
+                     @Param("staleBefore") Instant staleBefore, @Param("now") Instant now);
+}
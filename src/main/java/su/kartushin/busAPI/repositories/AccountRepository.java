@@ -1,9 +1,85 @@
 package su.kartushin.busAPI.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import su.kartushin.busAPI.enums.Country;
+import su.kartushin.busAPI.enums.Status;
 import su.kartushin.busAPI.objects.Account;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface AccountRepository extends JpaRepository<Account, Long> {
+
+    /**
+     * Аккаунт вместе с нодой, для вызовов ноды вне веб-запроса, где ленивую ноду уже не загрузить.
+     */
+    @Query("select a from Account a left join fetch a.server where a.id = :id")
+    Optional<Account> findWithServerById(@Param("id") long id);
+
+    @Query("select a from Account a where a.chatId = :chatId and (a.status is null or a.status <> :deleted)")
+    List<Account> findNotDeletedByChatId(@Param("chatId") String chatId, @Param("deleted") Status deleted);
+
+    @Query("select a from Account a where a.server.id = :serverId and (a.status is null or a.status <> :deleted)")
+    List<Account> findNotDeletedByServerId(@Param("serverId") long serverId, @Param("deleted") Status deleted);
+
+    @Query("select a from Account a where a.server.country = :country and (a.status is null or a.status <> :deleted)")
+    List<Account> findNotDeletedByCountry(@Param("country") Country country, @Param("deleted") Status deleted);
+
+    /**
+     * Страница не удаленных аккаунтов ноды после заданного ID, по возрастанию ID.
+     */
+    @Query("select a from Account a where a.server.id = :serverId and a.id > :afterId " +
+            "and (a.status is null or a.status <> :deleted) order by a.id")
+    List<Account> findNotDeletedPageByServerId(@Param("serverId") long serverId, @Param("afterId") long afterId,
+                                               @Param("deleted") Status deleted, Pageable pageable);
+
+    /**
+     * Пометка локальной копии конфигов актуальной, если с начала загрузки с ноды конфиги аккаунта не менялись.
+     *
+     * @return 1, если копия помечена; 0, если версия уже другая
+     */
+    @Modifying
+    @Transactional
+    @Query("update Account a set a.configsSyncedAt = :syncedAt where a.id = :id and a.configsVersion = :version")
+    int setConfigsSyncedAt(@Param("id") long id, @Param("version") long version, @Param("syncedAt") Instant syncedAt);
+
+    /**
+     * Новая версия локальной копии конфигов после изменения конфигов на ноде.
+     */
+    @Modifying
+    @Transactional
+    @Query("update Account a set a.configsVersion = a.configsVersion + 1 where a.id = :id")
+    int incrementConfigsVersion(@Param("id") long id);
+
+    /**
+     * Новая версия локальной копии конфигов с пометкой копии неактуальной.
+     */
+    @Modifying
+    @Transactional
+    @Query("update Account a set a.configsVersion = a.configsVersion + 1, a.configsSyncedAt = null where a.id = :id")
+    int markConfigsUnsynced(@Param("id") long id);
+
+    /**
+     * Количество аккаунтов на ноде в одном статусе.
+     */
+    interface ServerAccountCount {
+        Long getServerId();
+        Status getStatus();
+        long getTotal();
+    }
+
+    /**
+     * Количество аккаунтов по нодам и статусам одним агрегирующим запросом.
+     */
+    @Query("select a.server.id as serverId, a.status as status, count(a) as total from Account a " +
+            "where a.server is not null group by a.server.id, a.status")
+    List<ServerAccountCount> countByServerAndStatus();
 }
@@ -0,0 +1,9 @@
+package su.kartushin.busAPI.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import su.kartushin.busAPI.objects.Balance;
+
+@Repository
+public interface BalanceRepository extends JpaRepository<Balance, Long> {
+}
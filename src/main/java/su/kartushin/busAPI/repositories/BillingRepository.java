@@ -0,0 +1,19 @@
+package su.kartushin.busAPI.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import su.kartushin.busAPI.objects.Billing;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BillingRepository extends JpaRepository<Billing, Long> {
+
+    List<Billing> findByUserIdOrderByIdDesc(long userId, Pageable pageable);
+
+    List<Billing> findAllByOrderByIdDesc(Pageable pageable);
+
+    List<Billing> findByIdempotencyKeyIn(Collection<String> idempotencyKeys);
+}
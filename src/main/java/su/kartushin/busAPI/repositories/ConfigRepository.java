@@ -0,0 +1,27 @@
+package su.kartushin.busAPI.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import su.kartushin.busAPI.objects.Config;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConfigRepository extends JpaRepository<Config, Long> {
+
+    @Query("select c from Config c join fetch c.account where c.account.id = :accountId order by c.id")
+    List<Config> findByAccountId(@Param("accountId") long accountId);
+
+    @Query("select c from Config c join fetch c.account where c.account.id = :accountId and c.name = :name")
+    Optional<Config> findByAccountIdAndName(@Param("accountId") long accountId, @Param("name") String name);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Config c where c.account.id = :accountId")
+    int deleteByAccountId(@Param("accountId") long accountId);
+}
@@ -0,0 +1,34 @@
+package su.kartushin.busAPI.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import su.kartushin.busAPI.enums.RenewalStatus;
+import su.kartushin.busAPI.objects.RenewalRun;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RenewalRunRepository extends JpaRepository<RenewalRun, Long> {
+
+    Optional<RenewalRun> findByPeriod(String period);
+
+    List<RenewalRun> findTop20ByOrderByIdDesc();
+
+    /**
+     * Пометка запусков, прерванных остановкой сервиса.
+     *
+     * @return количество помеченных запусков
+     */
+    @Modifying
+    @Transactional
+    @Query("update RenewalRun r set r.status = :failed, r.lastError = :error, r.updatedAt = :now " +
+            "where r.status = :running")
+    int markInterrupted(@Param("running") RenewalStatus running, @Param("failed") RenewalStatus failed,
+                        @Param("error") String error, @Param("now") Instant now);
+}
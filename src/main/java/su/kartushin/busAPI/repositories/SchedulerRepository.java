@@ -0,0 +1,96 @@
+package su.kartushin.busAPI.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import su.kartushin.busAPI.enums.MisfirePolicy;
+import su.kartushin.busAPI.enums.SchedulerAction;
+import su.kartushin.busAPI.enums.SchedulerStatus;
+import su.kartushin.busAPI.objects.Scheduler;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SchedulerRepository extends JpaRepository<Scheduler, Long> {
+
+    /**
+     * Страница задач в статусе со сроком в [from, to) после заданного ID, по возрастанию ID.
+     */
+    @Query("select s from Scheduler s where s.status = :status and s.runAt >= :from and s.runAt < :to " +
+            "and s.id > :afterId order by s.id")
+    List<Scheduler> findDuePage(@Param("status") SchedulerStatus status, @Param("from") Instant from,
+                                @Param("to") Instant to, @Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * Продление аренды выполняющихся задач экземпляра.
+     *
+     * @return количество продленных задач
+     */
+    @Modifying
+    @Transactional
+    @Query("update Scheduler s set s.leaseUntil = :leaseUntil " +
+            "where s.id in :ids and s.leaseOwner = :owner and s.status = :running")
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner,
+                    @Param("running") SchedulerStatus running, @Param("leaseUntil") Instant leaseUntil);
+
+    /**
+     * Возврат в ожидание задач, аренда которых истекла: экземпляр, захвативший их, остановлен или завис.
+     *
+     * @return количество возвращенных задач
+     */
+    @Modifying
+    @Transactional
+    @Query("update Scheduler s set s.status = :scheduled, s.leaseOwner = null, s.leaseUntil = null, " +
+            "s.updatedAt = :now where s.status = :running and s.leaseUntil < :now")
+    int releaseExpiredLeases(@Param("running") SchedulerStatus running, @Param("scheduled") SchedulerStatus scheduled,
+                             @Param("now") Instant now);
+
+    /**
+     * Сохранение результата выполнения, только если задача все еще арендована этим экземпляром.
+     *
+     * @return количество обновленных записей
+     */
+    @Modifying
+    @Transactional
+    @Query("update Scheduler s set s.status = :status, s.runAt = :runAt, s.dueBucket = :dueBucket, " +
+            "s.runs = :runs, s.lastRunAt = :lastRunAt, s.lastError = :lastError, " +
+            "s.leaseOwner = null, s.leaseUntil = null, s.updatedAt = :now " +
+            "where s.id = :id and s.leaseOwner = :owner and s.status = :running")
+    int complete(@Param("id") long id, @Param("owner") String owner, @Param("running") SchedulerStatus running,
+                 @Param("status") SchedulerStatus status, @Param("runAt") Instant runAt,
+                 @Param("dueBucket") long dueBucket, @Param("runs") int runs, @Param("lastRunAt") Instant lastRunAt,
+                 @Param("lastError") String lastError, @Param("now") Instant now);
+
+    /**
+     * Изменение задачи, только если она сейчас не выполняется.
+     * Контекст сохраняемости очищается, чтобы следующее чтение задачи увидело изменения.
+     *
+     * @return количество обновленных записей
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update Scheduler s set s.action = :action, s.accountId = :accountId, s.runAt = :runAt, " +
+            "s.dueBucket = :dueBucket, s.intervalSeconds = :intervalSeconds, s.misfirePolicy = :misfirePolicy, " +
+            "s.status = :scheduled, s.updatedAt = :now where s.id = :id and s.status <> :running")
+    int updateIfNotRunning(@Param("id") long id, @Param("running") SchedulerStatus running,
+                           @Param("scheduled") SchedulerStatus scheduled, @Param("action") SchedulerAction action,
+                           @Param("accountId") Long accountId, @Param("runAt") Instant runAt,
+                           @Param("dueBucket") long dueBucket, @Param("intervalSeconds") Long intervalSeconds,
+                           @Param("misfirePolicy") MisfirePolicy misfirePolicy, @Param("now") Instant now);
+
+    /**
+     * Удаление задачи, только если она сейчас не выполняется.
+     *
+     * @return количество удаленных записей
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Scheduler s where s.id = :id and s.status <> :running")
+    int deleteIfNotRunning(@Param("id") long id, @Param("running") SchedulerStatus running);
+}
@@ -1,12 +1,27 @@
 package su.kartushin.busAPI.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import su.kartushin.busAPI.enums.Status;
 import su.kartushin.busAPI.objects.User;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByChatId(String chatId);
+
+    List<User> findByChatIdIn(Collection<String> chatIds);
+
+    /**
+     * Страница пользователей с chat ID по возрастанию ID, начиная после afterId.
+     */
+    @Query("select u from User u where u.id > :afterId and u.chatId is not null " +
+            "and (u.status is null or u.status <> :deleted) order by u.id")
+    List<User> findWithChatPage(@Param("afterId") long afterId, @Param("deleted") Status deleted, Pageable pageable);
 }
@@ -1,9 +1,50 @@
 package su.kartushin.busAPI.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import su.kartushin.busAPI.enums.Status;
 import su.kartushin.busAPI.objects.VPNProxy;
 
+import java.util.List;
+
 @Repository
 public interface VPNProxyRepository extends JpaRepository<VPNProxy, Long> {
+
+    List<VPNProxy> findByStatusNot(Status status);
+
+    /**
+     * Отключение активной ноды фоновой проверкой с пометкой, что отключила проверка.
+     * Не перезаписывает изменения, сделанные через API между чтением и обновлением.
+     *
+     * @return количество обновленных записей
+     */
+    @Modifying
+    @Transactional
+    @Query("update VPNProxy p set p.status = :disabled, p.disabledByProbe = true " +
+            "where p.id = :id and p.status = :active")
+    int disableByProbe(@Param("id") long id, @Param("active") Status active, @Param("disabled") Status disabled);
+
+    /**
+     * Включение ноды после восстановления, только если её отключила фоновая проверка
+     * и статус с тех пор не меняли.
+     *
+     * @return количество обновленных записей
+     */
+    @Modifying
+    @Transactional
+    @Query("update VPNProxy p set p.status = :active, p.disabledByProbe = false " +
+            "where p.id = :id and p.status = :disabled and p.disabledByProbe = true")
+    int enableAfterProbe(@Param("id") long id, @Param("disabled") Status disabled, @Param("active") Status active);
+
+    /**
+     * Снятие пометки об отключении проверкой, когда статус ноды задан через API.
+     */
+    @Modifying
+    @Transactional
+    @Query("update VPNProxy p set p.disabledByProbe = false where p.id = :id")
+    int clearDisabledByProbe(@Param("id") long id);
 }
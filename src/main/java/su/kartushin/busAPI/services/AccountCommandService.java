@@ -0,0 +1,294 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import su.kartushin.busAPI.enums.CommandStatus;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.AccountCommand;
+import su.kartushin.busAPI.repositories.AccountCommandRepository;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.UserRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выполнение команд над аккаунтами из очереди (outbox).
+ * Обработчик периодически выбирает команды, время попытки которых наступило, захватывает их
+ * условным обновлением статуса и выполняет в виртуальных потоках с ограничением числа
+ * одновременных команд каждой ноды. Неудачная попытка повторяется с экспоненциальной задержкой,
+ * после outbox.max-attempts попыток команда завершается с ошибкой.
+ */
+@Service
+@Log4j2
+public class AccountCommandService {
+
+    @Autowired
+    private AccountCommandRepository commandRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private CapacityIndex capacityIndex;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.batch-size:100}")
+    private int batchSize;
+    @Value("${outbox.node-parallelism:4}")
+    private int nodeParallelism;
+    @Value("${outbox.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${outbox.backoff-ms:1000}")
+    private long backoff;
+    @Value("${outbox.max-backoff-ms:60000}")
+    private long maxBackoff;
+    @Value("${outbox.stale-timeout-ms:300000}")
+    private long staleTimeout;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Свободные места для команд по ID ноды
+    private final Map<Long, Semaphore> nodeLimits = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Получение команды по ID операции.
+     *
+     * @param id ID операции
+     * @return команда или пустой Optional, если её нет
+     */
+    public Optional<AccountCommand> find(long id) {
+        return commandRepository.findById(id);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:1000}")
+    public void poll() {
+        var now = Instant.now();
+        try {
+            int requeued = commandRepository.requeueStale(CommandStatus.RUNNING, CommandStatus.PENDING,
+                    now.minusMillis(staleTimeout), now);
+            if (requeued > 0) {
+                log.warn("Возвращено в очередь {} зависших команд", requeued);
+            }
+
+            for (var command : commandRepository.findDue(CommandStatus.PENDING, now, PageRequest.of(0, batchSize))) {
+                dispatch(command);
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при выборке команд из очереди", e);
+        }
+    }
+
+    /**
+     * Запуск команды, если у её ноды есть свободное место.
+     * Команда без места остается в очереди и будет выбрана следующим опросом.
+     */
+    private void dispatch(AccountCommand command) {
+        var limit = nodeLimits.computeIfAbsent(command.getServerId(), id -> new Semaphore(Math.max(1, nodeParallelism)));
+        if (!limit.tryAcquire()) {
+            return;
+        }
+
+        if (commandRepository.claim(command.getId(), CommandStatus.PENDING, CommandStatus.RUNNING, Instant.now()) != 1) {
+            limit.release();
+            return;
+        }
+        command.setStatus(CommandStatus.RUNNING);
+
+        executor.submit(() -> {
+            MDC.put("requestID", command.getRequestId());
+            try {
+                run(command);
+            } catch (Exception e) {
+                log.error("Ошибка при выполнении команды с ID {}", command.getId(), e);
+            } finally {
+                limit.release();
+                MDC.clear();
+            }
+        });
+    }
+
+    private void run(AccountCommand command) {
+        command.setAttempts(command.getAttempts() + 1);
+        log.info("Выполнение команды {} с ID {}, попытка {}", command.getType(), command.getId(), command.getAttempts());
+
+        String error;
+        try {
+            error = execute(command);
+        } catch (NodeUnavailableException e) {
+            error = e.getMessage();
+        } catch (CompletionException e) {
+            error = e.getCause() instanceof NodeUnavailableException ? e.getCause().getMessage() : e.toString();
+        } catch (Exception e) {
+            log.error("Ошибка при выполнении команды с ID {}", command.getId(), e);
+            error = e.toString();
+        }
+
+        var now = Instant.now();
+        command.setUpdatedAt(now);
+        if (error == null) {
+            command.setStatus(CommandStatus.DONE);
+            command.setLastError(null);
+            command.setFinishedAt(now);
+            log.info("Команда с ID {} выполнена", command.getId());
+        } else if (command.getAttempts() >= maxAttempts) {
+            command.setStatus(CommandStatus.FAILED);
+            command.setLastError(error);
+            command.setFinishedAt(now);
+            log.error("Команда с ID {} не выполнена за {} попыток: {}", command.getId(), command.getAttempts(), error);
+        } else {
+            var delay = delay(command.getAttempts());
+            command.setStatus(CommandStatus.PENDING);
+            command.setLastError(error);
+            command.setNextAttemptAt(now.plus(delay));
+            log.warn("Команда с ID {} будет повторена через {} мс: {}", command.getId(), delay.toMillis(), error);
+        }
+        commandRepository.save(command);
+    }
+
+    /**
+     * Выполнение команды.
+     *
+     * @return null при успехе или описание ошибки
+     */
+    private String execute(AccountCommand command) {
+        var requestId = command.getRequestId();
+        switch (command.getType()) {
+            case CREATE -> {
+                return create(command, requestId);
+            }
+            case DELETE -> {
+                var optAccount = accountRepository.findWithServerById(command.getAccountId());
+                if (optAccount.isEmpty()) {
+                    return "Аккаунт не найден";
+                }
+                var account = optAccount.get();
+                // Повтор после удаления, которое успело сохраниться
+                if (account.getStatus() == Status.DELETED) {
+                    return null;
+                }
+                if (account.getServer() == null) {
+                    return "Сервер аккаунта не найден";
+                }
+                return accountService.deleteOnNode(account, account.getServer(), requestId) ? null : "Аккаунт не удален";
+            }
+            case ACTION -> {
+                var optAccount = accountRepository.findWithServerById(command.getAccountId());
+                if (optAccount.isEmpty() || optAccount.get().getStatus() == Status.DELETED) {
+                    return "Аккаунт не найден";
+                }
+                var account = optAccount.get();
+                if (account.getServer() == null) {
+                    return "Сервер аккаунта не найден";
+                }
+                var result = accountService.actionOnNode(account, account.getServer(), requestId, command.getAction())
+                        .join();
+                return result.orElse(false) ? null : "Действие не выполнено";
+            }
+            default -> {
+                return "Неизвестный тип команды";
+            }
+        }
+    }
+
+    /**
+     * Создание аккаунта. Команда выполняется вне веб-запроса, поэтому пользователь, нода и аккаунты
+     * загружаются здесь же, а аккаунт добавляется пользователю в отдельной транзакции.
+     * Прошлая попытка могла создать аккаунт на ноде, но не дождаться ответа или не сохранить его,
+     * а после перезапуска зависшая команда повторяется с тем же номером попытки:
+     * уже созданный аккаунт подхватывается, а не считается ошибкой "аккаунт уже есть".
+     *
+     * @return null при успехе или описание ошибки
+     */
+    private String create(AccountCommand command, String requestId) {
+        var chatId = command.getChatId();
+        if (userRepository.findByChatId(chatId).isEmpty()) {
+            return "Пользователь не найден";
+        }
+        var optServer = serverRepository.findById(command.getServerId());
+        if (optServer.isEmpty() || optServer.get().getStatus() == Status.DELETED) {
+            return "Сервер не найден";
+        }
+        var server = optServer.get();
+
+        var existing = accountRepository.findNotDeletedByChatId(chatId, Status.DELETED).stream()
+                .filter(account -> account.getServer() != null && account.getServer().getId() == server.getId())
+                .findFirst();
+        if (existing.isPresent()) {
+            log.info("Аккаунт команды с ID {} уже создан, ID аккаунта {}", command.getId(), existing.get().getId());
+            command.setAccountId(existing.get().getId());
+            return null;
+        }
+
+        if (!NodeHealthRegistry.isHealthy(server.getId())) {
+            throw new NodeUnavailableException(server.getId(),
+                    String.format("Сервер с ID %s недоступен", server.getId()));
+        }
+
+        var httpExecute = new HttpExecute(server, requestId);
+        var idOnServer = accountService.findOnNode(httpExecute, chatId);
+        if (idOnServer.isPresent()) {
+            log.info("Аккаунт команды с ID {} уже есть на ноде с ID {}", command.getId(), server.getId());
+        } else {
+            idOnServer = accountService.createOnNode(httpExecute, chatId);
+            if (idOnServer.isEmpty()) {
+                return "Ошибка при создании аккаунта";
+            }
+        }
+
+        var account = Account.builder()
+                .chatId(chatId)
+                .country(server.getCountry())
+                .server(server)
+                .status(Status.ACTIVE)
+                .idOnServer(idOnServer.get())
+                .build();
+        var saved = transactionTemplate.execute(status -> {
+            var created = accountRepository.save(account);
+            userRepository.findByChatId(chatId).ifPresent(user -> user.getAccountIds().add(created));
+            return created;
+        });
+        capacityIndex.accountAdded(server.getId(), Status.ACTIVE);
+        command.setAccountId(saved.getId());
+        return null;
+    }
+
+    /**
+     * Задержка перед повтором: экспоненциальная от номера попытки, со случайным разбросом до четверти,
+     * чтобы повторы команд одной ноды не приходили одновременно.
+     */
+    private Duration delay(int attempts) {
+        long base = Math.min(maxBackoff, backoff << Math.min(attempts - 1, 20));
+        long jitter = ThreadLocalRandom.current().nextLong(base / 4 + 1);
+        return Duration.ofMillis(base + jitter);
+    }
+}
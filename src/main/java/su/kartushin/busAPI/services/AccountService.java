@@ -1,22 +1,31 @@
 package su.kartushin.busAPI.services;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.core.jmx.Server;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import okhttp3.Response;
+import org.springframework.transaction.annotation.Transactional;
 import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.enums.CommandStatus;
+import su.kartushin.busAPI.enums.CommandType;
 import su.kartushin.busAPI.enums.Status;
 import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.AccountCommand;
+import su.kartushin.busAPI.objects.NodeResponse;
 import su.kartushin.busAPI.objects.ResponseObject;
 import su.kartushin.busAPI.objects.User;
 import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountCommandRepository;
 import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
 
-import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Log4j2
 @Service
@@ -24,6 +33,13 @@ public class AccountService extends CrudService<Account, Long> {
 
     @Autowired
     private ObjectMapper objectMapper;
+    @Autowired
+    private CapacityIndex capacityIndex;
+    @Autowired
+    private AccountCommandRepository commandRepository;
+
+    private static final JavaType STRING_TYPE = HttpExecute.type(String.class);
+    private static final JavaType BOOLEAN_TYPE = HttpExecute.type(Boolean.class);
 
     @Override
     public Optional<List<Account>> findAll(String requestId) {
@@ -35,6 +51,16 @@ public class AccountService extends CrudService<Account, Long> {
         return accountRepository.findById(id);
     }
 
+    /**
+     * Не удаленные аккаунты пользователя.
+     *
+     * @param chatId chat ID пользователя
+     * @return список аккаунтов
+     */
+    public List<Account> findByChatId(String chatId) {
+        return accountRepository.findNotDeletedByChatId(chatId, Status.DELETED);
+    }
+
     public Optional<Account> findByName(String name, long sId, String requestId){
         if (name == null) {
             log.error("Не передан идентефикатор чата.");
@@ -68,36 +94,32 @@ public class AccountService extends CrudService<Account, Long> {
             log.info("Найден аккаунт с нужным server id: " + accountWithServerId.get());
             return accountWithServerId;
         } else {
-            Response response = null;
             HttpExecute httpExecute
                     = new HttpExecute(server, getRequestId(requestId));
             try {
-                response = httpExecute.getRequest(String.format("/api/account/%s", name));
-                if (!response.isSuccessful()){
+                NodeResponse<String> response
+                        = httpExecute.getRequest(String.format("/api/account/%s", name), STRING_TYPE);
+                if (response == null || !response.isSuccessful()){
                     log.info("Аккаунт с server id {} не найден.", sId);
                     return  Optional.empty();
                 }
+                log.info("Обработанный ответ: {}", response.getBody());
 
-                log.info("Тело ответа: {}", response.peekBody(Long.MAX_VALUE).string());
-                ResponseObject<String> parsedObject
-                        = objectMapper.readValue(response.body().string(), ResponseObject.class);
-
-                return Optional.of(accountRepository.save(Account.builder()
+                var saved = accountRepository.save(Account.builder()
                         .country(server.getCountry())
                         .chatId(name)
                         .server(server)
                         .status(Status.ACTIVE)
-                        .idOnServer(parsedObject.getData())
-                        .build()));
+                        .idOnServer(response.getData())
+                        .build());
+                capacityIndex.accountAdded(sId, Status.ACTIVE);
+                return Optional.of(saved);
+            } catch (NodeUnavailableException e) {
+                throw e;
             } catch (Exception e) {
                 // Обработка случая, когда аккаунт с нужным server id не найден
                 log.error("Аккаунт с server id {} не найден.", sId, e);
                 return Optional.empty();
-            } finally {
-                if (response != null) {
-                    log.info("Закрываю соединение");
-                    response.close();
-                }
             }
         }
     }
@@ -123,63 +145,96 @@ public class AccountService extends CrudService<Account, Long> {
             return Optional.empty();
         }
 
+        //Проверка что нода не признана недоступной фоновыми проверками
+        if (!NodeHealthRegistry.isHealthy(account.getServer().getId())) {
+            log.error("Сервер с ID {} недоступен по результатам проверок.", account.getServer().getId());
+            throw new NodeUnavailableException(account.getServer().getId(),
+                    String.format("Сервер с ID %s недоступен", account.getServer().getId()));
+        }
+
         var result = account;
         VPNProxy server = serverRepository.getById(account.getServer().getId());
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-        Response response = null;
 
         //Проверка что этого аккаунта нет на сервере
-        response = httpExecute.getRequest(String.format("/api/account/%s", account.getChatId()));
-        if(response != null){
-            log.error(
-                    String.format("У данного пользователя уже есть аккаунт на сервере с ID {}, и URL {}",
-                            server.getId(), server.getUrl()));
-            response.close();
+        if (existsOnNode(httpExecute, account.getChatId())) {
+            log.error("У данного пользователя уже есть аккаунт на сервере с ID {}, и URL {}",
+                    server.getId(), server.getUrl());
             return Optional.empty();
         }
-        response = null;
 
         //Запрос на создание аккаунта
-        try {
-            response = httpExecute.postRequest("", String.format("/api/account/%s", account.getChatId()));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
+        var idOnServer = createOnNode(httpExecute, account.getChatId());
+        if (idOnServer.isEmpty()) {
+            log.error("Создание произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
+            return Optional.empty();
+        }
 
-            if (!response.isSuccessful()) {
-                log.error("Создание произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
-                return Optional.empty();
-            }
+        result.setIdOnServer(idOnServer.get());
+        result.setServer(server);
+        result = accountRepository.save(result);
+        capacityIndex.accountAdded(server.getId(), result.getStatus());
 
-            // Чтение тела ответа
-            log.info("Тело ответа: {}", response.peekBody(Long.MAX_VALUE).string());
-            ResponseObject<String> parsedObject
-                    = objectMapper.readValue(response.body().string(), ResponseObject.class);
-            log.info("Обработанный ответ: {}", parsedObject);
+        //обновление пользователя
+        User user = optUser.get();
+        user.getAccountIds().add(account);
+        userRepository.save(user);
 
-            result.setIdOnServer(parsedObject.getData());
-            result.setServer(server);
-            result = accountRepository.save(result);
+        return Optional.of(result);
+    }
 
-            //обновление пользователя
-            User user = optUser.get();
-            user.getAccountIds().add(account);
-            userRepository.save(user);
+    /**
+     * Проверка, что у пользователя уже есть аккаунт на ноде.
+     *
+     * @param httpExecute клиент ноды
+     * @param chatId ID чата пользователя
+     * @return true, если нода нашла аккаунт
+     */
+    public boolean existsOnNode(HttpExecute httpExecute, String chatId) {
+        NodeResponse<String> response
+                = httpExecute.getRequest(String.format("/api/account/%s", chatId), STRING_TYPE);
+        return response != null && response.isSuccessful();
+    }
 
-            return Optional.of(result);
+    /**
+     * ID аккаунта пользователя на ноде.
+     *
+     * @param httpExecute клиент ноды
+     * @param chatId ID чата пользователя
+     * @return ID аккаунта на ноде или пустой Optional, если нода его не нашла
+     */
+    public Optional<String> findOnNode(HttpExecute httpExecute, String chatId) {
+        NodeResponse<String> response
+                = httpExecute.getRequest(String.format("/api/account/%s", chatId), STRING_TYPE);
+        if (response == null || !response.isSuccessful()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(response.getData());
+    }
 
-        } catch (IOException e) {
-            log.error("Ошибка при обработке ответа от сервера", e);
+    /**
+     * Создание аккаунта на ноде.
+     *
+     * @param httpExecute клиент ноды
+     * @param chatId ID чата пользователя
+     * @return ID аккаунта на ноде или пустой Optional при ошибке
+     */
+    public Optional<String> createOnNode(HttpExecute httpExecute, String chatId) {
+        NodeResponse<String> response
+                = httpExecute.postRequest("", String.format("/api/account/%s", chatId), STRING_TYPE);
+        if (response == null || !response.isSuccessful()) {
             return Optional.empty();
-        } finally {
-            if (response != null) {
-                log.info("Закрываю соединение");
-                response.close();
-            }
         }
+        log.debug("Ответ от сервера с кодом: {}", response.getCode());
+        log.info("Обработанный ответ: {}", response.getBody());
+        return Optional.ofNullable(response.getData());
     }
 
     @Override
     public Optional<Account> update(Long id, Account accountDetails, String requestId) {
         return accountRepository.findById(id).map(existingAccount -> {
+            var previousServer = existingAccount.getServer();
+            var previousStatus = existingAccount.getStatus();
             existingAccount.setChatId(accountDetails.getChatId());
             existingAccount.setIdOnServer(accountDetails.getIdOnServer());
             existingAccount.setServerName(accountDetails.getServerName());
@@ -189,6 +244,10 @@ public class AccountService extends CrudService<Account, Long> {
 
             try {
                 var updatedAccount = accountRepository.save(existingAccount);
+                capacityIndex.accountChanged(
+                        previousServer == null ? null : previousServer.getId(), previousStatus,
+                        updatedAccount.getServer() == null ? null : updatedAccount.getServer().getId(),
+                        updatedAccount.getStatus());
                 log.info("Account с ID {} успешно обновлен: {}", id, updatedAccount);
                 return updatedAccount;
             } catch (Exception e) {
@@ -210,51 +269,83 @@ public class AccountService extends CrudService<Account, Long> {
 
             var account = optAccount.get();
             var server = serverRepository.getById(account.getServer().getId());
-            HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-            Response response = null;
-
-            try {
-                response = httpExecute
-                        .deleteRequest("",
-                                String.format("/api/account/%s", account.getIdOnServer()));
-                log.debug("Ответ от сервера с кодом: {}", response.code());
-
-                if (!response.isSuccessful()) {
-                    log.error("Удаление произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
-                    return false;
-                }
-
-                // Чтение тела ответа
-                log.info("Тело ответа: {}", response.peekBody(Long.MAX_VALUE).string());
-                ResponseObject<Boolean> parsedObject
-                        = objectMapper.readValue(response.body().string(), ResponseObject.class);
-                log.info("Обработанный ответ: {}", parsedObject);
-
-                account.setStatus(Status.DELETED);
-                accountRepository.save(account);
-
-                return true;
-            } catch (IOException e) {
-                log.error("Ошибка при обработке ответа от сервера", e);
-                return false;
-            } finally {
-                if (response != null) {
-                    log.info("Закрываю соединение");
-                    response.close();
-                }
-            }
-
+            return deleteOnNode(account, server, requestId);
+        } catch (NodeUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Удаление не получилось");
             return false;
         }
     }
 
+    /**
+     * Удаление аккаунта на ноде и пометка его удаленным без проверок в базе.
+     * Используется, когда аккаунт и его нода уже загружены.
+     *
+     * @param account аккаунт
+     * @param server нода аккаунта
+     * @param requestId ID запроса
+     * @return true, если нода удалила аккаунт
+     */
+    public boolean deleteOnNode(Account account, VPNProxy server, String requestId) {
+        HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
+
+        NodeResponse<Boolean> response = httpExecute
+                .deleteRequest("",
+                        String.format("/api/account/%s", account.getIdOnServer()), BOOLEAN_TYPE);
+        if (response == null || !response.isSuccessful()) {
+            log.error("Удаление произошло с ошибкой на сервере с ID {}.", server.getId());
+            return false;
+        }
+        log.debug("Ответ от сервера с кодом: {}", response.getCode());
+        log.info("Обработанный ответ: {}", response.getBody());
+
+        var previousStatus = account.getStatus();
+        account.setStatus(Status.DELETED);
+        accountRepository.save(account);
+        capacityIndex.accountChanged(server.getId(), previousStatus, server.getId(), Status.DELETED);
+        return true;
+    }
+
     public Optional<Boolean> action(Account account, String requestId, Action action){
+        return HttpExecute.await(actionAsync(account, requestId, action));
+    }
+
+    /**
+     * Истечение срока аккаунта: блокировка на ноде и перевод аккаунта в DISACTIVE.
+     * Нода передается уже загруженной, поэтому метод работает и вне веб-запроса.
+     *
+     * @param account аккаунт
+     * @param server нода аккаунта
+     * @param requestId ID запроса
+     * @return результат блокировки
+     */
+    public Optional<Boolean> expire(Account account, VPNProxy server, String requestId) {
+        var result = HttpExecute.await(actionOnNode(account, server, requestId, Action.BLOCK));
+        if (result.orElse(false) && account.getStatus() != Status.DISACTIVE) {
+            var previousStatus = account.getStatus();
+            account.setStatus(Status.DISACTIVE);
+            accountRepository.save(account);
+            var serverId = server.getId();
+            capacityIndex.accountChanged(serverId, previousStatus, serverId, Status.DISACTIVE);
+            log.info("Срок аккаунта с ID {} истек, аккаунт отключен", account.getId());
+        }
+        return result;
+    }
+
+    /**
+     * Асинхронное выполнение действия над аккаунтом на ноде.
+     *
+     * @param account аккаунт
+     * @param requestId ID запроса
+     * @param action действие
+     * @return Future с результатом действия, пустой Optional если аккаунт не прошел проверку
+     */
+    public CompletableFuture<Optional<Boolean>> actionAsync(Account account, String requestId, Action action){
         log.info("Работа над сервером {}", action);
         if (account.getChatId() == null) {
             log.error("Не передан идентефикатор чата.");
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
         }
 
         Optional<User> optUser = userRepository.findByChatId(account.getChatId());
@@ -262,15 +353,31 @@ public class AccountService extends CrudService<Account, Long> {
         //Проверка что пользователь существует и его получение
         if (optUser.isEmpty()) {
             log.error("Пользователь с ChatId {} не найден.", account.getChatId());
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
         }
 
         //Проверка что сервер существует и его получение
         if (!serverRepository.existsById(account.getServer().getId())) {
             log.error("Сервер с ID {} не найден.", account.getServer().getId());
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
         }
 
+        var server = serverRepository.getById(account.getServer().getId());
+        return actionOnNode(account, server, requestId, action);
+    }
+
+    /**
+     * Выполнение действия над аккаунтом на ноде без проверок пользователя и сервера в базе.
+     * Используется, когда аккаунты и их ноды уже загружены.
+     *
+     * @param account аккаунт
+     * @param server нода аккаунта
+     * @param requestId ID запроса
+     * @param action действие
+     * @return Future с результатом действия
+     */
+    public CompletableFuture<Optional<Boolean>> actionOnNode(Account account, VPNProxy server,
+                                                             String requestId, Action action){
         String uri = "";
         switch (action){
             case Action.BLOCK:{
@@ -287,38 +394,120 @@ public class AccountService extends CrudService<Account, Long> {
             }
             default:{
                 log.error("Не известно что делать с сервером");
-                return Optional.of(false);
+                return CompletableFuture.completedFuture(Optional.of(false));
             }
         }
 
-        var server = serverRepository.getById(account.getServer().getId());
+        var serverId = server.getId();
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-        Response response = null;
 
-        try {
-            response = httpExecute.postRequest("", String.format(uri, account.getIdOnServer()));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
+        return httpExecute.<Boolean>postRequestAsync("", String.format(uri, account.getIdOnServer()),
+                        BOOLEAN_TYPE, null)
+                .thenApply(response -> {
+                    if (!response.isSuccessful()) {
+                        log.error("Действие {} произошло с ошибкой на сервере с ID {}.", action, serverId);
+                        return Optional.of(false);
+                    }
+
+                    log.info("Обработанный ответ: {}", response.getBody());
+                    return Optional.of(true);
+                })
+                .exceptionally(e -> {
+                    NodeUnavailableException.propagate(e);
+                    log.error("Ошибка при обработке ответа от сервера", e);
+                    return Optional.of(false);
+                });
+    }
 
-            if (!response.isSuccessful()) {
-                log.error("Действие {} произошло с ошибкой на сервере с ID {}.", action, account.getServer().getId());
-                return Optional.of(false);
-            }
+    /**
+     * Постановка создания аккаунта в очередь команд вместо вызова ноды.
+     * Пользователь и сервер проверяются в той же транзакции, в которой записывается команда.
+     *
+     * @param account аккаунт с ID чата и сервером
+     * @param requestId ID запроса
+     * @return команда или пустой Optional, если аккаунт не прошел проверку
+     */
+    @Transactional
+    public Optional<AccountCommand> enqueueCreate(Account account, String requestId) {
+        if (account.getChatId() == null) {
+            log.error("Не передан идентефикатор чата.");
+            return Optional.empty();
+        }
 
-            // Чтение тела ответа
-            log.info("Тело ответа: {}", response.peekBody(Long.MAX_VALUE).string());
-            ResponseObject<Boolean> parsedObject
-                    = objectMapper.readValue(response.body().string(), ResponseObject.class);
-            log.info("Обработанный ответ: {}", parsedObject);
-
-            return Optional.of(response.isSuccessful());
-        } catch (IOException e) {
-            log.error("Ошибка при обработке ответа от сервера", e);
-            return Optional.of(false);
-        } finally {
-            if (response != null) {
-                log.info("Закрываю соединение");
-                response.close();
-            }
+        if (userRepository.findByChatId(account.getChatId()).isEmpty()) {
+            log.error("Пользователь с ChatId {} не найден.", account.getChatId());
+            return Optional.empty();
+        }
+
+        var optServer = serverRepository.findById(account.getServer().getId());
+        if (optServer.isEmpty() || optServer.get().getStatus() == Status.DELETED) {
+            log.error("Сервер с ID {} не найден.", account.getServer().getId());
+            return Optional.empty();
+        }
+
+        return Optional.of(enqueue(CommandType.CREATE, null, account.getChatId(),
+                account.getServer().getId(), null, requestId));
+    }
+
+    /**
+     * Постановка удаления аккаунта в очередь команд.
+     *
+     * @param serverId ID сервера из запроса
+     * @param id ID аккаунта
+     * @param requestId ID запроса
+     * @return команда или пустой Optional, если аккаунт не найден, удален или на другом сервере
+     */
+    @Transactional
+    public Optional<AccountCommand> enqueueDelete(long serverId, long id, String requestId) {
+        return findForCommand(serverId, id).map(account -> enqueue(CommandType.DELETE, null,
+                account.getChatId(), serverId, account.getId(), requestId));
+    }
+
+    /**
+     * Постановка действия над аккаунтом в очередь команд.
+     *
+     * @param serverId ID сервера из запроса
+     * @param id ID аккаунта
+     * @param action действие
+     * @param requestId ID запроса
+     * @return команда или пустой Optional, если аккаунт не найден, удален или на другом сервере
+     */
+    @Transactional
+    public Optional<AccountCommand> enqueueAction(long serverId, long id, Action action, String requestId) {
+        return findForCommand(serverId, id).map(account -> enqueue(CommandType.ACTION, action,
+                account.getChatId(), serverId, account.getId(), requestId));
+    }
+
+    private Optional<Account> findForCommand(long serverId, long id) {
+        var optAccount = accountRepository.findById(id);
+        if (optAccount.isEmpty() || optAccount.get().getStatus() == Status.DELETED) {
+            log.error("Аккаунт с ID {} не найден.", id);
+            return Optional.empty();
         }
+        if (optAccount.get().getServer() == null || optAccount.get().getServer().getId() != serverId) {
+            log.error("Аккаунт с ID {} не принадлежит серверу с ID {}.", id, serverId);
+            return Optional.empty();
+        }
+        return optAccount;
+    }
+
+    private AccountCommand enqueue(CommandType type, Action action, String chatId, long serverId,
+                                   Long accountId, String requestId) {
+        var now = Instant.now();
+        var command = commandRepository.save(AccountCommand.builder()
+                .type(type)
+                .action(action)
+                .chatId(chatId)
+                .serverId(serverId)
+                .accountId(accountId)
+                .status(CommandStatus.PENDING)
+                .nextAttemptAt(now)
+                .requestId(getRequestId(requestId))
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        log.info("Команда {} {} для аккаунта {} на сервере с ID {} поставлена в очередь с ID {}",
+                type, action == null ? "" : action, accountId == null ? chatId : accountId, serverId, command.getId());
+        return command;
     }
 }
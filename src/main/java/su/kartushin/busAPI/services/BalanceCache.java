@@ -0,0 +1,157 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.objects.Balance;
+import su.kartushin.busAPI.repositories.BalanceRepository;
+import su.kartushin.busAPI.repositories.UserRepository;
+import su.kartushin.busAPI.utils.BoundedCache;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Кэш балансов пользователей.
+ * Таблица {@link Balance} обновляется вместе с журналом в {@link LedgerBatcher}, после фиксации
+ * писатель журнала кладет сюда прочитанные в той же транзакции балансы, остальные балансы
+ * загружаются из таблицы при первом чтении.
+ * Журнал могут писать несколько экземпляров сервиса, поэтому баланс хранится не дольше
+ * billing.balance-cache.ttl-ms; решения о списании принимаются по балансам из таблицы, см. {@link #getAll}.
+ */
+@Service
+@Log4j2
+public class BalanceCache {
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${billing.balance-cache.max-size:100000}")
+    private int maxSize;
+    @Value("${billing.balance-cache.ttl-ms:10000}")
+    private long ttl;
+
+    private BoundedCache<Long, Balance> balances;
+    // ID пользователя по chat ID
+    private BoundedCache<String, Long> chatUsers;
+
+    @PostConstruct
+    public void init() {
+        balances = BoundedCache.ofSize("balances", maxSize, ttl);
+        chatUsers = BoundedCache.ofSize("balanceChatIds", maxSize, ttl);
+    }
+
+    /**
+     * Обновление балансов, записанных писателем журнала. Вызывается после фиксации транзакции.
+     *
+     * @param updated балансы после записи
+     */
+    public void update(Collection<Balance> updated) {
+        updated.forEach(this::put);
+    }
+
+    /**
+     * Баланс пользователя.
+     *
+     * @param userId ID пользователя
+     * @return баланс, нулевой если записей еще не было, или пустой Optional, если пользователь не найден
+     */
+    public Optional<Balance> get(long userId) {
+        var cached = balances.get(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        var stored = balanceRepository.findById(userId);
+        if (stored.isPresent()) {
+            return Optional.of(put(stored.get()));
+        }
+        if (!userRepository.existsById(userId)) {
+            return Optional.empty();
+        }
+        // Нулевой баланс не кэшируется: первая запись журнала могла зафиксироваться после запроса к таблице
+        return Optional.of(new Balance(userId, 0, Instant.now()));
+    }
+
+    /**
+     * Баланс пользователя по chat ID.
+     *
+     * @param chatId chat ID пользователя
+     * @return баланс или пустой Optional, если пользователь не найден
+     */
+    public Optional<Balance> getByChatId(String chatId) {
+        var userId = chatUsers.get(chatId);
+        if (userId == null) {
+            var user = userRepository.findByChatId(chatId);
+            if (user.isEmpty()) {
+                return Optional.empty();
+            }
+            userId = user.get().getId();
+            chatUsers.put(chatId, userId);
+        }
+        return get(userId);
+    }
+
+    /**
+     * Балансы существующих пользователей одним запросом к таблице, минуя кэш:
+     * по ним принимаются решения о списании, а запись другого экземпляра в кэше может быть еще не видна.
+     * Прочитанные балансы обновляют кэш.
+     *
+     * @param userIds ID пользователей, которые точно есть в базе
+     * @return балансы по ID пользователя, нулевые для пользователей без записей
+     */
+    public Map<Long, Balance> getAll(Collection<Long> userIds) {
+        var result = new HashMap<Long, Balance>();
+        for (var balance : balanceRepository.findAllById(userIds)) {
+            result.put(balance.getUserId(), put(balance));
+        }
+        var now = Instant.now();
+        for (var userId : userIds) {
+            result.computeIfAbsent(userId, id -> new Balance(id, 0, now));
+        }
+        return result;
+    }
+
+    /**
+     * Сброс баланса пользователя из кэша, следующее чтение загрузит его из базы.
+     * Нужен после исправлений таблицы балансов в обход журнала.
+     *
+     * @param userId ID пользователя
+     */
+    public void invalidate(long userId) {
+        balances.invalidate(userId);
+    }
+
+    /**
+     * Сброс привязки chat ID к пользователю после изменения или удаления пользователя.
+     *
+     * @param chatId chat ID
+     */
+    public void invalidateChat(String chatId) {
+        if (chatId != null) {
+            chatUsers.invalidate(chatId);
+        }
+    }
+
+    public List<BoundedCache.Stats> stats() {
+        return List.of(balances.stats(), chatUsers.stats());
+    }
+
+    /**
+     * Запись баланса в кэш, если в кэше нет более нового: загрузка из таблицы, начатая до записи журнала,
+     * не должна затереть баланс, который положил писатель журнала.
+     *
+     * @return баланс, оставшийся в кэше
+     */
+    private synchronized Balance put(Balance balance) {
+        var cached = balances.get(balance.getUserId());
+        if (cached != null && cached.getUpdatedAt().isAfter(balance.getUpdatedAt())) {
+            return cached;
+        }
+        balances.put(balance.getUserId(), balance);
+        return balance;
+    }
+}
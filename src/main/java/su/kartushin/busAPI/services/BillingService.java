@@ -1,33 +1,179 @@
 package su.kartushin.busAPI.services;
 
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.BillingType;
+import su.kartushin.busAPI.objects.Balance;
 import su.kartushin.busAPI.objects.Billing;
+import su.kartushin.busAPI.repositories.BillingRepository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Биллинг: журнал списаний и пополнений и баланс пользователей.
+ * Журнал только дополняется, записи пишутся пачками через {@link LedgerBatcher},
+ * баланс читается из {@link BalanceCache} без обращения к базе.
+ */
+@Log4j2
+@Service
 public class BillingService extends CrudService<Billing, Long> {
+
+    @Autowired
+    private BillingRepository billingRepository;
+    @Autowired
+    private BalanceCache balanceCache;
+    @Autowired
+    private LedgerBatcher ledgerBatcher;
+
+    @Value("${billing.list-limit:1000}")
+    private int listLimit;
+    @Value("${billing.write-timeout-ms:5000}")
+    private long writeTimeout;
+
+    /**
+     * Последние billing.list-limit записей журнала.
+     */
     @Override
     public Optional<List<Billing>> findAll(String requestId) {
-        return Optional.empty();
+        return Optional.of(billingRepository.findAllByOrderByIdDesc(PageRequest.of(0, listLimit)));
     }
 
     @Override
-    public Optional<Billing> findById(Long aLong, String requestId) {
-        return Optional.empty();
+    public Optional<Billing> findById(Long id, String requestId) {
+        return billingRepository.findById(id);
     }
 
+    /**
+     * Добавление записи в журнал.
+     *
+     * @param entity запись: пользователь, тип, сумма в копейках, необязательные аккаунт, описание и ключ идемпотентности
+     * @param requestId ID запроса
+     * @return сохраненная запись или пустой Optional, если запись не прошла проверку или не записалась
+     */
     @Override
     public Optional<Billing> save(Billing entity, String requestId) {
-        return Optional.empty();
+        try {
+            return appendAsync(entity).map(future -> future.orTimeout(writeTimeout, TimeUnit.MILLISECONDS).join());
+        } catch (Exception e) {
+            log.error("Ошибка при записи в журнал биллинга {}", entity, e);
+            return Optional.empty();
+        }
     }
 
+    /**
+     * Асинхронное добавление записи в журнал.
+     *
+     * @param entity запись журнала
+     * @return Future с сохраненной записью или пустой Optional, если запись не прошла проверку
+     */
+    public Optional<CompletableFuture<Billing>> appendAsync(Billing entity) {
+        if (entity.getType() == null || entity.getAmount() <= 0) {
+            log.error("У записи биллинга должны быть тип и положительная сумма: {}", entity);
+            return Optional.empty();
+        }
+        if (!userRepository.existsById(entity.getUserId())) {
+            log.error("Пользователь с ID {} не найден.", entity.getUserId());
+            return Optional.empty();
+        }
+
+        entity.setId(0);
+        return Optional.of(ledgerBatcher.append(entity));
+    }
+
+    /**
+     * Списание с баланса пользователя без проверки пользователя в базе.
+     * Используется, когда пользователь уже загружен.
+     *
+     * @param userId ID пользователя
+     * @param accountId ID аккаунта, за который списание, или null
+     * @param amount сумма в копейках
+     * @param description описание
+     * @param idempotencyKey ключ идемпотентности или null
+     * @return Future с сохраненной записью
+     */
+    public CompletableFuture<Billing> charge(long userId, Long accountId, long amount, String description,
+                                             String idempotencyKey) {
+        return ledgerBatcher.append(Billing.builder()
+                .userId(userId)
+                .accountId(accountId)
+                .type(BillingType.CHARGE)
+                .amount(amount)
+                .description(description)
+                .idempotencyKey(idempotencyKey)
+                .build());
+    }
+
+    /**
+     * Записи журнала не изменяются.
+     */
     @Override
-    public Optional<Billing> update(Long aLong, Billing entity, String requestId) {
+    public Optional<Billing> update(Long id, Billing entity, String requestId) {
+        log.error("Записи журнала биллинга не изменяются, для исправления нужна новая запись.");
         return Optional.empty();
     }
 
+    /**
+     * Записи журнала не удаляются.
+     */
     @Override
-    public Boolean deleteById(Long aLong, String requestId) {
-        return null;
+    public Boolean deleteById(Long id, String requestId) {
+        log.error("Записи журнала биллинга не удаляются, для исправления нужна новая запись.");
+        return false;
+    }
+
+    /**
+     * Баланс пользователя.
+     *
+     * @param userId ID пользователя
+     * @return баланс, нулевой если записей еще не было, или пустой Optional, если пользователь не найден
+     */
+    public Optional<Balance> balance(long userId) {
+        var balance = balanceCache.get(userId);
+        if (balance.isEmpty()) {
+            log.error("Пользователь с ID {} не найден.", userId);
+        }
+        return balance;
+    }
+
+    /**
+     * Баланс пользователя по chat ID.
+     *
+     * @param chatId chat ID пользователя
+     * @return баланс или пустой Optional, если пользователь не найден
+     */
+    public Optional<Balance> balanceByChatId(String chatId) {
+        var balance = balanceCache.getByChatId(chatId);
+        if (balance.isEmpty()) {
+            log.error("Пользователь с chat ID {} не найден.", chatId);
+        }
+        return balance;
+    }
+
+    /**
+     * Сброс баланса пользователя из кэша после исправления таблицы балансов в обход журнала.
+     *
+     * @param userId ID пользователя
+     */
+    public void invalidateBalance(long userId) {
+        balanceCache.invalidate(userId);
+        log.info("Баланс пользователя с ID {} сброшен из кэша", userId);
+    }
+
+    /**
+     * Последние записи журнала пользователя.
+     *
+     * @param userId ID пользователя
+     * @param limit количество записей
+     * @return записи от новых к старым
+     */
+    public List<Billing> history(long userId, int limit) {
+        return billingRepository.findByUserIdOrderByIdDesc(userId,
+                PageRequest.of(0, Math.max(1, Math.min(limit, listLimit))));
     }
 }
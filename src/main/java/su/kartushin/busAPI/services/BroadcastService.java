@@ -0,0 +1,114 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.MessagePriority;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.BroadcastJob;
+import su.kartushin.busAPI.repositories.UserRepository;
+import su.kartushin.busAPI.utils.BoundedCache;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Рассылка сообщения всем пользователям бота.
+ * Пользователи читаются страницами по возрастанию ID и ставятся в очередь рассылок {@link TelegramSender};
+ * очередь рассылок ограничена, поэтому чтение идет со скоростью отправки.
+ * Прогресс доступен по ID задачи.
+ */
+@Service
+@Log4j2
+public class BroadcastService {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TelegramSender sender;
+
+    @Value("${telegram.broadcast.page-size:500}")
+    private int pageSize;
+    @Value("${telegram.broadcast.max-jobs:100}")
+    private int maxJobs;
+    @Value("${telegram.broadcast.job-ttl-ms:604800000}")
+    private long jobTtl;
+
+    private BoundedCache<String, BroadcastJob> jobs;
+
+    @PostConstruct
+    public void init() {
+        jobs = BoundedCache.ofSize("broadcasts", maxJobs, jobTtl);
+    }
+
+    /**
+     * Запуск рассылки в фоне.
+     *
+     * @param text текст сообщения
+     * @param requestId ID запроса
+     * @return задача рассылки или пустой Optional, если текст пустой или бот выключен
+     */
+    public Optional<BroadcastJob> start(String text, String requestId) {
+        if (text == null || text.isBlank()) {
+            log.error("Текст рассылки не задан");
+            return Optional.empty();
+        }
+        if (!sender.isRunning()) {
+            log.error("Telegram бот выключен, рассылка невозможна");
+            return Optional.empty();
+        }
+
+        var job = new BroadcastJob(text);
+        jobs.put(job.getId(), job);
+        log.info("Запуск рассылки {}", job.getId());
+
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Thread.ofVirtual().name("broadcast-" + job.getId()).start(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                run(job);
+            } catch (Exception e) {
+                log.error("Ошибка рассылки {}", job.getId(), e);
+            } finally {
+                job.enqueueFinished();
+                MDC.clear();
+            }
+        });
+        return Optional.of(job);
+    }
+
+    public Optional<BroadcastJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(BroadcastJob job) {
+        long afterId = 0;
+        while (true) {
+            var users = userRepository.findWithChatPage(afterId, Status.DELETED, PageRequest.of(0, pageSize));
+            if (users.isEmpty()) {
+                break;
+            }
+            for (var user : users) {
+                long chatId;
+                try {
+                    chatId = Long.parseLong(user.getChatId().trim());
+                } catch (NumberFormatException e) {
+                    job.getSkipped().incrementAndGet();
+                    continue;
+                }
+                job.getQueued().incrementAndGet();
+                // Ждет места в очереди рассылок
+                sender.send(chatId, job.getText(), MessagePriority.BROADCAST).whenComplete(job::record);
+            }
+            afterId = users.get(users.size() - 1).getId();
+        }
+        log.info("Рассылка {}: в очередь поставлено {} сообщений, пропущено {}",
+                job.getId(), job.getQueued().get(), job.getSkipped().get());
+    }
+}
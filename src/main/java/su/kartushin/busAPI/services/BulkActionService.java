@@ -0,0 +1,204 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.BulkActionJob;
+import su.kartushin.busAPI.objects.BulkActionRequest;
+import su.kartushin.busAPI.objects.BulkActionResult;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.BoundedCache;
+import su.kartushin.busAPI.utils.NodeBulkheadRegistry;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Массовые действия BLOCK/UNBLOCK/RESTART над аккаунтами.
+ * Аккаунты и их ноды загружаются одним запросом каждые, вызовы нод идут параллельно
+ * с ограничением числа одновременных вызовов каждой ноды. Выполнение идет в фоне,
+ * прогресс и результаты по аккаунтам доступны по ID задачи.
+ */
+@Service
+@Log4j2
+public class BulkActionService {
+
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private AccountService accountService;
+
+    @Value("${bulk-action.node-parallelism:8}")
+    private int nodeParallelism;
+    @Value("${bulk-action.max-jobs:1000}")
+    private int maxJobs;
+    @Value("${bulk-action.job-ttl-ms:86400000}")
+    private long jobTtl;
+
+    private BoundedCache<String, BulkActionJob> jobs;
+
+    @PostConstruct
+    public void init() {
+        jobs = BoundedCache.ofSize("bulkActions", maxJobs, jobTtl);
+    }
+
+    /**
+     * Запуск массового действия.
+     *
+     * @param action действие
+     * @param request выбор аккаунтов
+     * @param requestId ID запроса
+     * @return запущенная задача или пустой Optional, если выбор аккаунтов задан некорректно
+     */
+    public Optional<BulkActionJob> start(Action action, BulkActionRequest request, String requestId) {
+        long selectors = Stream.of(request.getAccountIds(), request.getChatId(), request.getServerId(),
+                request.getCountry()).filter(Objects::nonNull).count();
+        if (selectors != 1) {
+            log.error("Для массового действия нужно задать ровно один способ выбора аккаунтов: {}", request);
+            return Optional.empty();
+        }
+
+        var accounts = select(request);
+        var missing = request.getAccountIds() == null ? Set.<Long>of() : missingIds(request.getAccountIds(), accounts);
+
+        var job = new BulkActionJob(action, accounts.size() + missing.size());
+        missing.forEach(id -> job.record(new BulkActionResult(id, null, "error", "Аккаунт не найден")));
+        jobs.put(job.getId(), job);
+        log.info("Запущено массовое действие {} с ID {} над {} аккаунтами", action, job.getId(), job.getTotal());
+
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Thread.ofVirtual().name("bulk-action-" + job.getId()).start(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                run(job, accounts, requestId);
+            } catch (Exception e) {
+                log.error("Ошибка при выполнении массового действия с ID {}", job.getId(), e);
+            } finally {
+                job.finish();
+                log.info("Массовое действие с ID {} завершено: успешно {}, с ошибкой {}",
+                        job.getId(), job.getSucceeded(), job.getFailed());
+                MDC.clear();
+            }
+        });
+        return Optional.of(job);
+    }
+
+    /**
+     * Получение задачи массового действия.
+     *
+     * @param jobId ID задачи
+     * @return задача или пустой Optional, если задача не найдена или устарела
+     */
+    public Optional<BulkActionJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private List<Account> select(BulkActionRequest request) {
+        if (request.getAccountIds() != null) {
+            return accountRepository.findAllById(request.getAccountIds()).stream()
+                    .filter(account -> account.getStatus() != Status.DELETED)
+                    .toList();
+        }
+        if (request.getChatId() != null) {
+            return accountRepository.findNotDeletedByChatId(request.getChatId(), Status.DELETED);
+        }
+        if (request.getServerId() != null) {
+            return accountRepository.findNotDeletedByServerId(request.getServerId(), Status.DELETED);
+        }
+        return accountRepository.findNotDeletedByCountry(request.getCountry(), Status.DELETED);
+    }
+
+    private static Set<Long> missingIds(List<Long> accountIds, List<Account> accounts) {
+        var found = accounts.stream().map(Account::getId).collect(Collectors.toSet());
+        return accountIds.stream()
+                .filter(id -> id != null && !found.contains(id))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private void run(BulkActionJob job, List<Account> accounts, String requestId) {
+        var serverIds = accounts.stream()
+                .filter(account -> account.getServer() != null)
+                .map(account -> account.getServer().getId())
+                .collect(Collectors.toSet());
+        Map<Long, VPNProxy> servers = serverRepository.findAllById(serverIds).stream()
+                .collect(Collectors.toMap(VPNProxy::getId, Function.identity()));
+
+        var byServer = new LinkedHashMap<VPNProxy, List<Account>>();
+        for (var account : accounts) {
+            var server = account.getServer() == null ? null : servers.get(account.getServer().getId());
+            if (server == null) {
+                job.record(new BulkActionResult(account.getId(), null, "error", "Сервер не найден"));
+                continue;
+            }
+            byServer.computeIfAbsent(server, s -> new ArrayList<>()).add(account);
+        }
+
+        // Каждая нода обрабатывается в своем потоке, медленная нода не задерживает остальные
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            byServer.forEach((server, serverAccounts) -> executor.submit(() -> {
+                if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                }
+                try {
+                    runOnNode(job, server, serverAccounts, requestId);
+                } finally {
+                    MDC.clear();
+                }
+            }));
+        }
+    }
+
+    private void runOnNode(BulkActionJob job, VPNProxy server, List<Account> accounts, String requestId) {
+        var limit = new Semaphore(Math.max(1, Math.min(nodeParallelism, NodeBulkheadRegistry.get(server).getLimit())));
+        var calls = new ArrayList<CompletableFuture<Void>>(accounts.size());
+        for (var account : accounts) {
+            limit.acquireUninterruptibly();
+
+            CompletableFuture<Optional<Boolean>> call;
+            try {
+                call = accountService.actionOnNode(account, server, requestId, job.getAction());
+            } catch (Exception e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            calls.add(call.handle((result, e) -> {
+                limit.release();
+                job.record(outcome(account, server, result, e));
+                return null;
+            }));
+        }
+
+        CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private static BulkActionResult outcome(Account account, VPNProxy server, Optional<Boolean> result, Throwable e) {
+        if (e != null) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            String message = cause instanceof NodeUnavailableException ? cause.getMessage() : "Ошибка при вызове сервера";
+            return new BulkActionResult(account.getId(), server.getId(), "error", message);
+        }
+        if (result != null && result.orElse(false)) {
+            return new BulkActionResult(account.getId(), server.getId(), "success", "Действие выполнено");
+        }
+        return new BulkActionResult(account.getId(), server.getId(), "error", "Сервер вернул ошибку");
+    }
+}
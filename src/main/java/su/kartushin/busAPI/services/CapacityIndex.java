@@ -0,0 +1,348 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Country;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Индекс загрузки VPN нод в памяти: количество аккаунтов в каждом статусе по нодам и странам.
+ * Строится при запуске одним агрегирующим запросом по аккаунтам и дальше обновляется
+ * при создании, изменении и удалении аккаунтов и изменении нод, без обращений к базе на чтение.
+ * Аккаунт без статуса учитывается как ACTIVE.
+ */
+@Service
+@Log4j2
+public class CapacityIndex {
+
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+
+    // Емкость ноды без заданного maxConnection
+    @Value("${placement.default-capacity:32}")
+    private int defaultCapacity;
+
+    /**
+     * Загрузка одной ноды.
+     */
+    public static class Entry {
+        @Getter
+        private final long serverId;
+        @Getter
+        private volatile Country country;
+        @Getter
+        private volatile Status status;
+        private volatile int maxConnection;
+        private final int defaultCapacity;
+        // Аккаунты на ноде по индексу статуса
+        private final AtomicIntegerArray accounts = new AtomicIntegerArray(Status.values().length);
+        // Аккаунты, которые сейчас создаются на ноде размещением
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Entry(long serverId, int defaultCapacity) {
+            this.serverId = serverId;
+            this.defaultCapacity = defaultCapacity;
+        }
+
+        /**
+         * Емкость ноды; если maxConnection не задан, используется placement.default-capacity.
+         */
+        public int getCapacity() {
+            return maxConnection > 0 ? maxConnection : defaultCapacity;
+        }
+
+        public int getAccounts(Status accountStatus) {
+            return accounts.get(accountStatus.ordinal());
+        }
+
+        /**
+         * Занятые места: не удаленные аккаунты и аккаунты, которые сейчас создаются.
+         */
+        public int getLoad() {
+            return getAccounts(Status.ACTIVE) + getAccounts(Status.DISACTIVE) + pending.get();
+        }
+
+        public int getHeadroom() {
+            return getCapacity() - getLoad();
+        }
+
+        /**
+         * Резервирование места под создаваемый аккаунт.
+         *
+         * @return false, если свободных мест нет
+         */
+        public boolean tryReserve() {
+            while (true) {
+                int current = pending.get();
+                if (getAccounts(Status.ACTIVE) + getAccounts(Status.DISACTIVE) + current >= getCapacity()) {
+                    return false;
+                }
+                if (pending.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            pending.decrementAndGet();
+        }
+
+        private void add(Status accountStatus, int delta) {
+            int index = accountStatus.ordinal();
+            accounts.updateAndGet(index, count -> Math.max(0, count + delta));
+        }
+
+        private void apply(VPNProxy server) {
+            country = server.getCountry();
+            status = server.getStatus();
+            maxConnection = server.getMaxConnection();
+        }
+
+        private ServerCapacity snapshot() {
+            return new ServerCapacity(serverId, country, status, getCapacity(),
+                    getAccounts(Status.ACTIVE), getAccounts(Status.DISACTIVE), getAccounts(Status.DELETED),
+                    pending.get(), getHeadroom());
+        }
+    }
+
+    /**
+     * Загрузка ноды для отображения.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ServerCapacity {
+        private final long serverId;
+        private final Country country;
+        private final Status status;
+        private final int capacity;
+        private final int active;
+        private final int disactive;
+        private final int deleted;
+        private final int pending;
+        private final int headroom;
+    }
+
+    /**
+     * Загрузка нод страны для отображения.
+     * Емкость и свободные места считаются только по активным нодам.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CountryCapacity {
+        private final Country country;
+        private final int servers;
+        private final int activeServers;
+        private final int capacity;
+        private final int active;
+        private final int disactive;
+        private final int deleted;
+        private final int headroom;
+    }
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Country, Set<Entry>> byCountry = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            serverRepository.findAll().forEach(this::putServer);
+            for (var count : accountRepository.countByServerAndStatus()) {
+                var entry = entries.get(count.getServerId());
+                if (entry != null) {
+                    entry.add(statusOf(count.getStatus()), (int) count.getTotal());
+                }
+            }
+            log.info("Индекс загрузки построен: нод {}", entries.size());
+        } catch (Exception e) {
+            log.error("Ошибка при построении индекса загрузки нод", e);
+        }
+    }
+
+    /**
+     * Ноды страны.
+     *
+     * @param country страна
+     * @return ноды страны, пустой набор если нод нет
+     */
+    public Collection<Entry> byCountry(Country country) {
+        var set = byCountry.get(country);
+        return set == null ? List.of() : set;
+    }
+
+    /**
+     * Загрузка ноды.
+     *
+     * @param serverId ID ноды
+     * @return запись индекса или null, если нода не известна
+     */
+    public Entry get(long serverId) {
+        return entries.get(serverId);
+    }
+
+    /**
+     * Загрузка всех нод.
+     *
+     * @return список, отсортированный по ID ноды
+     */
+    public List<ServerCapacity> servers() {
+        return entries.values().stream()
+                .map(Entry::snapshot)
+                .sorted(Comparator.comparingLong(ServerCapacity::getServerId))
+                .toList();
+    }
+
+    /**
+     * Загрузка ноды.
+     *
+     * @param serverId ID ноды
+     * @return загрузка или null, если нода не известна
+     */
+    public ServerCapacity server(long serverId) {
+        var entry = entries.get(serverId);
+        return entry == null ? null : entry.snapshot();
+    }
+
+    /**
+     * Загрузка всех стран, в которых есть ноды.
+     *
+     * @return список, отсортированный по стране
+     */
+    public List<CountryCapacity> countries() {
+        return byCountry.keySet().stream()
+                .sorted()
+                .map(this::country)
+                .toList();
+    }
+
+    /**
+     * Суммарная загрузка нод страны.
+     *
+     * @param country страна
+     * @return загрузка страны, нулевая если нод нет
+     */
+    public CountryCapacity country(Country country) {
+        int servers = 0, activeServers = 0, capacity = 0, active = 0, disactive = 0, deleted = 0, headroom = 0;
+        for (var entry : byCountry(country)) {
+            servers++;
+            active += entry.getAccounts(Status.ACTIVE);
+            disactive += entry.getAccounts(Status.DISACTIVE);
+            deleted += entry.getAccounts(Status.DELETED);
+            if (entry.getStatus() == Status.ACTIVE) {
+                activeServers++;
+                capacity += entry.getCapacity();
+                headroom += Math.max(0, entry.getHeadroom());
+            }
+        }
+        return new CountryCapacity(country, servers, activeServers, capacity, active, disactive, deleted, headroom);
+    }
+
+    /**
+     * Добавление или обновление ноды после сохранения.
+     *
+     * @param server нода
+     */
+    public void putServer(VPNProxy server) {
+        var entry = entries.computeIfAbsent(server.getId(), id -> new Entry(id, defaultCapacity));
+        synchronized (entry) {
+            var previousCountry = entry.country;
+            entry.apply(server);
+            if (previousCountry != entry.country) {
+                unindex(previousCountry, entry);
+                if (entry.country != null) {
+                    byCountry.computeIfAbsent(entry.country, c -> ConcurrentHashMap.newKeySet()).add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Смена статуса ноды без повторного чтения из базы.
+     *
+     * @param serverId ID ноды
+     * @param status новый статус
+     */
+    public void setServerStatus(long serverId, Status status) {
+        var entry = entries.get(serverId);
+        if (entry != null) {
+            entry.status = status;
+        }
+    }
+
+    /**
+     * Удаление ноды из индекса.
+     *
+     * @param serverId ID ноды
+     */
+    public void removeServer(long serverId) {
+        var entry = entries.remove(serverId);
+        if (entry != null) {
+            unindex(entry.country, entry);
+        }
+    }
+
+    /**
+     * Учет созданного на ноде аккаунта.
+     *
+     * @param serverId ID ноды
+     * @param status статус аккаунта
+     */
+    public void accountAdded(long serverId, Status status) {
+        var entry = entries.get(serverId);
+        if (entry != null) {
+            entry.add(statusOf(status), 1);
+        }
+    }
+
+    /**
+     * Учет изменения ноды или статуса аккаунта.
+     *
+     * @param previousServerId ID прежней ноды или null
+     * @param previousStatus прежний статус
+     * @param serverId ID новой ноды или null
+     * @param status новый статус
+     */
+    public void accountChanged(Long previousServerId, Status previousStatus, Long serverId, Status status) {
+        if (previousServerId != null) {
+            var entry = entries.get(previousServerId);
+            if (entry != null) {
+                entry.add(statusOf(previousStatus), -1);
+            }
+        }
+        if (serverId != null) {
+            accountAdded(serverId, status);
+        }
+    }
+
+    private static Status statusOf(Status status) {
+        return status == null ? Status.ACTIVE : status;
+    }
+
+    private void unindex(Country country, Entry entry) {
+        if (country == null) {
+            return;
+        }
+        var set = byCountry.get(country);
+        if (set != null) {
+            set.remove(entry);
+        }
+    }
+}
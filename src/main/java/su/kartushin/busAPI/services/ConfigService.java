@@ -1,31 +1,47 @@
 package su.kartushin.busAPI.services;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.log4j.Log4j2;
-import okhttp3.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import su.kartushin.busAPI.enums.Status;
 import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.AccountConfigs;
 import su.kartushin.busAPI.objects.Billing;
 import su.kartushin.busAPI.objects.Config;
+import su.kartushin.busAPI.objects.ConfigFile;
+import su.kartushin.busAPI.objects.NodeResponse;
 import su.kartushin.busAPI.objects.ResponseObject;
 import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.ConfigRepository;
 import su.kartushin.busAPI.repositories.UserRepository;
 import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.BoundedCache;
 import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
 
-import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Service
 @Log4j2
@@ -37,109 +53,232 @@ public class ConfigService {
     protected AccountRepository accountRepository;
     @Autowired
     protected UserRepository userRepository;
+    @Autowired
+    protected ConfigRepository configRepository;
 
     @Autowired
     private ObjectMapper objectMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private static final JavaType CONFIG_LIST_TYPE = HttpExecute.listType(
+            TypeFactory.defaultInstance().constructMapType(LinkedHashMap.class, String.class, String.class));
+    private static final JavaType STRING_TYPE = HttpExecute.type(String.class);
+    private static final JavaType OBJECT_TYPE = HttpExecute.type(Object.class);
+
+    @Value("${config.multi.max-accounts:100}")
+    private int multiMaxAccounts;
+    @Value("${config.multi.timeout-ms:10000}")
+    private long multiTimeout;
+
+    @Value("${config.file-cache.max-bytes:67108864}")
+    private long fileCacheMaxBytes;
+    @Value("${config.file-cache.ttl-ms:600000}")
+    private long fileCacheTtl;
+
+    // Кэш файлов конфигов по (ID аккаунта, ID конфига на сервере), ограничен по объему
+    private BoundedCache<String, ConfigFile> filesCache;
+
+    @PostConstruct
+    public void init() {
+        // Строки в памяти занимают до 2 байт на символ
+        filesCache = new BoundedCache<>("configFiles", fileCacheMaxBytes, fileCacheTtl,
+                file -> 2L * file.getContent().length());
+    }
+
+    /**
+     * Счетчики кэшей конфигов.
+     *
+     * @return список счетчиков
+     */
+    public List<BoundedCache.Stats> cacheStats() {
+        return List.of(filesCache.stats());
+    }
 
     public Optional<List<Config>> findAll(Long accountId, String requestId) {
-        var optAccount = accountRepository.findById(accountId);
+        return HttpExecute.await(findAllAsync(accountId, requestId));
+    }
+
+    /**
+     * Асинхронное получение всех конфигов аккаунта.
+     * Аккаунт загружается вместе с нодой, поэтому метод работает и вне веб-запроса, например из Telegram бота.
+     *
+     * @param accountId ID аккаунта
+     * @param requestId ID запроса
+     * @return Future со списком конфигов или пустым Optional при ошибке
+     */
+    public CompletableFuture<Optional<List<Config>>> findAllAsync(Long accountId, String requestId) {
+        var optAccount = accountRepository.findWithServerById(accountId);
         if(optAccount.isEmpty()){
             log.error("Нет такого аккаунта.");
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
         }
 
-        var account = optAccount.get();
-        var server = account.getServer();
+        return findAllAsync(optAccount.get(), requestId);
+    }
 
-        HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
+    /**
+     * Получение конфигов нескольких аккаунтов: все аккаунты пользователя или аккаунты из списка.
+     * Аккаунты загружаются одним запросом к базе, списки конфигов запрашиваются с нод параллельно,
+     * ошибка одного аккаунта не влияет на остальные.
+     *
+     * @param chatId ID чата пользователя или null
+     * @param accountIds список ID аккаунтов или null
+     * @param requestId ID запроса
+     * @return Future с конфигами по аккаунтам или пустым Optional, если выбор аккаунтов задан некорректно
+     */
+    public CompletableFuture<Optional<List<AccountConfigs>>> findAllForAccountsAsync(String chatId, List<Long> accountIds,
+                                                                                     String requestId) {
+        if ((chatId == null) == (accountIds == null) || (accountIds != null && accountIds.size() > multiMaxAccounts)) {
+            log.error("Нужно передать либо ID чата, либо не больше {} ID аккаунтов.", multiMaxAccounts);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
 
-        Response response = null;
-        try {
-            response = httpExecute.getRequest(String.format("/api/user/%s", account.getIdOnServer()));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
+        List<Account> accounts;
+        var results = new ArrayList<CompletableFuture<AccountConfigs>>();
+        if (chatId != null) {
+            accounts = accountRepository.findNotDeletedByChatId(chatId, Status.DELETED);
+        } else {
+            accounts = accountRepository.findAllById(accountIds);
+            var found = accounts.stream().map(Account::getId).collect(Collectors.toSet());
+            accountIds.stream()
+                    .filter(id -> id != null && !found.contains(id))
+                    .distinct()
+                    .forEach(id -> results.add(CompletableFuture.completedFuture(
+                            AccountConfigs.error(id, null, "Аккаунт не найден"))));
+        }
 
-            if (!response.isSuccessful()) {
-                log.error("Получение произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
-                return Optional.empty();
-            }
+        for (var account : accounts) {
+            results.add(findAllForAccount(account, requestId));
+        }
 
-            if (response.body() == null) {
-                log.error("При получении произошла ошибкой на сервере с ID {}. Тело пустое.", account.getServer().getId());
-                return Optional.empty();
-            }
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> Optional.of(results.stream()
+                        .map(CompletableFuture::join)
+                        .sorted(Comparator.comparingLong(AccountConfigs::getAccountId))
+                        .toList()));
+    }
 
-            ResponseObject<List<LinkedHashMap<String, String>>> parsedObject
-                    = objectMapper.readValue(response.body().string(), ResponseObject.class);
-            log.info("Обработанный ответ: {}", parsedObject);
-
-            ArrayList<Config> configs = new ArrayList<>();
-            for (var el : parsedObject.getData()){
-                configs.add(
-                        Config.builder()
-                                .idOnServer(el.get("id"))
-                                .account(account)
-                                .name(el.get("name"))
-                                .build());
-            }
+    private CompletableFuture<AccountConfigs> findAllForAccount(Account account, String requestId) {
+        if (account.getStatus() == Status.DELETED) {
+            return CompletableFuture.completedFuture(AccountConfigs.error(account.getId(), null, "Аккаунт удален"));
+        }
+        if (account.getServer() == null) {
+            return CompletableFuture.completedFuture(AccountConfigs.error(account.getId(), null, "Сервер не найден"));
+        }
+        var serverId = account.getServer().getId();
 
-            return Optional.of(configs);
+        CompletableFuture<Optional<List<Config>>> call;
+        try {
+            call = findAllAsync(account, requestId);
         } catch (Exception e) {
-            log.error("При получении конфигов произошла ошибка", e);
-            return Optional.empty();
-        } finally {
-            if(response != null)
-                response.close();
+            call = CompletableFuture.failedFuture(e);
         }
+
+        return call.orTimeout(multiTimeout, TimeUnit.MILLISECONDS)
+                .handle((result, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        log.error("Конфиги аккаунта с ID {} не получены: {}", account.getId(), cause.toString());
+                        String message = cause instanceof NodeUnavailableException ? cause.getMessage()
+                                : cause instanceof TimeoutException ? "Сервер не ответил вовремя"
+                                : "Ошибка при получении конфигов";
+                        return AccountConfigs.error(account.getId(), serverId, message);
+                    }
+                    return result
+                            .map(configs -> new AccountConfigs(account.getId(), serverId, "success",
+                                    "Конфиги успешно получены", configs))
+                            .orElseGet(() -> AccountConfigs.error(account.getId(), serverId, "Конфиги не найдены"));
+                });
     }
 
-    public Optional<Config> findByName(Long accountId, String name, String requestId) {
-        var optAccount = accountRepository.findById(accountId);
-        if(optAccount.isEmpty()){
-            log.error("Нет такого аккаунта.");
-            return Optional.empty();
+    /**
+     * Получение всех конфигов уже загруженного аккаунта: из локальной копии или одним запросом к ноде.
+     * Список, полученный с ноды, заменяет локальную копию.
+     *
+     * @param account аккаунт
+     * @param requestId ID запроса
+     * @return Future со списком конфигов или пустым Optional при ошибке
+     */
+    private CompletableFuture<Optional<List<Config>>> findAllAsync(Account account, String requestId) {
+        var accountId = account.getId();
+        if (account.getConfigsSyncedAt() != null) {
+            log.debug("Конфиги аккаунта с ID {} получены из базы", accountId);
+            return CompletableFuture.completedFuture(Optional.of(configRepository.findByAccountId(accountId)));
         }
+        // Версия на момент загрузки аккаунта: если конфиги с тех пор менялись, ответ ноды копию не заменит
+        long version = account.getConfigsVersion();
 
-        var account = optAccount.get();
         var server = account.getServer();
+        var serverId = server.getId();
 
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-        Response response = null;
-        try {
-            response = httpExecute.getRequest(String.format("/api/user/%s/%s", account.getIdOnServer(), name));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
 
-            if (!response.isSuccessful()) {
-                log.error("Получение произошло с ошибкой на сервере с ID {} и именем {}",
-                        account.getServer().getId(),
-                        name);
-                return Optional.empty();
-            }
-
-            if (response.body() == null) {
-                log.error("При получении произошла ошибкой на сервере с ID {}. Тело пустое.", account.getServer().getId());
-                return Optional.empty();
-            }
+        return httpExecute.<List<LinkedHashMap<String, String>>>getRequestAsync(
+                        String.format("/api/user/%s", account.getIdOnServer()), CONFIG_LIST_TYPE, null)
+                .thenApply(response -> {
+                    if (!response.isSuccessful()) {
+                        log.error("Получение произошло с ошибкой на сервере с ID {}.", serverId);
+                        return Optional.<List<Config>>empty();
+                    }
+
+                    if (response.getBody() == null) {
+                        log.error("При получении произошла ошибкой на сервере с ID {}. Тело пустое.", serverId);
+                        return Optional.<List<Config>>empty();
+                    }
+                    log.info("Обработанный ответ: {}", response.getBody());
+
+                    ArrayList<Config> configs = new ArrayList<>();
+                    for (var el : response.getData()){
+                        configs.add(
+                                Config.builder()
+                                        .idOnServer(el.get("id"))
+                                        .account(account)
+                                        .name(el.get("name"))
+                                        .build());
+                    }
+
+                    return Optional.of(replaceLocal(account, version, configs));
+                })
+                .exceptionally(e -> {
+                    NodeUnavailableException.propagate(e);
+                    log.error("При получении конфигов произошла ошибка", e);
+                    return Optional.empty();
+                });
+    }
 
-            var optConfigs = findAll(accountId, requestId);
+    public Optional<Config> findByName(Long accountId, String name, String requestId) {
+        var optAccount = accountRepository.findWithServerById(accountId);
+        if(optAccount.isEmpty()){
+            log.error("Нет такого аккаунта.");
+            return Optional.empty();
+        }
 
-            if (optConfigs.isEmpty()){
-                return Optional.empty();
-            }
+        return findByName(optAccount.get(), name, requestId);
+    }
 
-            return optConfigs.get().stream()
-                    .filter(user -> name.equals(user.getName()))
-                    .findFirst();
-        } catch (Exception e) {
-            log.error("При получении конфигов произошла ошибка", e);
-            return Optional.empty();
-        } finally {
-            if(response != null)
-                response.close();
+    /**
+     * Поиск конфига по имени.
+     * Если локальная копия актуальна, это один запрос к базе по индексу (account_id, name),
+     * иначе список загружается с ноды одним запросом.
+     *
+     * @param account аккаунт
+     * @param name имя конфига
+     * @param requestId ID запроса
+     * @return конфиг или пустой Optional, если конфига нет или список не получен
+     */
+    private Optional<Config> findByName(Account account, String name, String requestId) {
+        if (account.getConfigsSyncedAt() != null) {
+            return configRepository.findByAccountIdAndName(account.getId(), name);
         }
+        return HttpExecute.await(findAllAsync(account, requestId))
+                .flatMap(configs -> configs.stream()
+                        .filter(config -> name.equals(config.getName()))
+                        .findFirst());
     }
 
     public Optional<Config> save(Long accountId, Config entity, String requestId) {
-        var optAccount = accountRepository.findById(accountId);
+        var optAccount = accountRepository.findWithServerById(accountId);
         if(optAccount.isEmpty()){
             log.error("Нет такого аккаунта.");
             return Optional.empty();
@@ -158,7 +297,7 @@ public class ConfigService {
 
         var server = account.getServer();
 
-        if(findByName(accountId, entity.getName(), requestId).isPresent()){
+        if(findByName(account, entity.getName(), requestId).isPresent()){
             {
                 log.error("Данное имя уже используется. Создание не возможно.");
                 return Optional.empty();
@@ -167,42 +306,37 @@ public class ConfigService {
 
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
 
-        Response response = null;
         try {
-            response = httpExecute.postRequest("",
-                    String.format("/api/user/%s/%s", account.getIdOnServer(), entity.getName()));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
-
-            if (!response.isSuccessful()) {
+            NodeResponse<String> response = httpExecute.postRequest("",
+                    String.format("/api/user/%s/%s", account.getIdOnServer(), entity.getName()), STRING_TYPE);
+            if (response == null || !response.isSuccessful()) {
                 log.error("Получение произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
                 return Optional.empty();
             }
 
-            if (response.body() == null) {
+            if (response.getBody() == null) {
                 log.error("При получении произошла ошибкой на сервере с ID {}. Тело пустое.", account.getServer().getId());
                 return Optional.empty();
             }
-
-            ResponseObject<String> parsedObject
-                    = objectMapper.readValue(response.body().string(), ResponseObject.class);
-            log.info("Обработанный ответ: {}", parsedObject);
-
-            return Optional.of(Config.builder()
-                                .idOnServer(parsedObject.getData())
-                                .account(account)
-                                .name(entity.getName())
-                                .build());
+            log.info("Обработанный ответ: {}", response.getBody());
+
+            var created = Config.builder()
+                    .idOnServer(response.getData())
+                    .account(account)
+                    .name(entity.getName())
+                    .build();
+            writeThrough(account, () -> configRepository.save(created));
+            return Optional.of(created);
+        } catch (NodeUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("При создании конфига произошла ошибка", e);
             return Optional.empty();
-        } finally {
-            if(response != null)
-                response.close();
         }
     }
 
     public Optional<Config> update(Long accountId, String newName, Config entity, String requestId) {
-        var optAccount = accountRepository.findById(accountId);
+        var optAccount = accountRepository.findWithServerById(accountId);
         if(optAccount.isEmpty()){
             log.error("Нет такого аккаунта.");
             return Optional.empty();
@@ -212,7 +346,7 @@ public class ConfigService {
         var server = account.getServer();
 
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-        var optEntity = findByName(accountId, entity.getName(), requestId);
+        var optEntity = findByName(account, entity.getName(), requestId);
         if (optEntity.isEmpty()){
             log.error("Пользователь не найден");
             return Optional.empty();
@@ -220,29 +354,32 @@ public class ConfigService {
 
         entity = optEntity.get();
 
-        Response response = null;
         try {
-            response = httpExecute.putRequest("",
-                    String.format("/api/user/%s/%s/%s", account.getIdOnServer(), entity.getIdOnServer(), newName));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
-
-            if (!response.isSuccessful()) {
+            NodeResponse<Object> response = httpExecute.putRequest("",
+                    String.format("/api/user/%s/%s/%s", account.getIdOnServer(), entity.getIdOnServer(), newName),
+                    OBJECT_TYPE);
+            if (response == null || !response.isSuccessful()) {
                 log.error("Получение произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
+                markUnsynced(account);
                 return Optional.empty();
             }
 
-            return findByName(accountId, newName, requestId);
+            filesCache.invalidate(fileKey(accountId, entity.getIdOnServer()));
+            // Нода меняет только имя, поэтому в локальной копии переименовывается та же строка
+            var renamed = entity;
+            renamed.setName(newName);
+            writeThrough(account, () -> configRepository.save(renamed));
+            return Optional.of(renamed);
+        } catch (NodeUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("При создании конфига произошла ошибка", e);
             return Optional.empty();
-        } finally {
-            if (response != null)
-                response.close();
         }
     }
 
     public Boolean deleteByName(Long accountId, String name, String requestId) {
-        var optAccount = accountRepository.findById(accountId);
+        var optAccount = accountRepository.findWithServerById(accountId);
         if(optAccount.isEmpty()){
             log.error("Нет такого аккаунта.");
             return false;
@@ -252,7 +389,7 @@ public class ConfigService {
         var server = account.getServer();
 
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-        var optEntity = findByName(accountId, name, requestId);
+        var optEntity = findByName(account, name, requestId);
         if (optEntity.isEmpty()){
             log.error("Пользователь не найден");
             return false;
@@ -260,29 +397,41 @@ public class ConfigService {
 
         var entity = optEntity.get();
 
-        Response response = null;
         try {
-            response = httpExecute.deleteRequest("",
-                    String.format("/api/user/%s/%s", account.getIdOnServer(), entity.getIdOnServer()));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
-
-            if (!response.isSuccessful()) {
+            NodeResponse<Object> response = httpExecute.deleteRequest("",
+                    String.format("/api/user/%s/%s", account.getIdOnServer(), entity.getIdOnServer()), OBJECT_TYPE);
+            if (response == null || !response.isSuccessful()) {
                 log.error("Получение произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
+                markUnsynced(account);
                 return false;
             }
 
+            filesCache.invalidate(fileKey(accountId, entity.getIdOnServer()));
+            writeThrough(account, () -> configRepository.delete(entity));
             return true;
+        } catch (NodeUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("При создании конфига произошла ошибка", e);
             return false;
-        } finally {
-            if (response != null)
-                response.close();
         }
     }
 
     public Optional<String> getConfigFile(Long accountId, String configName, String requestId) {
-        var optAccount = accountRepository.findById(accountId);
+        return getConfigFileWithTag(accountId, configName, requestId).map(ConfigFile::getContent);
+    }
+
+    /**
+     * Получение файла конфига вместе с его ETag.
+     * Файлы кэшируются по (ID аккаунта, ID конфига на сервере).
+     *
+     * @param accountId ID аккаунта
+     * @param configName Имя конфига
+     * @param requestId ID запроса
+     * @return файл конфига или пустой Optional при ошибке
+     */
+    public Optional<ConfigFile> getConfigFileWithTag(Long accountId, String configName, String requestId) {
+        var optAccount = accountRepository.findWithServerById(accountId);
         if (optAccount.isEmpty()) {
             log.error("Нет такого аккаунта.");
             return Optional.empty();
@@ -292,39 +441,121 @@ public class ConfigService {
         var server = account.getServer();
 
         HttpExecute httpExecute = new HttpExecute(server, getRequestId(requestId));
-        var optEntity = findByName(accountId, configName, requestId);
+        var optEntity = findByName(account, configName, requestId);
         if (optEntity.isEmpty()) {
             log.error("Пользователь не найден");
             return Optional.empty();
         }
 
         var entity = optEntity.get();
+        var fileKey = fileKey(accountId, entity.getIdOnServer());
+        var cached = filesCache.get(fileKey);
+        if (cached != null) {
+            log.debug("Файл конфига {} аккаунта с ID {} получен из кэша", configName, accountId);
+            return Optional.of(cached);
+        }
 
-        Response response = null;
         try {
-            response = httpExecute.getRequest(
-                    String.format("/api/user/config/%s/%s", account.getIdOnServer(), entity.getIdOnServer()));
-            log.debug("Ответ от сервера с кодом: {}", response.code());
-
-            if (!response.isSuccessful()) {
+            NodeResponse<String> response = httpExecute.getRequest(
+                    String.format("/api/user/config/%s/%s", account.getIdOnServer(), entity.getIdOnServer()),
+                    STRING_TYPE);
+            if (response == null || !response.isSuccessful() || response.getBody() == null) {
                 log.error("Получение произошло с ошибкой на сервере с ID {}.", account.getServer().getId());
                 return Optional.empty();
             }
+            log.info("Обработанный ответ: статус {}, сообщение {}",
+                    response.getBody().getStatus(), response.getBody().getMessage());
 
-            ResponseObject<String> parsedObject
-                    = objectMapper.readValue(response.body().string(), ResponseObject.class);
-            log.info("Обработанный ответ: {}", parsedObject);
+            if (response.getData() == null) {
+                return Optional.empty();
+            }
 
-            return Optional.of(parsedObject.getData());
+            var file = ConfigFile.of(response.getData());
+            filesCache.put(fileKey, file);
+            return Optional.of(file);
+        } catch (NodeUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("При создании конфига произошла ошибка", e);
             return Optional.empty();
-        } finally {
-            if (response != null)
-                response.close();
         }
     }
 
+    /**
+     * Замена локальной копии конфигов аккаунта списком с ноды.
+     * Удаление старой копии, запись новой и время синхронизации пишутся одной транзакцией,
+     * поэтому при ошибке посередине копия остается прежней и параллельное чтение не видит ее наполовину замененной.
+     * Если версия копии в базе уже не та, с которой начиналась загрузка, список мог устареть
+     * (в том числе из-за изменения через другой экземпляр сервиса) и транзакция откатывается.
+     *
+     * @param account аккаунт
+     * @param version версия копии на момент запроса к ноде
+     * @param configs конфиги с ноды
+     * @return сохраненные конфиги или конфиги с ноды, если копия не заменена
+     */
+    private List<Config> replaceLocal(Account account, long version, List<Config> configs) {
+        try {
+            var syncedAt = Instant.now();
+            var saved = transactionTemplate.execute(status -> {
+                configRepository.deleteByAccountId(account.getId());
+                var result = configRepository.saveAll(configs);
+                if (accountRepository.setConfigsSyncedAt(account.getId(), version, syncedAt) == 0) {
+                    status.setRollbackOnly();
+                    return null;
+                }
+                return result;
+            });
+            if (saved == null) {
+                log.info("Конфиги аккаунта с ID {} изменились во время загрузки с ноды, локальная копия не заменена",
+                        account.getId());
+                return configs;
+            }
+            account.setConfigsSyncedAt(syncedAt);
+            return saved;
+        } catch (Exception e) {
+            log.error("Не удалось сохранить конфиги аккаунта с ID {} в базу", account.getId(), e);
+            return configs;
+        }
+    }
+
+    /**
+     * Запись изменения конфига в локальную копию после успешного изменения на ноде.
+     * Версия копии увеличивается до записи, чтобы начатые раньше загрузки с ноды не затерли изменение.
+     * Если копия не актуальна, она не заполняется: следующее чтение загрузит список с ноды целиком.
+     *
+     * @param account аккаунт
+     * @param change изменение локальной копии
+     */
+    private void writeThrough(Account account, Runnable change) {
+        if (account.getConfigsSyncedAt() == null) {
+            // Копию могла заполнить параллельная загрузка с ноды, начатая до изменения
+            markUnsynced(account);
+            return;
+        }
+
+        try {
+            accountRepository.incrementConfigsVersion(account.getId());
+            change.run();
+        } catch (Exception e) {
+            log.error("Не удалось записать изменение конфига аккаунта с ID {} в базу", account.getId(), e);
+            markUnsynced(account);
+        }
+    }
+
+    /**
+     * Пометка локальной копии конфигов аккаунта неактуальной, когда результат изменения на ноде неизвестен.
+     *
+     * @param account аккаунт
+     */
+    private void markUnsynced(Account account) {
+        accountRepository.markConfigsUnsynced(account.getId());
+        account.setConfigsSyncedAt(null);
+    }
+
+    private static String fileKey(Long accountId, String configIdOnServer) {
+        return accountId + ":" + configIdOnServer;
+    }
+
     protected String getRequestId(String requestId){
         return (requestId == null || requestId.isEmpty()) ?
                 "no requestId" :
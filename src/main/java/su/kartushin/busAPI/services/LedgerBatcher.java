@@ -0,0 +1,263 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import su.kartushin.busAPI.objects.Balance;
+import su.kartushin.busAPI.objects.Billing;
+import su.kartushin.busAPI.repositories.BalanceRepository;
+import su.kartushin.busAPI.repositories.BillingRepository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Групповая запись журнала биллинга.
+ * Записи от параллельных запросов собираются в очередь, один поток пишет их пачками:
+ * журнал - пакетной вставкой, балансы - одним upsert на пользователя за пачку, всё в одной транзакции.
+ * Обновленные балансы читаются в той же транзакции и после фиксации кладутся в {@link BalanceCache}.
+ * Поток ждет до billing.batch.max-delay-ms, чтобы пачка набралась, и не больше billing.batch.max-size записей.
+ * Если транзакция пачки не прошла, записи повторяются по одной, чтобы ошибка одной записи не отменяла остальные.
+ */
+@Service
+@Log4j2
+public class LedgerBatcher {
+
+    private static final String INSERT_ENTRY = "insert into billing " +
+            "(user_id, account_id, type, amount, description, idempotency_key, created_at) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT_BALANCE = "insert into balance (user_id, balance, updated_at) values (?, ?, ?) " +
+            "on duplicate key update balance = balance + values(balance), updated_at = values(updated_at)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private BillingRepository billingRepository;
+    @Autowired
+    private BalanceRepository balanceRepository;
+    @Autowired
+    private BalanceCache balanceCache;
+
+    @Value("${billing.batch.max-size:500}")
+    private int maxSize;
+    @Value("${billing.batch.max-delay-ms:5}")
+    private long maxDelay;
+    @Value("${billing.batch.queue-capacity:100000}")
+    private int queueCapacity;
+
+    private record Pending(Billing entry, CompletableFuture<Billing> result) {
+    }
+
+    private BlockingQueue<Pending> queue;
+    private Thread writer;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = Thread.ofVirtual().name("ledger-writer").start(this::write);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+    }
+
+    /**
+     * Постановка записи в очередь на запись.
+     * Запись с уже записанным ключом идемпотентности не дублируется, Future получает существующую запись.
+     *
+     * @param entry запись журнала
+     * @return Future с сохраненной записью; завершается с ошибкой, если очередь переполнена или запись не удалась
+     */
+    public CompletableFuture<Billing> append(Billing entry) {
+        var pending = new Pending(entry, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            log.error("Очередь записи журнала биллинга переполнена");
+            return CompletableFuture.failedFuture(new IllegalStateException("Очередь журнала биллинга переполнена"));
+        }
+        return pending.result();
+    }
+
+    private void write() {
+        var batch = new ArrayList<Pending>(maxSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxSize - batch.size());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+                while (batch.size() < maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxSize - batch.size());
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Ошибка при записи журнала биллинга", e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        var error = new IllegalStateException("Запись журнала биллинга остановлена");
+        queue.forEach(pending -> pending.result().completeExceptionally(error));
+        queue.clear();
+    }
+
+    private void flush(List<Pending> batch) {
+        var balances = new ArrayList<Balance>();
+        List<Billing> saved;
+        try {
+            saved = transactionTemplate.execute(status -> insert(batch.stream().map(Pending::entry).toList(), balances));
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                log.error("Запись журнала биллинга не удалась: {}", batch.get(0).entry(), e);
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            log.warn("Пачка из {} записей журнала биллинга не записана, запись по одной: {}", batch.size(), e.toString());
+            for (var pending : batch) {
+                flush(List.of(pending));
+            }
+            return;
+        }
+
+        // Пачка зафиксирована, повтор по одной записал бы ее второй раз, поэтому ошибки дальше только логируются
+        try {
+            // Кэш обновляется до завершения Future, чтобы записавший сразу видел новый баланс
+            balanceCache.update(balances);
+        } catch (Exception e) {
+            log.error("Ошибка при обновлении кэша балансов", e);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(saved.get(i));
+        }
+        log.debug("Записано {} записей журнала биллинга", batch.size());
+    }
+
+    /**
+     * Запись пачки в текущей транзакции.
+     *
+     * @param balances сюда добавляются балансы пользователей после записи
+     * @return сохраненные записи в порядке пачки
+     */
+    private List<Billing> insert(List<Billing> entries, List<Balance> balances) {
+        var now = Instant.now();
+        var fresh = new ArrayList<Billing>(entries.size());
+
+        // Повторы по ключу идемпотентности: уже записанные в базе и повторы внутри пачки
+        var keys = entries.stream()
+                .map(Billing::getIdempotencyKey)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, Billing> existing = keys.isEmpty() ? new HashMap<>() :
+                billingRepository.findByIdempotencyKeyIn(keys).stream()
+                        .collect(Collectors.toMap(Billing::getIdempotencyKey, Function.identity()));
+
+        var freshKeys = new HashSet<String>();
+        for (var entry : entries) {
+            var key = entry.getIdempotencyKey();
+            if (key == null || (!existing.containsKey(key) && freshKeys.add(key))) {
+                entry.setCreatedAt(now);
+                fresh.add(entry);
+            }
+        }
+
+        if (!fresh.isEmpty()) {
+            insertEntries(fresh);
+            balances.addAll(upsertBalances(fresh, now));
+            fresh.stream()
+                    .filter(entry -> entry.getIdempotencyKey() != null)
+                    .forEach(entry -> existing.put(entry.getIdempotencyKey(), entry));
+        }
+
+        return entries.stream()
+                .map(entry -> entry.getIdempotencyKey() == null ? entry : existing.get(entry.getIdempotencyKey()))
+                .toList();
+    }
+
+    private void insertEntries(List<Billing> entries) {
+        var keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_ENTRY, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        var entry = entries.get(i);
+                        ps.setLong(1, entry.getUserId());
+                        if (entry.getAccountId() == null) {
+                            ps.setNull(2, Types.BIGINT);
+                        } else {
+                            ps.setLong(2, entry.getAccountId());
+                        }
+                        ps.setString(3, entry.getType().name());
+                        ps.setLong(4, entry.getAmount());
+                        ps.setString(5, entry.getDescription());
+                        ps.setString(6, entry.getIdempotencyKey());
+                        ps.setTimestamp(7, Timestamp.from(entry.getCreatedAt()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return entries.size();
+                    }
+                },
+                keyHolder);
+
+        var keys = keyHolder.getKeyList();
+        for (int i = 0; i < entries.size() && i < keys.size(); i++) {
+            entries.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+    }
+
+    /**
+     * Изменение балансов пользователей пачки, пользователи обновляются в порядке ID,
+     * чтобы параллельные транзакции не блокировали друг друга по кругу.
+     *
+     * @return балансы после изменения
+     */
+    private List<Balance> upsertBalances(List<Billing> entries, Instant now) {
+        var deltas = new TreeMap<Long, Long>();
+        for (var entry : entries) {
+            deltas.merge(entry.getUserId(), entry.balanceDelta(), Long::sum);
+        }
+
+        var rows = new ArrayList<>(deltas.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_BALANCE, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.getKey());
+            ps.setLong(2, row.getValue());
+            ps.setTimestamp(3, Timestamp.from(now));
+        });
+        return balanceRepository.findAllById(deltas.keySet());
+    }
+}
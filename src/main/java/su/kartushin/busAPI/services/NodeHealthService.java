@@ -0,0 +1,123 @@
+package su.kartushin.busAPI.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeHealth;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая проверка доступности VPN нод.
+ * Все не удаленные ноды проверяются параллельно, результаты попадают в {@link NodeHealthRegistry}.
+ * При включенном node.health.auto-disable недоступная активная нода отключается,
+ * а после восстановления включается обратно, если её отключила проверка.
+ * Отметка об отключении проверкой хранится в базе, поэтому переживает перезапуск.
+ */
+@Service
+@Log4j2
+public class NodeHealthService {
+
+    private static final String PROBE_REQUEST_ID = "health-probe";
+
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private CapacityIndex capacityIndex;
+
+    @Value("${node.health.timeout-ms:3000}")
+    private long timeout;
+    @Value("${node.health.path:/}")
+    private String healthPath;
+    @Value("${node.health.auto-disable:false}")
+    private boolean autoDisable;
+    @Value("${node.health.window-size:100}")
+    private int windowSize;
+    @Value("${node.health.failure-threshold:3}")
+    private int failureThreshold;
+    @Value("${node.health.recovery-threshold:2}")
+    private int recoveryThreshold;
+
+    @PostConstruct
+    public void init() {
+        NodeHealthRegistry.configure(windowSize, failureThreshold, recoveryThreshold);
+    }
+
+    @Scheduled(fixedDelayString = "${node.health.interval-ms:10000}")
+    public void probeAll() {
+        List<VPNProxy> servers;
+        try {
+            servers = serverRepository.findByStatusNot(Status.DELETED);
+        } catch (Exception e) {
+            log.error("Не удалось получить список нод для проверки", e);
+            return;
+        }
+
+        var probes = servers.stream()
+                .map(this::probe)
+                .toArray(CompletableFuture[]::new);
+        try {
+            // Каждая проверка ограничена своим таймаутом, общий запас на случай зависшего диспетчера
+            CompletableFuture.allOf(probes).get(timeout * 2, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("Проверка нод не завершилась за отведенное время: {}", e.getMessage());
+        }
+
+        if (autoDisable) {
+            servers.forEach(this::applyStatus);
+        }
+    }
+
+    private CompletableFuture<Void> probe(VPNProxy server) {
+        var health = NodeHealthRegistry.get(server.getId());
+        long start = System.nanoTime();
+
+        return new HttpExecute(server, PROBE_REQUEST_ID)
+                .ping(healthPath, Duration.ofMillis(timeout))
+                .handle((code, e) -> {
+                    if (e != null) {
+                        log.debug("Нода с ID {} не ответила на проверку: {}", server.getId(), e.getMessage());
+                        health.onFailure(e.getClass().getSimpleName() + ": " + e.getMessage());
+                    } else if (code >= 500) {
+                        log.debug("Нода с ID {} ответила на проверку кодом {}", server.getId(), code);
+                        health.onFailure("Код ответа " + code);
+                    } else {
+                        health.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    return null;
+                });
+    }
+
+    private void applyStatus(VPNProxy server) {
+        var state = NodeHealthRegistry.get(server.getId()).getState();
+        long serverId = server.getId();
+
+        try {
+            if (state == NodeHealth.State.DOWN && server.getStatus() == Status.ACTIVE) {
+                if (serverRepository.disableByProbe(serverId, Status.ACTIVE, Status.DISACTIVE) > 0) {
+                    capacityIndex.setServerStatus(serverId, Status.DISACTIVE);
+                    log.warn("Нода с ID {} недоступна и отключена", serverId);
+                }
+            } else if (state == NodeHealth.State.UP && server.getStatus() == Status.DISACTIVE
+                    && server.isDisabledByProbe()) {
+                if (serverRepository.enableAfterProbe(serverId, Status.DISACTIVE, Status.ACTIVE) > 0) {
+                    capacityIndex.setServerStatus(serverId, Status.ACTIVE);
+                    log.info("Нода с ID {} снова доступна и включена", serverId);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при смене статуса ноды с ID {}", serverId, e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package su.kartushin.busAPI.services;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Country;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.utils.NodeCircuitBreakerRegistry;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Автоматический выбор ноды для нового аккаунта.
+ * Выбор идет по индексу загрузки в памяти среди нод страны: учитываются свободные места
+ * относительно maxConnection, доступность по фоновым проверкам, предохранитель и задержка ноды.
+ */
+@Service
+@Log4j2
+public class PlacementService {
+
+    @Autowired
+    private CapacityIndex capacityIndex;
+    @Autowired
+    private AccountService accountService;
+
+    // Вес задержки в оценке ноды: сколько доли загрузки стоит секунда задержки
+    @Value("${placement.latency-weight:0.5}")
+    private double latencyWeight;
+
+    private record Candidate(CapacityIndex.Entry entry, double score) {
+    }
+
+    /**
+     * Создание аккаунта на наименее загруженной подходящей ноде страны.
+     * Если выбранная нода оказалась недоступна, пробуется следующая.
+     *
+     * @param chatId ID чата пользователя
+     * @param country страна
+     * @param requestId ID запроса
+     * @return созданный аккаунт или пустой Optional, если подходящей ноды нет или создание не удалось
+     */
+    public Optional<Account> place(String chatId, Country country, String requestId) {
+        if (chatId == null || country == null) {
+            log.error("Не передан идентефикатор чата или страна.");
+            return Optional.empty();
+        }
+
+        var candidates = candidates(country);
+        if (candidates.isEmpty()) {
+            log.error("Нет доступных нод со свободными местами в стране {}.", country);
+            return Optional.empty();
+        }
+
+        for (var candidate : candidates) {
+            var entry = candidate.entry();
+            if (!entry.tryReserve()) {
+                continue;
+            }
+
+            try {
+                log.info("Для аккаунта {} выбрана нода с ID {} (оценка {})",
+                        chatId, entry.getServerId(), candidate.score());
+                return accountService.save(Account.builder()
+                        .chatId(chatId)
+                        .country(country)
+                        .status(Status.ACTIVE)
+                        .server(VPNProxy.builder().id(entry.getServerId()).build())
+                        .build(), requestId);
+            } catch (NodeUnavailableException e) {
+                log.warn("Нода с ID {} недоступна, пробуется следующая: {}", entry.getServerId(), e.getMessage());
+            } finally {
+                entry.release();
+            }
+        }
+
+        log.error("Не удалось разместить аккаунт {} в стране {}.", chatId, country);
+        return Optional.empty();
+    }
+
+    /**
+     * Резервирование места на лучшей подходящей ноде страны без создания аккаунта.
+     * Место нужно освободить через {@link CapacityIndex.Entry#release()} после того,
+     * как аккаунт создан и учтен в индексе или создание не удалось.
+     *
+     * @param country страна
+     * @return нода с зарезервированным местом или пустой Optional, если мест нет
+     */
+    public Optional<CapacityIndex.Entry> reserve(Country country) {
+        for (var candidate : candidates(country)) {
+            if (candidate.entry().tryReserve()) {
+                return Optional.of(candidate.entry());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Подходящие ноды страны, от лучшей к худшей.
+     */
+    private List<Candidate> candidates(Country country) {
+        return capacityIndex.byCountry(country).stream()
+                .filter(entry -> entry.getStatus() == Status.ACTIVE)
+                .filter(entry -> entry.getHeadroom() > 0)
+                .filter(entry -> NodeHealthRegistry.isHealthy(entry.getServerId()))
+                .filter(entry -> !NodeCircuitBreakerRegistry.isOpen(entry.getServerId()))
+                .map(entry -> new Candidate(entry, score(entry)))
+                .sorted(Comparator.comparingDouble(Candidate::score)
+                        .thenComparing(candidate -> -candidate.entry().getHeadroom()))
+                .toList();
+    }
+
+    // Меньше - лучше: доля занятых мест плюс штраф за задержку
+    private double score(CapacityIndex.Entry entry) {
+        double utilization = (double) entry.getLoad() / entry.getCapacity();
+        double latencySeconds = NodeHealthRegistry.averageLatency(entry.getServerId()) / 1000.0;
+        return utilization + latencyWeight * latencySeconds;
+    }
+}
@@ -0,0 +1,296 @@
+package su.kartushin.busAPI.services;
+
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.ProvisionItem;
+import su.kartushin.busAPI.objects.ProvisionResult;
+import su.kartushin.busAPI.objects.User;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.UserRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeBulkheadRegistry;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Массовое создание аккаунтов.
+ * Пользователи проверяются одним запросом к базе, аккаунты создаются на нодах параллельно
+ * в виртуальных потоках с ограничением числа одновременных вызовов каждой ноды,
+ * созданные аккаунты сохраняются пакетными вставками.
+ */
+@Service
+@Log4j2
+public class ProvisioningService {
+
+    // configs_version не имеет значения по умолчанию в уже созданных таблицах, поэтому задается явно
+    private static final String INSERT_ACCOUNT = "insert into account " +
+            "(chat_id, id_on_server, vpn_proxy_id, country, status, user_id, configs_version) " +
+            "values (?, ?, ?, ?, ?, ?, 0)";
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private PlacementService placementService;
+    @Autowired
+    private CapacityIndex capacityIndex;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${provision.max-items:10000}")
+    private int maxItems;
+    @Value("${provision.node-parallelism:8}")
+    private int nodeParallelism;
+    @Value("${provision.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Элемент запроса, прошедший проверки.
+     */
+    private static class Task {
+        final int index;
+        final String chatId;
+        final long userId;
+        Long serverId;
+        VPNProxy server;
+        CapacityIndex.Entry reservation;
+        String idOnServer;
+
+        Task(int index, String chatId, long userId, Long serverId) {
+            this.index = index;
+            this.chatId = chatId;
+            this.userId = userId;
+            this.serverId = serverId;
+        }
+    }
+
+    /**
+     * Массовое создание аккаунтов.
+     *
+     * @param items элементы запроса
+     * @param requestId ID запроса
+     * @return результаты в порядке элементов запроса или пустой Optional, если запрос пустой или слишком большой
+     */
+    public Optional<List<ProvisionResult>> provision(List<ProvisionItem> items, String requestId) {
+        if (items == null || items.isEmpty() || items.size() > maxItems) {
+            log.error("Некорректный размер запроса на массовое создание: {}", items == null ? null : items.size());
+            return Optional.empty();
+        }
+        log.info("Массовое создание {} аккаунтов", items.size());
+
+        var results = new ProvisionResult[items.size()];
+        var tasks = validate(items, results);
+        var reservations = tasks.stream()
+                .map(task -> task.reservation)
+                .filter(Objects::nonNull)
+                .toList();
+        try {
+            resolveServers(tasks, results);
+            tasks.removeIf(task -> results[task.index] != null);
+
+            createOnNodes(tasks, results, getRequestId(requestId));
+            tasks.removeIf(task -> results[task.index] != null);
+
+            saveAccounts(tasks, results);
+        } finally {
+            // Места держатся до сохранения, чтобы параллельные размещения не переполнили ноды
+            reservations.forEach(CapacityIndex.Entry::release);
+        }
+
+        long created = Arrays.stream(results).filter(result -> "success".equals(result.getStatus())).count();
+        log.info("Массовое создание завершено: создано {} из {}", created, items.size());
+        return Optional.of(Arrays.asList(results));
+    }
+
+    /**
+     * Проверка элементов и пользователей одним запросом к базе.
+     */
+    private List<Task> validate(List<ProvisionItem> items, ProvisionResult[] results) {
+        var chatIds = items.stream()
+                .map(ProvisionItem::getChatId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, User> users = userRepository.findByChatIdIn(chatIds).stream()
+                .collect(Collectors.toMap(User::getChatId, Function.identity(), (first, second) -> first));
+
+        var seen = new HashSet<String>();
+        var tasks = new ArrayList<Task>();
+        for (int i = 0; i < items.size(); i++) {
+            var item = items.get(i);
+            var chatId = item.getChatId();
+            if (chatId == null) {
+                results[i] = ProvisionResult.error(null, item.getServerId(), "Не передан идентификатор чата");
+            } else if (!users.containsKey(chatId)) {
+                results[i] = ProvisionResult.error(chatId, item.getServerId(), "Пользователь не найден");
+            } else if (item.getServerId() == null && item.getCountry() == null) {
+                results[i] = ProvisionResult.error(chatId, null, "Не указан сервер или страна");
+            } else if (!seen.add(chatId + "/" + (item.getServerId() != null ? item.getServerId() : item.getCountry()))) {
+                results[i] = ProvisionResult.error(chatId, item.getServerId(), "Повтор в запросе");
+            } else {
+                var task = new Task(i, chatId, users.get(chatId).getId(), item.getServerId());
+                if (task.serverId == null) {
+                    task.reservation = placementService.reserve(item.getCountry()).orElse(null);
+                    if (task.reservation == null) {
+                        results[i] = ProvisionResult.error(chatId, null,
+                                "Нет свободных серверов в стране " + item.getCountry());
+                        continue;
+                    }
+                    task.serverId = task.reservation.getServerId();
+                }
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Загрузка серверов одним запросом и проверка их доступности.
+     */
+    private void resolveServers(List<Task> tasks, ProvisionResult[] results) {
+        var serverIds = tasks.stream().map(task -> task.serverId).collect(Collectors.toSet());
+        Map<Long, VPNProxy> servers = serverRepository.findAllById(serverIds).stream()
+                .collect(Collectors.toMap(VPNProxy::getId, Function.identity()));
+
+        for (var task : tasks) {
+            task.server = servers.get(task.serverId);
+            if (task.server == null) {
+                results[task.index] = ProvisionResult.error(task.chatId, task.serverId, "Сервер не найден");
+            } else if (task.server.getStatus() == Status.DELETED) {
+                results[task.index] = ProvisionResult.error(task.chatId, task.serverId, "Сервер удален");
+            } else if (!NodeHealthRegistry.isHealthy(task.serverId)) {
+                results[task.index] = ProvisionResult.error(task.chatId, task.serverId, "Сервер недоступен");
+            }
+        }
+    }
+
+    /**
+     * Параллельное создание аккаунтов на нодах.
+     * Число одновременных вызовов ноды ограничено node-parallelism и лимитом ограничителя ноды,
+     * чтобы массовое создание не вытесняло обычные запросы.
+     */
+    private void createOnNodes(List<Task> tasks, ProvisionResult[] results, String requestId) {
+        Map<Long, Semaphore> limits = new ConcurrentHashMap<>();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var task : tasks) {
+                var limit = limits.computeIfAbsent(task.serverId, id -> new Semaphore(
+                        Math.max(1, Math.min(nodeParallelism, NodeBulkheadRegistry.get(task.server).getLimit()))));
+                executor.submit(() -> {
+                    if (mdc != null) {
+                        MDC.setContextMap(mdc);
+                    }
+                    limit.acquireUninterruptibly();
+                    try {
+                        createOnNode(task, results, requestId);
+                    } finally {
+                        limit.release();
+                        MDC.clear();
+                    }
+                });
+            }
+        }
+    }
+
+    private void createOnNode(Task task, ProvisionResult[] results, String requestId) {
+        var httpExecute = new HttpExecute(task.server, requestId);
+        try {
+            if (accountService.existsOnNode(httpExecute, task.chatId)) {
+                results[task.index] = ProvisionResult.error(task.chatId, task.serverId, "Аккаунт уже есть на сервере");
+                return;
+            }
+
+            var idOnServer = accountService.createOnNode(httpExecute, task.chatId);
+            if (idOnServer.isEmpty()) {
+                results[task.index] = ProvisionResult.error(task.chatId, task.serverId,
+                        "Ошибка при создании аккаунта на сервере");
+                return;
+            }
+            task.idOnServer = idOnServer.get();
+        } catch (NodeUnavailableException e) {
+            results[task.index] = ProvisionResult.error(task.chatId, task.serverId, e.getMessage());
+        } catch (Exception e) {
+            log.error("Ошибка при создании аккаунта {} на сервере с ID {}", task.chatId, task.serverId, e);
+            results[task.index] = ProvisionResult.error(task.chatId, task.serverId,
+                    "Ошибка при создании аккаунта на сервере");
+        }
+    }
+
+    /**
+     * Сохранение созданных аккаунтов пакетными вставками.
+     * Hibernate не объединяет вставки сущностей с IDENTITY ключом, поэтому вставка идет через JDBC.
+     */
+    private void saveAccounts(List<Task> tasks, ProvisionResult[] results) {
+        for (int from = 0; from < tasks.size(); from += batchSize) {
+            var chunk = tasks.subList(from, Math.min(from + batchSize, tasks.size()));
+            var keyHolder = new GeneratedKeyHolder();
+            try {
+                jdbcTemplate.batchUpdate(
+                        connection -> connection.prepareStatement(INSERT_ACCOUNT, Statement.RETURN_GENERATED_KEYS),
+                        new BatchPreparedStatementSetter() {
+                            @Override
+                            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                                var task = chunk.get(i);
+                                ps.setString(1, task.chatId);
+                                ps.setString(2, task.idOnServer);
+                                ps.setLong(3, task.serverId);
+                                ps.setString(4, task.server.getCountry() == null ? null : task.server.getCountry().name());
+                                ps.setString(5, Status.ACTIVE.name());
+                                ps.setLong(6, task.userId);
+                            }
+
+                            @Override
+                            public int getBatchSize() {
+                                return chunk.size();
+                            }
+                        },
+                        keyHolder);
+            } catch (Exception e) {
+                log.error("Ошибка при сохранении {} аккаунтов, созданных на серверах", chunk.size(), e);
+                chunk.forEach(task -> {
+                    log.error("Аккаунт {} создан на сервере с ID {} под ID {}, но не сохранен",
+                            task.chatId, task.serverId, task.idOnServer);
+                    results[task.index] = ProvisionResult.error(task.chatId, task.serverId,
+                            "Аккаунт создан на сервере, но не сохранен");
+                });
+                continue;
+            }
+
+            var keys = keyHolder.getKeyList();
+            for (int i = 0; i < chunk.size(); i++) {
+                var task = chunk.get(i);
+                Long accountId = i < keys.size() ? ((Number) keys.get(i).values().iterator().next()).longValue() : null;
+                capacityIndex.accountAdded(task.serverId, Status.ACTIVE);
+                results[task.index] = new ProvisionResult(task.chatId, task.serverId, accountId,
+                        "success", "Аккаунт успешно создан");
+            }
+        }
+    }
+
+    private String getRequestId(String requestId) {
+        return (requestId == null || requestId.isEmpty()) ?
+                "no requestId" :
+                requestId;
+    }
+}
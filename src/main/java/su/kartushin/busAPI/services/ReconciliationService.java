@@ -0,0 +1,397 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.JavaType;
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.NodeResponse;
+import su.kartushin.busAPI.objects.ReconcileCheckpoint;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.ReconcileCheckpointRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeBulkheadRegistry;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Сверка аккаунтов в базе с VPN нодами.
+ * Аккаунты ноды читаются страницами по возрастанию ID, каждый проверяется на ноде,
+ * найденные расхождения применяются пакетными обновлениями. После каждой страницы сохраняется
+ * {@link ReconcileCheckpoint}, поэтому запуск обрабатывает не больше reconcile.max-pages страниц ноды
+ * и следующий запуск продолжает с того же места.
+ * Нода не отдает список своих аккаунтов, поэтому сверка идет от базы: аккаунты, которые есть
+ * только на ноде, не обнаруживаются.
+ * В режиме reconcile.report-only расхождения только считаются и пишутся в лог. Если на странице
+ * нет на ноде больше reconcile.max-missing-ratio аккаунтов, удаление страницы не применяется:
+ * так ошибка в адресе ноды или прокси не помечает удаленными все аккаунты ноды.
+ */
+@Service
+@Log4j2
+public class ReconciliationService {
+
+    private static final String RECONCILE_REQUEST_ID = "reconcile";
+    private static final JavaType STRING_TYPE = HttpExecute.type(String.class);
+
+    // Условия в WHERE не дают перезаписать аккаунт, измененный после чтения страницы
+    private static final String MARK_DELETED = "update account set status = 'DELETED' " +
+            "where id = ? and vpn_proxy_id = ? and id_on_server <=> ? and (status is null or status <> 'DELETED')";
+    private static final String UPDATE_ID_ON_SERVER = "update account set id_on_server = ? " +
+            "where id = ? and vpn_proxy_id = ? and id_on_server <=> ? and (status is null or status <> 'DELETED')";
+
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private ReconcileCheckpointRepository checkpointRepository;
+    @Autowired
+    private CapacityIndex capacityIndex;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${reconcile.enabled:false}")
+    private boolean enabled;
+    @Value("${reconcile.report-only:true}")
+    private boolean reportOnly;
+    @Value("${reconcile.max-missing-ratio:0.2}")
+    private double maxMissingRatio;
+    @Value("${reconcile.page-size:200}")
+    private int pageSize;
+    @Value("${reconcile.max-pages:50}")
+    private int maxPages;
+    @Value("${reconcile.node-parallelism:4}")
+    private int nodeParallelism;
+    @Value("${reconcile.calls-per-node:8}")
+    private int callsPerNode;
+
+    private final AtomicBoolean runningAll = new AtomicBoolean();
+    // Ноды, сверка которых идет сейчас
+    private final Set<Long> runningNodes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Результат проверки аккаунта на ноде.
+     */
+    private enum NodeState {
+        PRESENT,
+        MISSING,
+        UNKNOWN
+    }
+
+    private record Check(Account account, NodeState state, String idOnServer) {
+    }
+
+    @Scheduled(fixedDelayString = "${reconcile.interval-ms:600000}",
+            initialDelayString = "${reconcile.initial-delay-ms:60000}")
+    public void scheduled() {
+        if (enabled) {
+            startAll();
+        }
+    }
+
+    /**
+     * Запуск сверки всех не удаленных нод в фоне.
+     *
+     * @return false, если сверка всех нод уже идет
+     */
+    public boolean startAll() {
+        if (!runningAll.compareAndSet(false, true)) {
+            log.info("Сверка нод уже выполняется");
+            return false;
+        }
+
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Thread.ofVirtual().name("reconcile-all").start(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                reconcileAll();
+            } catch (Exception e) {
+                log.error("Ошибка при сверке нод", e);
+            } finally {
+                runningAll.set(false);
+                MDC.clear();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Запуск сверки одной ноды в фоне.
+     *
+     * @param serverId ID ноды
+     * @return пустой Optional, если нода не найдена, иначе false, если сверка ноды уже идет
+     */
+    public Optional<Boolean> start(long serverId) {
+        var optServer = serverRepository.findById(serverId);
+        if (optServer.isEmpty() || optServer.get().getStatus() == Status.DELETED) {
+            log.error("Сервер с ID {} не найден.", serverId);
+            return Optional.empty();
+        }
+
+        var server = optServer.get();
+        if (!runningNodes.add(serverId)) {
+            log.info("Сверка сервера с ID {} уже выполняется", serverId);
+            return Optional.of(false);
+        }
+
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Thread.ofVirtual().name("reconcile-" + serverId).start(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                reconcileNode(server);
+            } catch (Exception e) {
+                log.error("Ошибка при сверке сервера с ID {}", serverId, e);
+            } finally {
+                runningNodes.remove(serverId);
+                MDC.clear();
+            }
+        });
+        return Optional.of(true);
+    }
+
+    public List<ReconcileCheckpoint> checkpoints() {
+        return checkpointRepository.findAll();
+    }
+
+    public Optional<ReconcileCheckpoint> checkpoint(long serverId) {
+        return checkpointRepository.findById(serverId);
+    }
+
+    private void reconcileAll() {
+        var servers = serverRepository.findByStatusNot(Status.DELETED);
+        log.info("Сверка {} нод", servers.size());
+
+        var limit = new Semaphore(Math.max(1, nodeParallelism));
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var server : servers) {
+                executor.submit(() -> {
+                    if (mdc != null) {
+                        MDC.setContextMap(mdc);
+                    }
+                    limit.acquireUninterruptibly();
+                    if (!runningNodes.add(server.getId())) {
+                        limit.release();
+                        MDC.clear();
+                        return;
+                    }
+                    try {
+                        reconcileNode(server);
+                    } catch (Exception e) {
+                        log.error("Ошибка при сверке сервера с ID {}", server.getId(), e);
+                    } finally {
+                        runningNodes.remove(server.getId());
+                        limit.release();
+                        MDC.clear();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Сверка одной ноды с позиции из контрольной точки.
+     */
+    private void reconcileNode(VPNProxy server) {
+        var serverId = server.getId();
+        if (!NodeHealthRegistry.isHealthy(serverId)) {
+            log.info("Сервер с ID {} недоступен по результатам проверок, сверка пропущена", serverId);
+            return;
+        }
+
+        var checkpoint = checkpointRepository.findById(serverId).orElseGet(() -> new ReconcileCheckpoint(serverId));
+        var httpExecute = new HttpExecute(server, RECONCILE_REQUEST_ID);
+
+        for (int page = 0; page < maxPages; page++) {
+            if (checkpoint.getPassStartedAt() == null) {
+                checkpoint.setPassStartedAt(Instant.now());
+            }
+
+            var accounts = accountRepository.findNotDeletedPageByServerId(serverId, checkpoint.getLastAccountId(),
+                    Status.DELETED, PageRequest.of(0, pageSize));
+            if (accounts.isEmpty()) {
+                checkpoint.completePass(Instant.now());
+                save(checkpoint);
+                log.info("Сверка сервера с ID {} завершена: проверено {}, нет на ноде {}, другой ID на ноде {}, " +
+                                "ошибок {}, исправлено {}",
+                        serverId, checkpoint.getLastPassChecked(), checkpoint.getLastPassMissingOnNode(),
+                        checkpoint.getLastPassIdMismatch(), checkpoint.getLastPassErrors(),
+                        checkpoint.getLastPassFixed());
+                return;
+            }
+
+            List<Check> checks;
+            try {
+                checks = check(server, httpExecute, accounts);
+            } catch (NodeUnavailableException e) {
+                // Позиция не сдвигается, страница будет проверена при следующем запуске
+                log.warn("Сверка сервера с ID {} прервана: {}", serverId, e.getMessage());
+                return;
+            }
+
+            apply(server, checks, checkpoint);
+            checkpoint.setLastAccountId(accounts.get(accounts.size() - 1).getId());
+            save(checkpoint);
+        }
+        log.info("Сверка сервера с ID {} продолжится со следующего запуска после аккаунта с ID {}",
+                serverId, checkpoint.getLastAccountId());
+    }
+
+    /**
+     * Параллельная проверка аккаунтов страницы на ноде.
+     * Число одновременных вызовов ограничено calls-per-node и лимитом ограничителя ноды.
+     */
+    private List<Check> check(VPNProxy server, HttpExecute httpExecute, List<Account> accounts) {
+        var limit = new Semaphore(Math.max(1, Math.min(callsPerNode, NodeBulkheadRegistry.get(server).getLimit())));
+        var calls = new ArrayList<CompletableFuture<Check>>(accounts.size());
+        for (var account : accounts) {
+            limit.acquireUninterruptibly();
+
+            CompletableFuture<NodeResponse<String>> call;
+            try {
+                call = httpExecute.getRequestAsync(String.format("/api/account/%s", account.getChatId()),
+                        STRING_TYPE, null);
+            } catch (Exception e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            calls.add(call.handle((response, e) -> {
+                limit.release();
+                if (e != null) {
+                    NodeUnavailableException.propagate(e);
+                    log.error("Ошибка при проверке аккаунта с ID {} на сервере с ID {}",
+                            account.getId(), server.getId(), e);
+                    return new Check(account, NodeState.UNKNOWN, null);
+                }
+                if (response.isSuccessful()) {
+                    return new Check(account, NodeState.PRESENT, response.getData());
+                }
+                if (response.getCode() == 404) {
+                    return new Check(account, NodeState.MISSING, null);
+                }
+                log.error("Сервер с ID {} вернул код {} при проверке аккаунта с ID {}",
+                        server.getId(), response.getCode(), account.getId());
+                return new Check(account, NodeState.UNKNOWN, null);
+            }));
+        }
+
+        try {
+            return calls.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NodeUnavailableException unavailable) {
+                throw unavailable;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Применение расхождений страницы двумя пакетными обновлениями.
+     * Аккаунт, которого нет на ноде, помечается удаленным, аккаунту с другим ID на ноде ID обновляется.
+     * В режиме только отчета расхождения не применяются; удаление не применяется и тогда,
+     * когда доля отсутствующих на ноде аккаунтов страницы больше reconcile.max-missing-ratio.
+     */
+    private void apply(VPNProxy server, List<Check> checks, ReconcileCheckpoint checkpoint) {
+        var missing = new ArrayList<Account>();
+        var mismatched = new ArrayList<Check>();
+        for (var check : checks) {
+            checkpoint.setChecked(checkpoint.getChecked() + 1);
+            switch (check.state()) {
+                case MISSING -> missing.add(check.account());
+                case PRESENT -> {
+                    if (check.idOnServer() != null && !check.idOnServer().equals(check.account().getIdOnServer())) {
+                        mismatched.add(check);
+                    }
+                }
+                case UNKNOWN -> checkpoint.setErrors(checkpoint.getErrors() + 1);
+            }
+        }
+        checkpoint.setMissingOnNode(checkpoint.getMissingOnNode() + missing.size());
+        checkpoint.setIdMismatch(checkpoint.getIdMismatch() + mismatched.size());
+
+        if (reportOnly) {
+            missing.forEach(account -> log.warn("Аккаунта с ID {} нет на сервере с ID {}, только отчет",
+                    account.getId(), server.getId()));
+            mismatched.forEach(check -> log.warn("Аккаунт с ID {} на сервере с ID {} имеет ID {} вместо {}, только отчет",
+                    check.account().getId(), server.getId(), check.idOnServer(), check.account().getIdOnServer()));
+            return;
+        }
+
+        if (!missing.isEmpty() && missing.size() > maxMissingRatio * checks.size()) {
+            log.error("На сервере с ID {} нет {} из {} аккаунтов страницы, больше допустимой доли {}: " +
+                            "удаление не применяется, проверьте адрес и доступность ноды",
+                    server.getId(), missing.size(), checks.size(), maxMissingRatio);
+            missing.clear();
+        }
+
+        if (!missing.isEmpty()) {
+            var counts = jdbcTemplate.batchUpdate(MARK_DELETED, missing, missing.size(), (ps, account) -> {
+                ps.setLong(1, account.getId());
+                ps.setLong(2, server.getId());
+                ps.setString(3, account.getIdOnServer());
+            });
+            for (int i = 0; i < missing.size(); i++) {
+                if (applied(counts[0][i])) {
+                    var account = missing.get(i);
+                    log.warn("Аккаунта с ID {} нет на сервере с ID {}, аккаунт помечен удаленным",
+                            account.getId(), server.getId());
+                    capacityIndex.accountChanged(server.getId(), account.getStatus(), server.getId(), Status.DELETED);
+                    checkpoint.setFixed(checkpoint.getFixed() + 1);
+                }
+            }
+        }
+
+        if (!mismatched.isEmpty()) {
+            var counts = jdbcTemplate.batchUpdate(UPDATE_ID_ON_SERVER, mismatched, mismatched.size(), (ps, check) -> {
+                ps.setString(1, check.idOnServer());
+                ps.setLong(2, check.account().getId());
+                ps.setLong(3, server.getId());
+                ps.setString(4, check.account().getIdOnServer());
+            });
+            for (int i = 0; i < mismatched.size(); i++) {
+                if (applied(counts[0][i])) {
+                    var check = mismatched.get(i);
+                    log.warn("Аккаунт с ID {} на сервере с ID {} имеет ID {} вместо {}, ID обновлен",
+                            check.account().getId(), server.getId(), check.idOnServer(),
+                            check.account().getIdOnServer());
+                    checkpoint.setFixed(checkpoint.getFixed() + 1);
+                }
+            }
+        }
+    }
+
+    private void save(ReconcileCheckpoint checkpoint) {
+        checkpoint.setUpdatedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+    }
+
+    // Драйвер может не сообщать число строк для пакета, такой результат считается примененным
+    private static boolean applied(int count) {
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+}
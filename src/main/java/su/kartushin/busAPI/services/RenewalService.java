@@ -0,0 +1,407 @@
+package su.kartushin.busAPI.services;
+
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.enums.RenewalStatus;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.Balance;
+import su.kartushin.busAPI.objects.Billing;
+import su.kartushin.busAPI.objects.RenewalRun;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.BillingRepository;
+import su.kartushin.busAPI.repositories.RenewalRunRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+import su.kartushin.busAPI.utils.NodeBulkheadRegistry;
+
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Продление подписок за период.
+ * Пользователи с активными аккаунтами читаются порциями по возрастанию ID, порции обрабатываются
+ * параллельно renewal.workers обработчиками, в памяти не больше этого числа порций.
+ * Пользователю, у которого хватает баланса, списывается renewal.price за каждый аккаунт
+ * через пакетную запись журнала; аккаунты пользователя без денег блокируются на нодах
+ * с ограничением числа одновременных вызовов каждой ноды и отключаются.
+ * Списания идемпотентны по (период, аккаунт), поэтому повторная обработка порции после
+ * прерывания не списывает дважды. Контрольная точка сдвигается только за порции,
+ * все предыдущие порции которых завершены.
+ */
+@Service
+@Log4j2
+public class RenewalService {
+
+    private static final String SELECT_USER_IDS = "select distinct user_id from account " +
+            "where user_id > ? and (status = 'ACTIVE' or status is null) order by user_id limit ?";
+    private static final String SELECT_ACCOUNTS = "select id, user_id, vpn_proxy_id, id_on_server, chat_id, status " +
+            "from account where user_id in (%s) and (status = 'ACTIVE' or status is null) order by user_id, id";
+    private static final String DISABLE_ACCOUNT = "update account set status = 'DISACTIVE' " +
+            "where id = ? and (status = 'ACTIVE' or status is null)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private RenewalRunRepository runRepository;
+    @Autowired
+    private VPNProxyRepository serverRepository;
+    @Autowired
+    private BalanceCache balanceCache;
+    @Autowired
+    private BillingRepository billingRepository;
+    @Autowired
+    private BillingService billingService;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private CapacityIndex capacityIndex;
+
+    @Value("${renewal.price:0}")
+    private long price;
+    @Value("${renewal.chunk-size:500}")
+    private int chunkSize;
+    @Value("${renewal.workers:4}")
+    private int workers;
+    @Value("${renewal.node-parallelism:8}")
+    private int nodeParallelism;
+
+    // Периоды, продление которых идет сейчас
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Аккаунт в порции вместе с ID пользователя, который не отображен в {@link Account}.
+     */
+    private record Row(Account account, long userId) {
+    }
+
+    /**
+     * Порция пользователей в обработке.
+     */
+    private static class Chunk {
+        final long lastUserId;
+        volatile boolean done;
+
+        Chunk(long lastUserId) {
+            this.lastUserId = lastUserId;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void markInterrupted() {
+        int interrupted = runRepository.markInterrupted(RenewalStatus.RUNNING, RenewalStatus.FAILED,
+                "Прервано остановкой сервиса", Instant.now());
+        if (interrupted > 0) {
+            log.warn("Помечено {} прерванных продлений, они продолжатся при повторном запуске", interrupted);
+        }
+    }
+
+    @Scheduled(cron = "${renewal.cron:-}")
+    public void scheduled() {
+        start(YearMonth.now().toString());
+    }
+
+    /**
+     * Запуск или продолжение продления за период в фоне.
+     *
+     * @param period период в формате yyyy-MM
+     * @return запуск продления или пустой Optional, если период задан неверно.
+     * Завершенный запуск возвращается без повторного выполнения
+     */
+    public synchronized Optional<RenewalRun> start(String period) {
+        try {
+            YearMonth.parse(period);
+        } catch (DateTimeParseException | NullPointerException e) {
+            log.error("Неверный период продления {}", period);
+            return Optional.empty();
+        }
+
+        var run = runRepository.findByPeriod(period).orElseGet(() -> RenewalRun.builder()
+                .period(period)
+                .startedAt(Instant.now())
+                .build());
+        if (run.getStatus() == RenewalStatus.DONE || running.contains(period)) {
+            log.info("Продление за {} уже {}", period, run.getStatus() == RenewalStatus.DONE ? "завершено" : "идет");
+            return Optional.of(run);
+        }
+
+        run.setStatus(RenewalStatus.RUNNING);
+        run.setLastError(null);
+        run.setUpdatedAt(Instant.now());
+        var saved = runRepository.save(run);
+        running.add(period);
+        log.info("Продление за {} запущено с пользователя после ID {}", period, saved.getLastUserId());
+
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Thread.ofVirtual().name("renewal-" + period).start(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                process(saved);
+            } catch (Exception e) {
+                log.error("Ошибка при продлении за {}", period, e);
+                synchronized (saved) {
+                    saved.setStatus(RenewalStatus.FAILED);
+                    saved.setLastError(e.toString());
+                    save(saved);
+                }
+            } finally {
+                running.remove(period);
+                MDC.clear();
+            }
+        });
+        return Optional.of(saved);
+    }
+
+    public Optional<RenewalRun> find(String period) {
+        return runRepository.findByPeriod(period);
+    }
+
+    public List<RenewalRun> findRecent() {
+        return runRepository.findTop20ByOrderByIdDesc();
+    }
+
+    private void process(RenewalRun run) {
+        Map<Long, VPNProxy> servers = serverRepository.findAll().stream()
+                .collect(Collectors.toMap(VPNProxy::getId, Function.identity()));
+        Map<Long, Semaphore> nodeLimits = new ConcurrentHashMap<>();
+        // Порции в обработке по последнему ID пользователя
+        var chunks = new TreeMap<Long, Chunk>();
+        var slots = new Semaphore(Math.max(1, workers));
+        var failed = new AtomicBoolean();
+
+        long cursor = run.getLastUserId();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                var userIds = jdbcTemplate.queryForList(SELECT_USER_IDS, Long.class, cursor, chunkSize);
+                if (userIds.isEmpty()) {
+                    break;
+                }
+                cursor = userIds.get(userIds.size() - 1);
+
+                var chunk = new Chunk(cursor);
+                synchronized (chunks) {
+                    chunks.put(chunk.lastUserId, chunk);
+                }
+                slots.acquireUninterruptibly();
+                executor.submit(() -> {
+                    if (mdc != null) {
+                        MDC.setContextMap(mdc);
+                    }
+                    try {
+                        processChunk(run, userIds, servers, nodeLimits);
+                        chunk.done = true;
+                    } catch (Exception e) {
+                        failed.set(true);
+                        log.error("Ошибка при продлении пользователей с ID {}..{}", userIds.get(0), chunk.lastUserId, e);
+                        synchronized (run) {
+                            run.setLastError(e.toString());
+                        }
+                    } finally {
+                        checkpoint(run, chunks);
+                        slots.release();
+                        MDC.clear();
+                    }
+                });
+            }
+        }
+
+        synchronized (run) {
+            // Контрольная точка осталась перед порцией с ошибкой, повторный запуск продолжит с нее
+            run.setStatus(failed.get() ? RenewalStatus.FAILED : RenewalStatus.DONE);
+            run.setFinishedAt(Instant.now());
+            save(run);
+        }
+        log.info("Продление за {} закончено: пользователей {}, списано за {} аккаунтов на {}, " +
+                        "заблокировано {} аккаунтов у {} пользователей, ошибок списания {}, ошибок блокировки {}",
+                run.getPeriod(), run.getUsersProcessed(), run.getAccountsCharged(), run.getAmountCharged(),
+                run.getAccountsBlocked(), run.getUsersBlocked(), run.getChargeErrors(), run.getBlockErrors());
+    }
+
+    /**
+     * Сдвиг контрольной точки за все подряд завершенные порции с начала очереди.
+     * Порция с ошибкой не завершается и держит контрольную точку перед собой.
+     */
+    private void checkpoint(RenewalRun run, TreeMap<Long, Chunk> chunks) {
+        Long lastUserId = null;
+        synchronized (chunks) {
+            while (!chunks.isEmpty() && chunks.firstEntry().getValue().done) {
+                lastUserId = chunks.pollFirstEntry().getKey();
+            }
+        }
+        synchronized (run) {
+            if (lastUserId != null && lastUserId > run.getLastUserId()) {
+                run.setLastUserId(lastUserId);
+            }
+            save(run);
+        }
+    }
+
+    private void processChunk(RenewalRun run, List<Long> userIds, Map<Long, VPNProxy> servers,
+                              Map<Long, Semaphore> nodeLimits) {
+        var rows = jdbcTemplate.query(
+                String.format(SELECT_ACCOUNTS, String.join(", ", Collections.nCopies(userIds.size(), "?"))),
+                (rs, i) -> {
+                    var serverId = rs.getLong("vpn_proxy_id");
+                    var server = rs.wasNull() ? null : servers.get(serverId);
+                    var status = rs.getString("status");
+                    var account = Account.builder()
+                            .id(rs.getLong("id"))
+                            .idOnServer(rs.getString("id_on_server"))
+                            .chatId(rs.getString("chat_id"))
+                            .status(status == null ? null : Status.valueOf(status))
+                            .server(server)
+                            .build();
+                    return new Row(account, rs.getLong("user_id"));
+                },
+                userIds.toArray());
+
+        var byUser = rows.stream().collect(Collectors.groupingBy(Row::userId, LinkedHashMap::new, Collectors.toList()));
+        Map<Long, Long> balances = balanceCache.getAll(byUser.keySet()).values().stream()
+                .collect(Collectors.toMap(Balance::getUserId, Balance::getBalance));
+        // Аккаунты, за которые уже списано в этом периоде
+        var charged = billingRepository.findByIdempotencyKeyIn(rows.stream()
+                        .map(row -> chargeKey(run, row.account()))
+                        .toList()).stream()
+                .map(Billing::getIdempotencyKey)
+                .collect(Collectors.toSet());
+
+        var charges = new ArrayList<CompletableFuture<Billing>>();
+        var unpaid = new ArrayList<Account>();
+        int usersBlocked = 0;
+        for (var entry : byUser.entrySet()) {
+            var userId = entry.getKey();
+            var accounts = entry.getValue().stream()
+                    .map(Row::account)
+                    .filter(account -> !charged.contains(chargeKey(run, account)))
+                    .toList();
+            if (accounts.isEmpty() || price == 0) {
+                continue;
+            }
+
+            long cost = price * accounts.size();
+            if (balances.getOrDefault(userId, 0L) >= cost) {
+                for (var account : accounts) {
+                    charges.add(billingService.charge(userId, account.getId(), price,
+                            "Продление за " + run.getPeriod(), chargeKey(run, account)));
+                }
+            } else {
+                unpaid.addAll(accounts);
+                usersBlocked++;
+            }
+        }
+
+        // Списания порции уходят в журнал вместе и записываются общими пачками
+        long accountsCharged = 0;
+        long chargeErrors = 0;
+        for (var charge : charges) {
+            try {
+                charge.join();
+                accountsCharged++;
+            } catch (Exception e) {
+                log.error("Ошибка при списании за продление: {}", e.toString());
+                chargeErrors++;
+            }
+        }
+
+        var blocked = block(unpaid, nodeLimits);
+        disable(blocked);
+
+        synchronized (run) {
+            run.setUsersProcessed(run.getUsersProcessed() + byUser.size());
+            run.setAccountsCharged(run.getAccountsCharged() + accountsCharged);
+            run.setAmountCharged(run.getAmountCharged() + accountsCharged * price);
+            run.setChargeErrors(run.getChargeErrors() + chargeErrors);
+            run.setUsersBlocked(run.getUsersBlocked() + usersBlocked);
+            run.setAccountsBlocked(run.getAccountsBlocked() + blocked.size());
+            run.setBlockErrors(run.getBlockErrors() + unpaid.size() - blocked.size());
+        }
+    }
+
+    /**
+     * Блокировка аккаунтов на нодах с ограничением числа одновременных вызовов каждой ноды
+     * общим для всех обработчиков.
+     *
+     * @return заблокированные аккаунты
+     */
+    private List<Account> block(List<Account> accounts, Map<Long, Semaphore> nodeLimits) {
+        var blocked = Collections.synchronizedList(new ArrayList<Account>());
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var account : accounts) {
+                var server = account.getServer();
+                if (server == null) {
+                    log.error("Сервер аккаунта с ID {} не найден, блокировка не возможна", account.getId());
+                    continue;
+                }
+                var limit = nodeLimits.computeIfAbsent(server.getId(), id -> new Semaphore(
+                        Math.max(1, Math.min(nodeParallelism, NodeBulkheadRegistry.get(server).getLimit()))));
+                executor.submit(() -> {
+                    if (mdc != null) {
+                        MDC.setContextMap(mdc);
+                    }
+                    limit.acquireUninterruptibly();
+                    try {
+                        if (accountService.actionOnNode(account, server, "renewal", Action.BLOCK).join()
+                                .orElse(false)) {
+                            blocked.add(account);
+                        }
+                    } catch (Exception e) {
+                        log.error("Ошибка при блокировке аккаунта с ID {}: {}", account.getId(), e.toString());
+                    } finally {
+                        limit.release();
+                        MDC.clear();
+                    }
+                });
+            }
+        }
+        return blocked;
+    }
+
+    /**
+     * Отключение заблокированных аккаунтов одним пакетным обновлением.
+     */
+    private void disable(List<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        var counts = jdbcTemplate.batchUpdate(DISABLE_ACCOUNT, accounts, accounts.size(),
+                (ps, account) -> ps.setLong(1, account.getId()));
+        for (int i = 0; i < accounts.size(); i++) {
+            int count = counts[0][i];
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                var account = accounts.get(i);
+                var serverId = account.getServer().getId();
+                capacityIndex.accountChanged(serverId, account.getStatus(), serverId, Status.DISACTIVE);
+            }
+        }
+    }
+
+    private void save(RenewalRun run) {
+        run.setUpdatedAt(Instant.now());
+        runRepository.save(run);
+    }
+
+    private static String chargeKey(RenewalRun run, Account account) {
+        return "renewal:" + run.getPeriod() + ":" + account.getId();
+    }
+}
@@ -1,33 +1,504 @@
 package su.kartushin.busAPI.services;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.enums.MisfirePolicy;
+import su.kartushin.busAPI.enums.SchedulerStatus;
+import su.kartushin.busAPI.enums.Status;
 import su.kartushin.busAPI.objects.Scheduler;
+import su.kartushin.busAPI.repositories.SchedulerRepository;
+import su.kartushin.busAPI.utils.HttpExecute;
+import su.kartushin.busAPI.utils.NodeUnavailableException;
+import su.kartushin.busAPI.utils.TimingWheel;
 
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Планировщик отложенных и повторяющихся действий над аккаунтами.
+ * Задачи хранятся в базе, в памяти держится только горизонт ближайших scheduler.horizon-ms:
+ * они лежат в {@link TimingWheel}, который будит выборку к сроку без опроса таблицы.
+ * Горизонт периодически дочитывается по индексу (status, due_bucket, run_at), задачи, созданные
+ * или измененные через API в пределах горизонта, ставятся в колесо сразу.
+ * <p>
+ * Несколько экземпляров сервиса работают с одной базой: наступившие задачи захватываются пачками
+ * через SELECT ... FOR UPDATE SKIP LOCKED, так что экземпляры не ждут блокировок друг друга
+ * и не выполняют одну задачу дважды. Захваченная задача арендуется на scheduler.lease-ms,
+ * аренда продлевается, пока задача выполняется; задачи с истекшей арендой возвращаются в ожидание.
+ * Пропущенные задачи обрабатываются по их {@link MisfirePolicy}.
+ */
+@Service
+@Log4j2
 public class SchedulerService extends CrudService<Scheduler, Long> {
+
+    @Autowired
+    private SchedulerRepository schedulerRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${scheduler.tick-ms:1000}")
+    private long tickMs;
+    @Value("${scheduler.wheel-size:60}")
+    private int wheelSize;
+    @Value("${scheduler.horizon-ms:3600000}")
+    private long horizon;
+    @Value("${scheduler.misfire-threshold-ms:60000}")
+    private long misfireThreshold;
+    @Value("${scheduler.page-size:1000}")
+    private int pageSize;
+    @Value("${scheduler.instance-id:}")
+    private String instanceId;
+    @Value("${scheduler.workers:32}")
+    private int workers;
+    @Value("${scheduler.claim-batch-size:100}")
+    private int claimBatchSize;
+    @Value("${scheduler.lease-ms:300000}")
+    private long lease;
+
+    // Наступившие задачи без блокировки строк, занятых другими экземплярами
+    private static final String SELECT_DUE = "select id from scheduler " +
+            "where status = 'SCHEDULED' and due_bucket <= ? and run_at <= ? " +
+            "order by due_bucket, run_at limit ? for update skip locked";
+    private static final String CLAIM = "update scheduler set status = 'RUNNING', lease_owner = ?, lease_until = ?, " +
+            "updated_at = ? where id in (%s)";
+
+    private TimingWheel<Long> wheel;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private Semaphore slots;
+    // Задачи, которые выполняет этот экземпляр
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    // Граница уже загруженного горизонта
+    private Instant loadedUntil = Instant.EPOCH;
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void init() {
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = UUID.randomUUID().toString();
+        }
+        slots = new Semaphore(Math.max(1, workers));
+        wheel = new TimingWheel<>("scheduler", tickMs, wheelSize, id -> requestDrain());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Запуск после старта: загружается горизонт вместе со всеми пропущенными задачами.
+     * Задачи, прерванные остановкой, вернутся в ожидание по истечении аренды.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        log.info("Планировщик запущен как экземпляр {}", instanceId);
+        ready = true;
+        releaseExpiredLeases();
+        loadHorizon();
+        requestDrain();
+    }
+
+    /**
+     * Подстраховка колеса: задачи, поставленные другими экземплярами после загрузки горизонта,
+     * и задачи, возвращенные после истечения аренды.
+     */
+    @Scheduled(fixedDelayString = "${scheduler.poll-interval-ms:5000}")
+    public void poll() {
+        if (ready) {
+            requestDrain();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.heartbeat-ms:60000}")
+    public void heartbeat() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        try {
+            int renewed = schedulerRepository.renewLeases(Set.copyOf(inFlight), instanceId,
+                    SchedulerStatus.RUNNING, Instant.now().plusMillis(lease));
+            log.debug("Продлена аренда {} задач планировщика", renewed);
+        } catch (Exception e) {
+            log.error("Ошибка при продлении аренды задач планировщика", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.lease-check-ms:60000}")
+    public void releaseExpiredLeases() {
+        if (!ready) {
+            return;
+        }
+        try {
+            int released = schedulerRepository.releaseExpiredLeases(SchedulerStatus.RUNNING,
+                    SchedulerStatus.SCHEDULED, Instant.now());
+            if (released > 0) {
+                log.warn("Возвращено в ожидание {} задач с истекшей арендой", released);
+                requestDrain();
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при возврате задач с истекшей арендой", e);
+        }
+    }
+
+    /**
+     * Дозагрузка задач, срок которых попал в горизонт.
+     */
+    @Scheduled(fixedDelayString = "${scheduler.load-interval-ms:600000}")
+    public synchronized void loadHorizon() {
+        if (!ready) {
+            return;
+        }
+
+        var from = loadedUntil;
+        var to = Instant.now().plusMillis(horizon);
+        int loaded = 0;
+        long afterId = 0;
+        try {
+            while (true) {
+                var page = schedulerRepository.findDuePage(SchedulerStatus.SCHEDULED, from, to, afterId,
+                        PageRequest.of(0, pageSize));
+                for (var scheduler : page) {
+                    wheel.schedule(scheduler.getId(), scheduler.getId(), scheduler.getRunAt().toEpochMilli());
+                }
+                loaded += page.size();
+                if (page.size() < pageSize) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).getId();
+            }
+            loadedUntil = to;
+        } catch (Exception e) {
+            log.error("Ошибка при загрузке задач планировщика", e);
+        }
+        log.info("Загружено {} задач планировщика до {}, в колесе {}", loaded, to, wheel.size());
+    }
+
     @Override
     public Optional<List<Scheduler>> findAll(String requestId) {
-        return Optional.empty();
+        return Optional.of(schedulerRepository.findAll());
     }
 
     @Override
-    public Optional<Scheduler> findById(Long aLong, String requestId) {
-        return Optional.empty();
+    public Optional<Scheduler> findById(Long id, String requestId) {
+        return schedulerRepository.findById(id);
     }
 
     @Override
     public Optional<Scheduler> save(Scheduler entity, String requestId) {
-        return Optional.empty();
+        if (!isValid(entity)) {
+            return Optional.empty();
+        }
+
+        var now = Instant.now();
+        entity.setId(0);
+        entity.setStatus(SchedulerStatus.SCHEDULED);
+        entity.setRuns(0);
+        entity.setLastRunAt(null);
+        entity.setLastError(null);
+        entity.setLeaseOwner(null);
+        entity.setLeaseUntil(null);
+        if (entity.getMisfirePolicy() == null) {
+            entity.setMisfirePolicy(MisfirePolicy.FIRE_NOW);
+        }
+        entity.setCreatedAt(now);
+        entity.setUpdatedAt(now);
+
+        var saved = schedulerRepository.save(entity);
+        log.info("Создана задача планировщика {}", saved);
+        schedule(saved);
+        return Optional.of(saved);
     }
 
     @Override
-    public Optional<Scheduler> update(Long aLong, Scheduler entity, String requestId) {
-        return Optional.empty();
+    public Optional<Scheduler> update(Long id, Scheduler details, String requestId) {
+        var optScheduler = schedulerRepository.findById(id);
+        if (optScheduler.isEmpty()) {
+            log.error("Задача планировщика с ID {} не найдена.", id);
+            return Optional.empty();
+        }
+        if (!isValid(details)) {
+            return Optional.empty();
+        }
+
+        var scheduler = optScheduler.get();
+        var misfirePolicy = details.getMisfirePolicy() != null ? details.getMisfirePolicy() : scheduler.getMisfirePolicy();
+        // Проверка статуса и изменение одним запросом: задачу могли захватить после чтения
+        int updated = schedulerRepository.updateIfNotRunning(id, SchedulerStatus.RUNNING, SchedulerStatus.SCHEDULED,
+                details.getAction(), details.getAccountId(), details.getRunAt(), Scheduler.dueBucket(details.getRunAt()),
+                details.getIntervalSeconds(), misfirePolicy, Instant.now());
+        if (updated == 0) {
+            log.error("Задача планировщика с ID {} выполняется или удалена, изменение не возможно.", id);
+            return Optional.empty();
+        }
+
+        var saved = schedulerRepository.findById(id);
+        wheel.cancel(id);
+        saved.ifPresent(this::schedule);
+        return saved;
     }
 
     @Override
-    public Boolean deleteById(Long aLong, String requestId) {
-        return null;
+    public Boolean deleteById(Long id, String requestId) {
+        if (!schedulerRepository.existsById(id)) {
+            log.error("Задача планировщика с ID {} не найдена.", id);
+            return false;
+        }
+
+        if (schedulerRepository.deleteIfNotRunning(id, SchedulerStatus.RUNNING) == 0) {
+            log.error("Задача планировщика с ID {} выполняется, удаление не возможно.", id);
+            return false;
+        }
+        wheel.cancel(id);
+        return true;
+    }
+
+    private boolean isValid(Scheduler entity) {
+        if (entity.getAction() == null || entity.getRunAt() == null || entity.getAccountId() == null) {
+            log.error("У задачи планировщика должны быть действие, аккаунт и срок.");
+            return false;
+        }
+        if (entity.getIntervalSeconds() != null && entity.getIntervalSeconds() <= 0) {
+            log.error("Интервал задачи планировщика должен быть положительным.");
+            return false;
+        }
+        if (!accountRepository.existsById(entity.getAccountId())) {
+            log.error("Аккаунт с ID {} не найден.", entity.getAccountId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Постановка задачи в колесо, если её срок в пределах горизонта.
+     * Более далекие задачи загрузит {@link #loadHorizon()}.
+     */
+    private void schedule(Scheduler scheduler) {
+        if (scheduler.getStatus() != SchedulerStatus.SCHEDULED
+                || scheduler.getRunAt().isAfter(Instant.now().plusMillis(horizon))) {
+            return;
+        }
+        wheel.schedule(scheduler.getId(), scheduler.getId(), scheduler.getRunAt().toEpochMilli());
+    }
+
+    /**
+     * Запрос выборки наступивших задач. Одновременно идет не больше одной выборки,
+     * запрос во время выборки повторит её после завершения.
+     */
+    private void requestDrain() {
+        drainRequested.set(true);
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        executor.submit(() -> {
+            try {
+                while (drainRequested.getAndSet(false)) {
+                    drain();
+                }
+            } catch (Exception e) {
+                log.error("Ошибка при выборке задач планировщика", e);
+            } finally {
+                draining.set(false);
+                if (drainRequested.get()) {
+                    requestDrain();
+                }
+            }
+        });
+    }
+
+    /**
+     * Захват наступивших задач пачками, пока они есть и есть свободные обработчики.
+     * Захватывается не больше задач, чем свободных обработчиков, чтобы аренда не истекала в ожидании.
+     */
+    private void drain() {
+        while (true) {
+            int free = slots.drainPermits();
+            int limit = Math.min(free, claimBatchSize);
+            if (limit == 0) {
+                // Освободившийся обработчик запросит выборку снова
+                slots.release(free);
+                return;
+            }
+
+            List<Long> claimed;
+            try {
+                claimed = claim(limit);
+            } catch (Exception e) {
+                slots.release(free);
+                throw e;
+            }
+            slots.release(free - claimed.size());
+
+            for (var id : claimed) {
+                inFlight.add(id);
+                executor.submit(() -> {
+                    try {
+                        run(id);
+                    } catch (Exception e) {
+                        log.error("Ошибка при выполнении задачи планировщика с ID {}", id, e);
+                    } finally {
+                        inFlight.remove(id);
+                        slots.release();
+                        requestDrain();
+                    }
+                });
+            }
+            if (claimed.size() < limit) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Захват пачки наступивших задач в одной транзакции: выбранные строки блокируются этим экземпляром,
+     * строки, заблокированные другими, пропускаются.
+     *
+     * @param limit максимальный размер пачки
+     * @return ID захваченных задач
+     */
+    private List<Long> claim(int limit) {
+        var now = Instant.now();
+        var ids = transactionTemplate.execute(status -> {
+            List<Long> due = jdbcTemplate.queryForList(SELECT_DUE, Long.class,
+                    Scheduler.dueBucket(now), Timestamp.from(now), limit);
+            if (!due.isEmpty()) {
+                var args = new ArrayList<Object>(due.size() + 3);
+                args.add(instanceId);
+                args.add(Timestamp.from(now.plusMillis(lease)));
+                args.add(Timestamp.from(now));
+                args.addAll(due);
+                jdbcTemplate.update(String.format(CLAIM, String.join(", ", Collections.nCopies(due.size(), "?"))),
+                        args.toArray());
+            }
+            return due;
+        });
+        if (ids != null && !ids.isEmpty()) {
+            log.debug("Захвачено {} задач планировщика", ids.size());
+        }
+        return ids == null ? List.of() : ids;
+    }
+
+    private void run(long id) {
+        var optScheduler = schedulerRepository.findById(id);
+        if (optScheduler.isEmpty()) {
+            return;
+        }
+        var scheduler = optScheduler.get();
+        var now = Instant.now();
+        MDC.put("requestID", "scheduler-" + scheduler.getId());
+        try {
+            boolean misfired = Duration.between(scheduler.getRunAt(), now).toMillis() > misfireThreshold;
+            if (misfired && scheduler.getMisfirePolicy() == MisfirePolicy.SKIP) {
+                log.warn("Срок задачи планировщика с ID {} пропущен ({}), выполнение пропущено",
+                        scheduler.getId(), scheduler.getRunAt());
+                finish(scheduler, SchedulerStatus.MISSED, null, now);
+                return;
+            }
+
+            String error = execute(scheduler);
+            scheduler.setRuns(scheduler.getRuns() + 1);
+            scheduler.setLastRunAt(now);
+            finish(scheduler, error == null ? SchedulerStatus.DONE : SchedulerStatus.FAILED, error, now);
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Выполнение действия задачи.
+     *
+     * @return null при успехе или описание ошибки
+     */
+    private String execute(Scheduler scheduler) {
+        // Задача выполняется вне веб-запроса: аккаунт загружается вместе с нодой
+        var optAccount = accountRepository.findWithServerById(scheduler.getAccountId());
+        if (optAccount.isEmpty() || optAccount.get().getStatus() == Status.DELETED) {
+            return "Аккаунт не найден";
+        }
+
+        var account = optAccount.get();
+        var server = account.getServer();
+        if (server == null) {
+            return "Сервер аккаунта не найден";
+        }
+        var requestId = "scheduler-" + scheduler.getId();
+        log.info("Выполнение задачи планировщика с ID {}: {} аккаунта с ID {}",
+                scheduler.getId(), scheduler.getAction(), account.getId());
+        try {
+            var result = switch (scheduler.getAction()) {
+                case BLOCK -> HttpExecute.await(accountService.actionOnNode(account, server, requestId, Action.BLOCK));
+                case UNBLOCK -> HttpExecute.await(accountService.actionOnNode(account, server, requestId, Action.UNBLOCK));
+                case RESTART -> HttpExecute.await(accountService.actionOnNode(account, server, requestId, Action.RESTART));
+                case EXPIRE -> accountService.expire(account, server, requestId);
+            };
+            return result.orElse(false) ? null : "Действие не выполнено";
+        } catch (NodeUnavailableException e) {
+            return e.getMessage();
+        } catch (Exception e) {
+            log.error("Ошибка при выполнении задачи планировщика с ID {}", scheduler.getId(), e);
+            return e.toString();
+        }
+    }
+
+    /**
+     * Сохранение результата: однократная задача завершается, повторяющаяся переносится
+     * на следующий срок после текущего времени, пропущенные сроки не выполняются повторно.
+     */
+    private void finish(Scheduler scheduler, SchedulerStatus status, String error, Instant now) {
+        if (error != null) {
+            log.error("Задача планировщика с ID {} не выполнена: {}", scheduler.getId(), error);
+        }
+        scheduler.setLastError(error);
+        scheduler.setUpdatedAt(Instant.now());
+
+        if (scheduler.getIntervalSeconds() != null) {
+            long interval = scheduler.getIntervalSeconds();
+            long elapsed = Math.max(0, Duration.between(scheduler.getRunAt(), now).getSeconds());
+            scheduler.setRunAt(scheduler.getRunAt().plusSeconds((elapsed / interval + 1) * interval));
+            scheduler.setStatus(SchedulerStatus.SCHEDULED);
+        } else {
+            scheduler.setStatus(status);
+        }
+
+        // Задача, удаленная во время выполнения или потерявшая аренду, не перезаписывается
+        int updated = schedulerRepository.complete(scheduler.getId(), instanceId, SchedulerStatus.RUNNING,
+                scheduler.getStatus(), scheduler.getRunAt(), Scheduler.dueBucket(scheduler.getRunAt()),
+                scheduler.getRuns(), scheduler.getLastRunAt(), scheduler.getLastError(), scheduler.getUpdatedAt());
+        if (updated != 1) {
+            log.warn("Результат задачи планировщика с ID {} не сохранен: задача удалена или аренда потеряна",
+                    scheduler.getId());
+            return;
+        }
+        schedule(scheduler);
     }
 }
@@ -0,0 +1,143 @@
+package su.kartushin.busAPI.services;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.Config;
+import su.kartushin.busAPI.objects.TelegramUpdate;
+import su.kartushin.busAPI.objects.User;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Команды Telegram бота. Команды вызывают сервисы напрямую, без запросов к собственному API.
+ */
+@Service
+@Log4j2
+public class TelegramBotHandler {
+
+    private static final String HELP = """
+            Команды:
+            /balance - баланс
+            /accounts - ваши аккаунты
+            /configs <ID аккаунта> - конфиги аккаунта
+            /config <ID аккаунта> <имя> - файл конфига""";
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private ConfigService configService;
+    @Autowired
+    private BillingService billingService;
+
+    /**
+     * Выбор команды по тексту обновления.
+     *
+     * @param update обновление с чатом
+     * @param requestId ID запроса для логов
+     * @return обработчик, возвращающий текст ответа или null, если отвечать не нужно
+     */
+    public Supplier<String> route(TelegramUpdate update, String requestId) {
+        var chatId = String.valueOf(update.chatId());
+        var text = update.text();
+        if (text == null || text.isBlank()) {
+            return () -> null;
+        }
+
+        var parts = text.trim().split("\\s+");
+        // Команда в группе приходит с именем бота: /balance@bot
+        var command = parts[0].toLowerCase(Locale.ROOT).replaceFirst("@.*$", "");
+        return switch (command) {
+            case "/start" -> () -> start(chatId, update.from(), requestId);
+            case "/help" -> () -> HELP;
+            case "/balance" -> () -> balance(chatId);
+            case "/accounts" -> () -> accounts(chatId);
+            case "/configs" -> () -> configs(chatId, parts, requestId);
+            case "/config" -> () -> configFile(chatId, parts, requestId);
+            default -> () -> "Неизвестная команда.\n" + HELP;
+        };
+    }
+
+    private String start(String chatId, TelegramUpdate.From from, String requestId) {
+        if (userService.findByChatId(chatId).isEmpty()) {
+            var user = new User();
+            user.setChatId(chatId);
+            user.setUserName(from == null ? null : from.getUsername());
+            user.setStatus(Status.ACTIVE);
+            if (userService.save(user, requestId).isEmpty()) {
+                return "Не удалось зарегистрироваться, попробуйте позже.";
+            }
+            log.info("Зарегистрирован пользователь бота с chat ID {}", chatId);
+        }
+        return "Добро пожаловать!\n" + HELP;
+    }
+
+    private String balance(String chatId) {
+        return billingService.balanceByChatId(chatId)
+                .map(balance -> String.format("Баланс: %d.%02d ₽",
+                        balance.getBalance() / 100, Math.abs(balance.getBalance() % 100)))
+                .orElse("Вы не зарегистрированы, отправьте /start.");
+    }
+
+    private String accounts(String chatId) {
+        var accounts = accountService.findByChatId(chatId);
+        if (accounts.isEmpty()) {
+            return "У вас нет аккаунтов.";
+        }
+        return accounts.stream()
+                .map(account -> String.format("#%d %s %s", account.getId(),
+                        account.getServerName() == null ? "" : account.getServerName(),
+                        account.getStatus() == Status.DISACTIVE ? "(отключен)" : ""))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String configs(String chatId, String[] parts, String requestId) {
+        if (parts.length < 2) {
+            return "Укажите ID аккаунта: /configs <ID аккаунта>";
+        }
+        var account = ownAccount(chatId, parts[1]);
+        if (account.isEmpty()) {
+            return "Аккаунт не найден.";
+        }
+
+        return configService.findAll(account.get().getId(), requestId)
+                .map(configs -> configs.isEmpty() ? "Конфигов нет." : configs.stream()
+                        .map(Config::getName)
+                        .collect(Collectors.joining("\n")))
+                .orElse("Не удалось получить конфиги, попробуйте позже.");
+    }
+
+    private String configFile(String chatId, String[] parts, String requestId) {
+        if (parts.length < 3) {
+            return "Укажите аккаунт и имя конфига: /config <ID аккаунта> <имя>";
+        }
+        var account = ownAccount(chatId, parts[1]);
+        if (account.isEmpty()) {
+            return "Аккаунт не найден.";
+        }
+
+        return configService.getConfigFile(account.get().getId(), parts[2], requestId)
+                .orElse("Не удалось получить конфиг, попробуйте позже.");
+    }
+
+    /**
+     * Аккаунт пользователя по ID из текста команды. Чужой аккаунт не возвращается.
+     */
+    private Optional<Account> ownAccount(String chatId, String accountId) {
+        try {
+            var id = Long.parseLong(accountId.replaceFirst("^#", ""));
+            return accountService.findByChatId(chatId).stream()
+                    .filter(account -> account.getId() == id)
+                    .findFirst();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -1,34 +1,330 @@
 package su.kartushin.busAPI.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.MessagePriority;
 import su.kartushin.busAPI.objects.TelegramBot;
+import su.kartushin.busAPI.objects.TelegramUpdate;
+import su.kartushin.busAPI.utils.TelegramApi;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Telegram бот на длинном опросе getUpdates.
+ * Обновления проходят ограниченный конвейер: опрос -> разбор -> отсев повторов и маршрутизация -> обработчик.
+ * Между стадиями ограниченные очереди, число переданных обработчикам и не обработанных обновлений
+ * ограничено telegram.max-in-flight, поэтому при медленных обработчиках опрос приостанавливается.
+ * Обработчики выполняются в виртуальных потоках, обновления одного чата обрабатываются строго по очереди,
+ * разные чаты - параллельно. Ответы отправляются через очередь {@link TelegramSender}.
+ * Обновления подтверждаются следующим опросом сразу после получения, при остановке сервиса
+ * необработанные обновления теряются.
+ */
+@Log4j2
+@Service
 public class TelegramBotService extends CrudService<TelegramBot, Long> {
 
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private TelegramBotHandler handler;
+    @Autowired
+    private TelegramSender sender;
+
+    @Value("${telegram.enabled:false}")
+    private boolean enabled;
+    @Value("${telegram.token:}")
+    private String token;
+    @Value("${telegram.api-url:https://api.telegram.org}")
+    private String apiUrl;
+    @Value("${telegram.poll-timeout-sec:25}")
+    private int pollTimeout;
+    @Value("${telegram.poll-limit:100}")
+    private int pollLimit;
+    @Value("${telegram.retry-delay-ms:3000}")
+    private long retryDelay;
+    @Value("${telegram.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${telegram.max-in-flight:1000}")
+    private int maxInFlight;
+    @Value("${telegram.dedupe-window:10000}")
+    private int dedupeWindow;
+
+    private TelegramApi api;
+    private volatile boolean running;
+    private volatile long offset;
+    private volatile long botId;
+    private volatile String botUserName;
+
+    private BlockingQueue<JsonNode> rawQueue;
+    private BlockingQueue<TelegramUpdate> decodedQueue;
+    private Semaphore inFlight;
+    private final List<Thread> stages = new ArrayList<>();
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    // Очереди обновлений чатов; чат есть в карте, пока его очередь обрабатывается
+    private final Map<Long, Deque<Runnable>> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong ignored = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled) {
+            log.info("Telegram бот выключен");
+            return;
+        }
+        if (token == null || token.isBlank()) {
+            log.error("Telegram бот включен, но токен не задан");
+            return;
+        }
+
+        api = new TelegramApi(apiUrl, token, pollTimeout, objectMapper);
+        rawQueue = new ArrayBlockingQueue<>(queueCapacity);
+        decodedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        inFlight = new Semaphore(maxInFlight);
+        running = true;
+
+        try {
+            var me = api.getMe();
+            botId = me.path("id").asLong();
+            botUserName = me.path("username").asText(null);
+            log.info("Telegram бот @{} запущен", botUserName);
+        } catch (Exception e) {
+            log.error("Не удалось получить данные Telegram бота, опрос все равно запускается: {}", e.toString());
+        }
+
+        stages.add(Thread.ofVirtual().name("telegram-poll").start(this::poll));
+        stages.add(Thread.ofVirtual().name("telegram-decode").start(this::decode));
+        stages.add(Thread.ofVirtual().name("telegram-route").start(this::route));
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        stages.forEach(Thread::interrupt);
+        stages.clear();
+        api.close();
+        handlers.shutdown();
+        log.info("Telegram бот остановлен");
+    }
+
+    /**
+     * Стадия опроса: получение обновлений и передача на разбор.
+     * Полная очередь разбора останавливает опрос.
+     */
+    private void poll() {
+        while (running) {
+            try {
+                var updates = api.getUpdates(offset, pollTimeout, pollLimit);
+                for (var update : updates) {
+                    offset = Math.max(offset, update.path("update_id").asLong() + 1);
+                    received.incrementAndGet();
+                    rawQueue.put(update);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.error("Ошибка опроса Telegram, повтор через {} мс: {}", retryDelay, e.toString());
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Стадия разбора: JSON в {@link TelegramUpdate}.
+     */
+    private void decode() {
+        while (running) {
+            try {
+                var raw = rawQueue.take();
+                try {
+                    decodedQueue.put(objectMapper.treeToValue(raw, TelegramUpdate.class));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.error("Не удалось разобрать обновление Telegram {}: {}", raw.path("update_id"), e.toString());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Стадия отсева повторов и маршрутизации: выбор команды и постановка в очередь чата.
+     * Повторы отсеиваются по ID среди последних telegram.dedupe-window обновлений.
+     */
+    private void route() {
+        // Принадлежит только этому потоку
+        var seen = new LinkedHashMap<Long, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > dedupeWindow;
+            }
+        };
+
+        while (running) {
+            try {
+                var update = decodedQueue.take();
+                if (seen.put(update.getUpdateId(), Boolean.TRUE) != null) {
+                    duplicates.incrementAndGet();
+                    log.debug("Повтор обновления Telegram {} пропущен", update.getUpdateId());
+                    continue;
+                }
+
+                var chatId = update.chatId();
+                if (chatId == null) {
+                    ignored.incrementAndGet();
+                    continue;
+                }
+
+                var requestId = "tg-" + update.getUpdateId();
+                var command = handler.route(update, requestId);
+                inFlight.acquire();
+                dispatch(chatId, () -> handle(chatId, update, command, requestId));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка маршрутизации обновления Telegram", e);
+            }
+        }
+    }
+
+    /**
+     * Постановка задачи в очередь чата. Если очередь чата не обрабатывается, запускается ее обработка.
+     */
+    private void dispatch(long chatId, Runnable task) {
+        var start = new boolean[1];
+        lanes.compute(chatId, (id, lane) -> {
+            if (lane == null) {
+                lane = new ArrayDeque<>();
+                start[0] = true;
+            }
+            lane.add(task);
+            return lane;
+        });
+        if (start[0]) {
+            handlers.submit(() -> drain(chatId));
+        }
+    }
+
+    /**
+     * Последовательная обработка очереди чата. Очередь удаляется из карты только пустой,
+     * поэтому новая задача чата либо попадает в текущую очередь, либо запускает новую обработку.
+     */
+    private void drain(long chatId) {
+        while (true) {
+            var next = new Runnable[1];
+            lanes.computeIfPresent(chatId, (id, lane) -> {
+                next[0] = lane.poll();
+                return next[0] == null ? null : lane;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            next[0].run();
+        }
+    }
+
+    private void handle(long chatId, TelegramUpdate update, Supplier<String> command, String requestId) {
+        MDC.put("requestID", requestId);
+        try {
+            var reply = command.get();
+            if (reply != null) {
+                sender.send(chatId, reply, MessagePriority.TRANSACTIONAL);
+            }
+            if (update.getCallbackQuery() != null) {
+                api.answerCallbackQuery(update.getCallbackQuery().getId());
+            }
+            handled.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Ошибка обработки обновления Telegram {} чата {}", update.getUpdateId(), chatId, e);
+            sender.send(chatId, "Произошла ошибка, попробуйте позже.", MessagePriority.TRANSACTIONAL);
+        } finally {
+            inFlight.release();
+            MDC.remove("requestID");
+        }
+    }
+
+    /**
+     * Текущее состояние бота.
+     */
+    public TelegramBot status() {
+        return TelegramBot.builder()
+                .id(botId)
+                .userName(botUserName)
+                .running(running)
+                .offset(offset)
+                .received(received.get())
+                .duplicates(duplicates.get())
+                .ignored(ignored.get())
+                .handled(handled.get())
+                .failed(failed.get())
+                .queued(rawQueue == null ? 0 : rawQueue.size() + decodedQueue.size())
+                .inFlight(inFlight == null ? 0 : maxInFlight - inFlight.availablePermits())
+                .activeChats(lanes.size())
+                .outbox(sender.stats())
+                .build();
+    }
+
     @Override
     public Optional<List<TelegramBot>> findAll(String requestId) {
-        return Optional.empty();
+        return Optional.of(List.of(status()));
     }
 
     @Override
-    public Optional<TelegramBot> findById(Long aLong, String requestId) {
-        return Optional.empty();
+    public Optional<TelegramBot> findById(Long id, String requestId) {
+        var status = status();
+        return id != null && status.getId() == id ? Optional.of(status) : Optional.empty();
     }
 
+    /**
+     * Бот настраивается переменными окружения, сохранение не поддерживается.
+     */
     @Override
     public Optional<TelegramBot> save(TelegramBot entity, String requestId) {
+        log.error("Telegram бот настраивается переменными окружения");
         return Optional.empty();
     }
 
     @Override
-    public Optional<TelegramBot> update(Long aLong, TelegramBot entity, String requestId) {
+    public Optional<TelegramBot> update(Long id, TelegramBot entity, String requestId) {
+        log.error("Telegram бот настраивается переменными окружения");
         return Optional.empty();
     }
 
     @Override
-    public Boolean deleteById(Long aLong, String requestId) {
-        return null;
+    public Boolean deleteById(Long id, String requestId) {
+        log.error("Telegram бот настраивается переменными окружения");
+        return false;
     }
 }
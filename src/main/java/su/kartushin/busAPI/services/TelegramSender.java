@@ -0,0 +1,337 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import su.kartushin.busAPI.enums.MessagePriority;
+import su.kartushin.busAPI.objects.TelegramOutboxStats;
+import su.kartushin.busAPI.utils.TelegramApi;
+import su.kartushin.busAPI.utils.TelegramApiException;
+import su.kartushin.busAPI.utils.TokenBucket;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Очередь исходящих сообщений Telegram с ограничением скорости.
+ * Сообщения отправляются не быстрее telegram.send.global-rate в секунду на бота
+ * и telegram.send.chat-rate в секунду на чат. Сообщение чата, который еще не может получать,
+ * откладывается и не задерживает сообщения других чатов.
+ * Транзакционные сообщения отправляются раньше рассылок; очередь рассылок ограничена,
+ * поэтому рассылка ждет, пока очередь освободится, и не держит всех получателей в памяти.
+ * На ответ 429 отправка приостанавливается на retry_after, сообщение повторяется;
+ * на сетевые ошибки и ошибки сервера - повтор с растущей задержкой до telegram.send.max-attempts попыток.
+ */
+@Service
+@Log4j2
+public class TelegramSender {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${telegram.enabled:false}")
+    private boolean enabled;
+    @Value("${telegram.token:}")
+    private String token;
+    @Value("${telegram.api-url:https://api.telegram.org}")
+    private String apiUrl;
+    @Value("${telegram.send.global-rate:30}")
+    private double globalRate;
+    @Value("${telegram.send.global-burst:30}")
+    private double globalBurst;
+    @Value("${telegram.send.chat-rate:1}")
+    private double chatRate;
+    @Value("${telegram.send.chat-burst:3}")
+    private double chatBurst;
+    @Value("${telegram.send.max-concurrency:16}")
+    private int maxConcurrency;
+    @Value("${telegram.send.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${telegram.send.retry-delay-ms:1000}")
+    private long retryDelay;
+    @Value("${telegram.send.transactional-capacity:10000}")
+    private int transactionalCapacity;
+    @Value("${telegram.send.broadcast-capacity:1000}")
+    private int broadcastCapacity;
+
+    /**
+     * Сообщение в очереди.
+     */
+    private static class Message {
+        final long seq;
+        final long chatId;
+        final String text;
+        final MessagePriority priority;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        int attempts;
+        // Время System.nanoTime(), раньше которого сообщение не отправляется
+        long notBefore;
+
+        Message(long seq, long chatId, String text, MessagePriority priority) {
+            this.seq = seq;
+            this.chatId = chatId;
+            this.text = text;
+            this.priority = priority;
+        }
+    }
+
+    private TelegramApi api;
+    private volatile boolean running;
+    private Thread dispatcher;
+    private TokenBucket globalBucket;
+    private Semaphore sending;
+    private final Map<Long, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition broadcastNotFull = lock.newCondition();
+    private final Deque<Message> transactional = new ArrayDeque<>();
+    private final Deque<Message> broadcast = new ArrayDeque<>();
+    // Отложенные сообщения по времени отправки, при равном времени - по порядку постановки
+    private final PriorityQueue<Message> delayed = new PriorityQueue<>(
+            Comparator.<Message>comparingLong(message -> message.notBefore).thenComparingLong(message -> message.seq));
+    private long seq;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || token == null || token.isBlank()) {
+            return;
+        }
+        api = new TelegramApi(apiUrl, token, 0, objectMapper);
+        globalBucket = new TokenBucket(globalRate, globalBurst);
+        sending = new Semaphore(maxConcurrency);
+        running = true;
+        dispatcher = Thread.ofVirtual().name("telegram-send").start(this::dispatch);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        dispatcher.interrupt();
+        api.close();
+
+        var error = new IllegalStateException("Отправка сообщений Telegram остановлена");
+        lock.lock();
+        try {
+            transactional.forEach(message -> message.result.completeExceptionally(error));
+            broadcast.forEach(message -> message.result.completeExceptionally(error));
+            delayed.forEach(message -> message.result.completeExceptionally(error));
+            transactional.clear();
+            broadcast.clear();
+            delayed.clear();
+            broadcastNotFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Постановка сообщения в очередь.
+     * Транзакционное сообщение при переполненной очереди отклоняется,
+     * рассылка ждет свободного места в очереди рассылок.
+     *
+     * @param chatId ID чата
+     * @param text текст сообщения
+     * @param priority очередь сообщения
+     * @return Future: true - доставлено, false - пользователь заблокировал бота или чат не найден;
+     * завершается с ошибкой, если отправка не удалась
+     */
+    public CompletableFuture<Boolean> send(long chatId, String text, MessagePriority priority) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Telegram бот выключен"));
+        }
+
+        lock.lock();
+        try {
+            var message = new Message(seq++, chatId, text, priority);
+            if (priority == MessagePriority.TRANSACTIONAL) {
+                if (transactional.size() >= transactionalCapacity) {
+                    log.error("Очередь сообщений Telegram переполнена, сообщение в чат {} отклонено", chatId);
+                    return CompletableFuture.failedFuture(new IllegalStateException("Очередь сообщений Telegram переполнена"));
+                }
+                transactional.add(message);
+            } else {
+                while (running && broadcast.size() >= broadcastCapacity) {
+                    broadcastNotFull.await();
+                }
+                if (!running) {
+                    return CompletableFuture.failedFuture(new IllegalStateException("Отправка сообщений Telegram остановлена"));
+                }
+                broadcast.add(message);
+            }
+            changed.signal();
+            return message.result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public TelegramOutboxStats stats() {
+        lock.lock();
+        try {
+            return new TelegramOutboxStats(transactional.size(), broadcast.size(), delayed.size(), sent.get(),
+                    rateLimited.get(), retried.get(), blocked.get(), failed.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаление полных корзин чатов, которым давно не писали.
+     */
+    @Scheduled(fixedDelayString = "${telegram.send.bucket-cleanup-ms:60000}")
+    public void cleanupBuckets() {
+        chatBuckets.values().removeIf(TokenBucket::isIdle);
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                var message = next();
+                var chatWait = chatBucket(message.chatId).tryAcquire();
+                if (chatWait > 0) {
+                    delay(message, chatWait);
+                    continue;
+                }
+
+                long globalWait;
+                while ((globalWait = globalBucket.tryAcquire()) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(globalWait);
+                }
+                sending.acquire();
+                Thread.ofVirtual().start(() -> deliver(message));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка очереди сообщений Telegram", e);
+            }
+        }
+    }
+
+    /**
+     * Следующее сообщение к отправке: сначала транзакционные, затем рассылки;
+     * наступившее отложенное сообщение идет раньше новых сообщений своей очереди.
+     */
+    private Message next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                var head = delayed.peek();
+                var ready = head != null && head.notBefore - now <= 0 ? head : null;
+                if (ready != null && (ready.priority == MessagePriority.TRANSACTIONAL || transactional.isEmpty())) {
+                    return delayed.poll();
+                }
+                if (!transactional.isEmpty()) {
+                    return transactional.poll();
+                }
+                if (!broadcast.isEmpty()) {
+                    broadcastNotFull.signal();
+                    return broadcast.poll();
+                }
+
+                if (head == null) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(head.notBefore - now);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void delay(Message message, long delayNanos) {
+        lock.lock();
+        try {
+            if (!running) {
+                message.result.completeExceptionally(new IllegalStateException("Отправка сообщений Telegram остановлена"));
+                return;
+            }
+            message.notBefore = System.nanoTime() + delayNanos;
+            delayed.add(message);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(Message message) {
+        try {
+            api.sendMessage(message.chatId, message.text);
+            sent.incrementAndGet();
+            message.result.complete(true);
+        } catch (TelegramApiException e) {
+            if (e.isRateLimited()) {
+                // Ограничение может быть на бота целиком, поэтому пауза общая
+                var pause = TimeUnit.SECONDS.toNanos(Math.max(1, e.getRetryAfter()));
+                rateLimited.incrementAndGet();
+                globalBucket.pause(pause);
+                chatBucket(message.chatId).pause(pause);
+                log.warn("Telegram ограничил отправку, пауза {} с", Math.max(1, e.getRetryAfter()));
+                delay(message, pause);
+            } else if (e.getCode() == 403 || e.getCode() == 400 && e.getMessage().contains("chat not found")) {
+                blocked.incrementAndGet();
+                log.info("Сообщение в чат {} не доставлено: {}", message.chatId, e.getMessage());
+                message.result.complete(false);
+            } else if (e.getCode() >= 500) {
+                retry(message, e);
+            } else {
+                failed.incrementAndGet();
+                log.error("Сообщение в чат {} не отправлено: {}", message.chatId, e.getMessage());
+                message.result.completeExceptionally(e);
+            }
+        } catch (IOException e) {
+            retry(message, e);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Ошибка при отправке сообщения в чат {}", message.chatId, e);
+            message.result.completeExceptionally(e);
+        } finally {
+            sending.release();
+        }
+    }
+
+    private void retry(Message message, Exception e) {
+        if (++message.attempts >= maxAttempts) {
+            failed.incrementAndGet();
+            log.error("Сообщение в чат {} не отправлено за {} попыток: {}", message.chatId, message.attempts, e.toString());
+            message.result.completeExceptionally(e);
+            return;
+        }
+        retried.incrementAndGet();
+        long backoff = retryDelay << Math.min(message.attempts - 1, 10);
+        log.warn("Ошибка при отправке сообщения в чат {}, повтор через {} мс: {}", message.chatId, backoff, e.toString());
+        delay(message, TimeUnit.MILLISECONDS.toNanos(backoff));
+    }
+
+    private TokenBucket chatBucket(long chatId) {
+        return chatBuckets.computeIfAbsent(chatId, id -> new TokenBucket(chatRate, chatBurst));
+    }
+}
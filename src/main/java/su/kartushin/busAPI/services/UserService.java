@@ -1,6 +1,7 @@
 package su.kartushin.busAPI.services;
 
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import su.kartushin.busAPI.objects.User;
 
@@ -14,6 +15,9 @@ public class UserService extends CrudService<User, Long> {
 //    @Autowired
 //    private UserRepository repository;
 
+    @Autowired
+    private BalanceCache balanceCache;
+
     /**
      * Возвращает список всех User.
      *
@@ -81,6 +85,7 @@ public class UserService extends CrudService<User, Long> {
     @Override
     public Optional<User> update(Long id, User userDetails, String requestId) {
         return userRepository.findById(id).map(existingUser -> {
+            balanceCache.invalidateChat(existingUser.getChatId());
             existingUser.setAccountIds(userDetails.getAccountIds());
             existingUser.setUserName(userDetails.getUserName());
             existingUser.setChatId(userDetails.getChatId());
@@ -110,7 +115,9 @@ public class UserService extends CrudService<User, Long> {
             return false;
         }
         try {
+            userRepository.findById(uuid).ifPresent(user -> balanceCache.invalidateChat(user.getChatId()));
             userRepository.deleteById(uuid);
+            balanceCache.invalidate(uuid);
             log.info("User с ID {} успешно удален", uuid);
             return true;
         } catch (Exception e) {
@@ -1,8 +1,13 @@
 package su.kartushin.busAPI.services;
 
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.utils.NodeBulkheadRegistry;
+import su.kartushin.busAPI.utils.NodeCircuitBreakerRegistry;
+import su.kartushin.busAPI.utils.NodeClientRegistry;
+import su.kartushin.busAPI.utils.NodeHealthRegistry;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,6 +19,9 @@ import java.util.Optional;
 @Service
 public class VPNProxyService extends CrudService<VPNProxy, Long> {
 
+    @Autowired
+    private CapacityIndex capacityIndex;
+
 //    @Autowired
 //    private VPNProxyRepository serverRepository;
 
@@ -62,6 +70,7 @@ public class VPNProxyService extends CrudService<VPNProxy, Long> {
     public Optional<VPNProxy> save(VPNProxy entity, String requestId) {
         try {
             var savedVpnProxy = serverRepository.save(entity);
+            capacityIndex.putServer(savedVpnProxy);
             log.info("VPNProxy успешно сохранен: {}", savedVpnProxy);
             return Optional.of(savedVpnProxy);
         } catch (Exception e) {
@@ -80,6 +89,7 @@ public class VPNProxyService extends CrudService<VPNProxy, Long> {
     @Override
     public Optional<VPNProxy> update(Long id, VPNProxy proxyDetails, String requestId) {
         return serverRepository.findById(id).map(existingVpnProxy -> {
+            var previousStatus = existingVpnProxy.getStatus();
             existingVpnProxy.setUrl(proxyDetails.getUrl());
             existingVpnProxy.setToken(proxyDetails.getToken());
             existingVpnProxy.setMaxConnection(proxyDetails.getMaxConnection());
@@ -87,6 +97,13 @@ public class VPNProxyService extends CrudService<VPNProxy, Long> {
             existingVpnProxy.setStatus(proxyDetails.getStatus());
             try {
                 var updatedVpnProxy = serverRepository.save(existingVpnProxy);
+                // Статус, заданный вручную, фоновая проверка больше не меняет обратно
+                if (existingVpnProxy.isDisabledByProbe() && previousStatus != updatedVpnProxy.getStatus()) {
+                    serverRepository.clearDisabledByProbe(id);
+                    updatedVpnProxy.setDisabledByProbe(false);
+                }
+                NodeClientRegistry.refresh(updatedVpnProxy);
+                capacityIndex.putServer(updatedVpnProxy);
                 log.info("VPNProxy с ID {} успешно обновлен: {}", id, updatedVpnProxy);
                 return updatedVpnProxy;
             } catch (Exception e) {
@@ -110,6 +127,11 @@ public class VPNProxyService extends CrudService<VPNProxy, Long> {
         }
         try {
             serverRepository.deleteById(uuid);
+            NodeClientRegistry.remove(uuid);
+            NodeCircuitBreakerRegistry.remove(uuid);
+            NodeBulkheadRegistry.remove(uuid);
+            NodeHealthRegistry.remove(uuid);
+            capacityIndex.removeServer(uuid);
             log.info("VPNProxy с ID {} успешно удален", uuid);
             return true;
         } catch (Exception e) {
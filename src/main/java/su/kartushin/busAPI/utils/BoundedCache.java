@@ -0,0 +1,153 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Ограниченный по весу кэш с временем жизни записей.
+ * При превышении суммарного веса вытесняются давно не использованные записи,
+ * записи старше TTL считаются отсутствующими.
+ *
+ * @param <K> Тип ключа
+ * @param <V> Тип значения
+ */
+@Log4j2
+public class BoundedCache<K, V> {
+
+    /**
+     * Снимок счетчиков кэша для отображения.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Stats {
+        private final String name;
+        private final int size;
+        private final long weight;
+        private final long maxWeight;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+    }
+
+    private record Entry<V>(V value, long weight, long expiresAt) {
+    }
+
+    private final String name;
+    private final long maxWeight;
+    private final long ttlMs;
+    private final ToLongFunction<V> weigher;
+
+    // Порядок доступа: первой идет давно не использованная запись
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * @param name Имя кэша для логов и счетчиков
+     * @param maxWeight Максимальный суммарный вес записей
+     * @param ttlMs Время жизни записи в миллисекундах
+     * @param weigher Функция веса записи
+     */
+    public BoundedCache(String name, long maxWeight, long ttlMs, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Кэш, ограниченный количеством записей.
+     */
+    public static <K, V> BoundedCache<K, V> ofSize(String name, int maxSize, long ttlMs) {
+        return new BoundedCache<>(name, maxSize, ttlMs, value -> 1);
+    }
+
+    /**
+     * Получение значения из кэша.
+     *
+     * @param key Ключ
+     * @return значение или null, если записи нет или она устарела
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            remove(key, entry);
+            expirations++;
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.value();
+    }
+
+    /**
+     * Добавление или замена значения в кэше.
+     * Значение тяжелее всего кэша не сохраняется.
+     *
+     * @param key Ключ
+     * @param value Значение
+     */
+    public synchronized void put(K key, V value) {
+        long entryWeight = weigher.applyAsLong(value);
+        Entry<V> previous = entries.remove(key);
+        if (previous != null) {
+            weight -= previous.weight();
+        }
+
+        if (entryWeight > maxWeight) {
+            log.debug("Запись {} не помещается в кэш {}: вес {}", key, name, entryWeight);
+            return;
+        }
+
+        entries.put(key, new Entry<>(value, entryWeight, System.currentTimeMillis() + ttlMs));
+        weight += entryWeight;
+        evict();
+    }
+
+    /**
+     * Удаление записи из кэша.
+     *
+     * @param key Ключ
+     */
+    public synchronized void invalidate(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(name, entries.size(), weight, maxWeight, hits, misses, evictions, expirations);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            var eldest = iterator.next();
+            weight -= eldest.getValue().weight();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        weight -= entry.weight();
+    }
+}
@@ -1,11 +1,26 @@
 package su.kartushin.busAPI.utils;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import okhttp3.*;
+import org.slf4j.MDC;
+import su.kartushin.busAPI.objects.NodeResponse;
+import su.kartushin.busAPI.objects.ResponseObject;
 import su.kartushin.busAPI.objects.VPNProxy;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor
 @Log4j2
@@ -14,22 +29,25 @@ public class HttpExecute {
     private final VPNProxy server;
     private final String requestId;
 
-    private OkHttpClient client;
+    // Ограничение тела ответа в логах, совпадает с maximumMessageSize в log4j2.xml
+    private static final long LOG_BODY_LIMIT = 8192;
 
-    {
-        client = new OkHttpClient();
-    }
+    private static final SingleFlight<String, NodeResponse<?>> getFlights = new SingleFlight<>();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     /**
      * Выполнение POST-запроса.
      *
      * @param bodyContent Тело запроса в виде строки
      * @param uri URI для отправки POST-запроса
-     * @return Ответ от сервера
+     * @param dataType Тип поля data в ответе
+     * @return Разобранный ответ от сервера или null при сетевой ошибке
      */
-    public Response postRequest(String bodyContent, String uri) {
+    public <T> NodeResponse<T> postRequest(String bodyContent, String uri, JavaType dataType) {
         log.info("Выполнение POST-запроса на URI: {}, тело: {}", uri, bodyContent);
-        return executeRequest("POST", bodyContent, uri);
+        return executeRequest("POST", bodyContent, uri, dataType);
     }
 
     /**
@@ -37,22 +55,25 @@ public class HttpExecute {
      *
      * @param bodyContent Тело запроса в виде строки
      * @param uri URI для отправки PUT-запроса
-     * @return Ответ от сервера
+     * @param dataType Тип поля data в ответе
+     * @return Разобранный ответ от сервера или null при сетевой ошибке
      */
-    public Response putRequest(String bodyContent, String uri) {
+    public <T> NodeResponse<T> putRequest(String bodyContent, String uri, JavaType dataType) {
         log.info("Выполнение PUT-запроса на URI: {}, тело: {}", uri, bodyContent);
-        return executeRequest("PUT", bodyContent, uri);
+        return executeRequest("PUT", bodyContent, uri, dataType);
     }
 
     /**
      * Выполнение GET-запроса.
      *
      * @param uri URI для отправки GET-запроса
-     * @return Ответ от сервера
+     * @param dataType Тип поля data в ответе
+     * @return Разобранный ответ от сервера или null при сетевой ошибке
      */
-    public Response getRequest(String uri) {
+    public <T> NodeResponse<T> getRequest(String uri, JavaType dataType) {
         log.info("Выполнение GET-запроса на URI: {}", uri);
-        return executeRequest("GET", null, uri);
+        return await(coalesce(uri, dataType,
+                () -> CompletableFuture.completedFuture(executeRequest("GET", null, uri, dataType))));
     }
 
     /**
@@ -60,22 +81,332 @@ public class HttpExecute {
      *
      * @param bodyContent Тело запроса в виде строки (если требуется)
      * @param uri URI для отправки DELETE-запроса
-     * @return Ответ от сервера
+     * @param dataType Тип поля data в ответе
+     * @return Разобранный ответ от сервера или null при сетевой ошибке
      */
-    public Response deleteRequest(String bodyContent, String uri) {
+    public <T> NodeResponse<T> deleteRequest(String bodyContent, String uri, JavaType dataType) {
         log.info("Выполнение DELETE-запроса на URI: {}, тело: {}", uri, bodyContent);
-        return executeRequest("DELETE", bodyContent, uri);
+        return executeRequest("DELETE", bodyContent, uri, dataType);
+    }
+
+    /**
+     * Асинхронное выполнение POST-запроса.
+     *
+     * @param bodyContent Тело запроса в виде строки
+     * @param uri URI для отправки POST-запроса
+     * @param dataType Тип поля data в ответе
+     * @param timeout Таймаут всего вызова или null для таймаутов клиента
+     * @return Future с разобранным ответом от сервера
+     */
+    public <T> CompletableFuture<NodeResponse<T>> postRequestAsync(String bodyContent, String uri,
+                                                                   JavaType dataType, Duration timeout) {
+        log.info("Асинхронное выполнение POST-запроса на URI: {}, тело: {}", uri, bodyContent);
+        return executeRequestAsync("POST", bodyContent, uri, dataType, timeout);
+    }
+
+    /**
+     * Асинхронное выполнение PUT-запроса.
+     *
+     * @param bodyContent Тело запроса в виде строки
+     * @param uri URI для отправки PUT-запроса
+     * @param dataType Тип поля data в ответе
+     * @param timeout Таймаут всего вызова или null для таймаутов клиента
+     * @return Future с разобранным ответом от сервера
+     */
+    public <T> CompletableFuture<NodeResponse<T>> putRequestAsync(String bodyContent, String uri,
+                                                                  JavaType dataType, Duration timeout) {
+        log.info("Асинхронное выполнение PUT-запроса на URI: {}, тело: {}", uri, bodyContent);
+        return executeRequestAsync("PUT", bodyContent, uri, dataType, timeout);
+    }
+
+    /**
+     * Асинхронное выполнение GET-запроса.
+     *
+     * @param uri URI для отправки GET-запроса
+     * @param dataType Тип поля data в ответе
+     * @param timeout Таймаут всего вызова или null для таймаутов клиента
+     * @return Future с разобранным ответом от сервера
+     */
+    public <T> CompletableFuture<NodeResponse<T>> getRequestAsync(String uri, JavaType dataType, Duration timeout) {
+        log.info("Асинхронное выполнение GET-запроса на URI: {}", uri);
+        return coalesce(uri, dataType, () -> executeRequestAsync("GET", null, uri, dataType, timeout));
+    }
+
+    /**
+     * Асинхронное выполнение DELETE-запроса.
+     *
+     * @param bodyContent Тело запроса в виде строки (если требуется)
+     * @param uri URI для отправки DELETE-запроса
+     * @param dataType Тип поля data в ответе
+     * @param timeout Таймаут всего вызова или null для таймаутов клиента
+     * @return Future с разобранным ответом от сервера
+     */
+    public <T> CompletableFuture<NodeResponse<T>> deleteRequestAsync(String bodyContent, String uri,
+                                                                     JavaType dataType, Duration timeout) {
+        log.info("Асинхронное выполнение DELETE-запроса на URI: {}, тело: {}", uri, bodyContent);
+        return executeRequestAsync("DELETE", bodyContent, uri, dataType, timeout);
+    }
+
+    /**
+     * Проверка доступности ноды GET-запросом без разбора тела.
+     * Проверка не проходит через ограничитель и предохранитель ноды, чтобы видеть восстановление
+     * ноды, пока предохранитель разомкнут, и не занимать слоты пользовательских запросов.
+     *
+     * @param uri URI для проверки
+     * @param timeout Таймаут всего вызова
+     * @return Future с кодом ответа, завершается с ошибкой при сетевой ошибке
+     */
+    public CompletableFuture<Integer> ping(String uri, Duration timeout) {
+        Call call = NodeClientRegistry.getClient(server).newCall(buildRequest("GET", null, uri));
+        call.timeout().timeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(response.code());
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Объединение одновременных одинаковых GET-запросов к ноде: пока запрос по (ID ноды, URI, тип) выполняется,
+     * остальные вызывающие ждут его результат вместо отправки своего запроса.
+     * Отмена Future отдельным вызывающим не отменяет общий запрос.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<NodeResponse<T>> coalesce(String uri, JavaType dataType,
+                                                           Supplier<CompletableFuture<NodeResponse<T>>> call) {
+        String key = server.getId() + " " + uri + " " + dataType.toCanonical();
+        return (CompletableFuture<NodeResponse<T>>) (CompletableFuture<?>) getFlights.execute(key,
+                () -> (CompletableFuture<NodeResponse<?>>) (CompletableFuture<?>) call.get());
+    }
+
+    /**
+     * Тип данных для поля data ответа ноды.
+     *
+     * @param dataClass Класс данных
+     * @return JavaType для разбора ответа
+     */
+    public static JavaType type(Class<?> dataClass) {
+        return objectMapper.getTypeFactory().constructType(dataClass);
+    }
+
+    /**
+     * Тип списка для поля data ответа ноды.
+     *
+     * @param elementType Тип элемента списка
+     * @return JavaType для разбора ответа
+     */
+    public static JavaType listType(JavaType elementType) {
+        return objectMapper.getTypeFactory().constructCollectionType(List.class, elementType);
     }
 
     /**
      * Общий метод для выполнения HTTP-запросов.
+     * Тело ответа разбирается потоково за один проход, ответ закрывается до возврата.
+     *
+     * @param method HTTP-метод (GET, POST, PUT, DELETE)
+     * @param bodyContent Тело запроса в виде строки
+     * @param uri URI для выполнения запроса
+     * @param dataType Тип поля data в ответе
+     * @return Разобранный ответ от сервера или null при сетевой ошибке
+     */
+    private <T> NodeResponse<T> executeRequest(String method, String bodyContent, String uri, JavaType dataType) {
+        Request request = buildRequest(method, bodyContent, uri);
+        NodeBulkhead bulkhead = acquireBulkhead(true);
+        NodeCircuitBreaker breaker;
+        try {
+            breaker = acquireBreaker();
+        } catch (NodeUnavailableException e) {
+            bulkhead.release();
+            throw e;
+        }
+
+        log.info("Выполнение {} запроса на URI: {}", method, server.getUrl() + uri);
+
+        long start = System.nanoTime();
+        Response received = null;
+        try (Response response = NodeClientRegistry.getClient(server).newCall(request).execute()) {
+            received = response;
+            log.debug("Ответ от сервера с кодом: {}", response.code());
+            if (!response.isSuccessful()) {
+                log.warn("Неожиданный код ответа: {}", response.code());
+            }
+
+            return new NodeResponse<>(response.code(), readBody(breaker, response, responseType(dataType), start));
+        } catch (JsonProcessingException e) {
+            LogUtil.logError(log, e);
+            return null;
+        } catch (IOException e) {
+            // Ошибку чтения тела readBody уже записал в предохранитель
+            if (received == null) {
+                breaker.onError(elapsedMs(start));
+            }
+            LogUtil.logError(log, e);
+            return null;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Общий метод для асинхронного выполнения HTTP-запросов.
+     * Отмена возвращенного Future отменяет HTTP-вызов.
      *
      * @param method HTTP-метод (GET, POST, PUT, DELETE)
      * @param bodyContent Тело запроса в виде строки
      * @param uri URI для выполнения запроса
-     * @return Ответ от сервера
+     * @param dataType Тип поля data в ответе
+     * @param timeout Таймаут всего вызова или null для таймаутов клиента
+     * @return Future с разобранным ответом, завершается с ошибкой при сетевой ошибке
+     */
+    private <T> CompletableFuture<NodeResponse<T>> executeRequestAsync(String method, String bodyContent, String uri,
+                                                                       JavaType dataType, Duration timeout) {
+        Request request = buildRequest(method, bodyContent, uri);
+        JavaType responseType = responseType(dataType);
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        NodeBulkhead bulkhead;
+        NodeCircuitBreaker breaker;
+        try {
+            bulkhead = acquireBulkhead(false);
+        } catch (NodeUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            breaker = acquireBreaker();
+        } catch (NodeUnavailableException e) {
+            bulkhead.release();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Call call = NodeClientRegistry.getClient(server).newCall(request);
+        if (timeout != null) {
+            call.timeout().timeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        CompletableFuture<NodeResponse<T>> future = new CompletableFuture<>();
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                log.info("Запрос {} на URI {} отменен", method, uri);
+                call.cancel();
+            }
+        });
+
+        log.info("Асинхронное выполнение {} запроса на URI: {}", method, server.getUrl() + uri);
+
+        long start = System.nanoTime();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                bulkhead.release();
+                withMdc(mdc, () -> {
+                    // Таймаут вызова тоже отменяет Call, поэтому отмену вызывающим отличает только отмененный Future
+                    if (future.isCancelled()) {
+                        breaker.onCancel();
+                    } else {
+                        breaker.onError(elapsedMs(start));
+                    }
+                    LogUtil.logError(log, e);
+                    future.completeExceptionally(e);
+                });
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                withMdc(mdc, () -> {
+                    try (response) {
+                        log.debug("Ответ от сервера с кодом: {}", response.code());
+                        if (!response.isSuccessful()) {
+                            log.warn("Неожиданный код ответа: {}", response.code());
+                        }
+                        future.complete(new NodeResponse<>(response.code(),
+                                readBody(breaker, response, responseType, start)));
+                    } catch (IOException e) {
+                        LogUtil.logError(log, e);
+                        future.completeExceptionally(e);
+                    } finally {
+                        bulkhead.release();
+                    }
+                });
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Чтение тела ответа с записью исхода вызова в предохранитель ровно один раз, после чтения тела.
+     * Неразобранное тело - всё же ответ ноды, исход определяется кодом; обрыв при чтении тела - ошибка вызова.
+     *
+     * @param breaker предохранитель ноды
+     * @param response Ответ от сервера
+     * @param responseType Тип ResponseObject с параметром данных
+     * @param start время начала вызова по System.nanoTime()
+     * @return Разобранное тело или null, если тело пустое
+     */
+    private <T> ResponseObject<T> readBody(NodeCircuitBreaker breaker, Response response, JavaType responseType,
+                                           long start) throws IOException {
+        ResponseObject<T> body;
+        try {
+            body = parseBody(response, responseType);
+        } catch (JsonProcessingException e) {
+            recordOutcome(breaker, response.code(), elapsedMs(start));
+            throw e;
+        } catch (IOException e) {
+            breaker.onError(elapsedMs(start));
+            throw e;
+        }
+        recordOutcome(breaker, response.code(), elapsedMs(start));
+        return body;
+    }
+
+    /**
+     * Разбор тела ответа в {@link ResponseObject} потоком из тела ответа, без промежуточной строки.
+     * Для trace-логирования копируется не более {@link #LOG_BODY_LIMIT} байт.
+     *
+     * @param response Ответ от сервера
+     * @param responseType Тип ResponseObject с параметром данных
+     * @return Разобранное тело или null, если тело пустое или ответ с ошибкой не является ResponseObject
      */
-    private Response executeRequest(String method, String bodyContent, String uri) {
+    private <T> ResponseObject<T> parseBody(Response response, JavaType responseType) throws IOException {
+        ResponseBody responseBody = response.body();
+        if (responseBody == null) {
+            return null;
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("Тело ответа: {}", response.peekBody(LOG_BODY_LIMIT).string());
+        }
+
+        try (JsonParser parser = objectMapper.createParser(responseBody.byteStream())) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return objectMapper.readValue(parser, responseType);
+        } catch (JsonProcessingException e) {
+            if (response.isSuccessful()) {
+                throw e;
+            }
+            log.warn("Тело ответа с кодом {} не разобрано: {}", response.code(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static JavaType responseType(JavaType dataType) {
+        return objectMapper.getTypeFactory().constructParametricType(ResponseObject.class, dataType);
+    }
+
+    private Request buildRequest(String method, String bodyContent, String uri) {
         MediaType mediaType = MediaType.parse("application/json");
         RequestBody body = null;
 
@@ -84,7 +415,7 @@ public class HttpExecute {
             log.debug("Тело запроса: {}", bodyContent);
         }
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(server.getUrl() + uri)
                 .method(method, body)
                 .addHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:131.0) Gecko/20100101 Firefox/131.0")
@@ -92,30 +423,81 @@ public class HttpExecute {
                 .addHeader("Accept-Language", "ru-RU,ru;q=0.8,en-US;q=0.5,en;q=0.3")
                 .addHeader("Content-Type", "application/json")
                 .addHeader("Origin", server.getUrl())
-                .addHeader("Connection", "keep-alive")
                 .addHeader("Referer", server.getUrl() + "/login")
                 .addHeader("requestID", requestId)
                 .addHeader("Authorization", String.format("Bearer %s", server.getToken()) )
                 .build();
+    }
 
-        log.info("Выполнение {} запроса на URI: {}", method, server.getUrl() + uri);
+    /**
+     * Получение слота ограничителя одновременных запросов к ноде.
+     * Ожидание слота выполняется в вызывающем потоке, асинхронный запрос слота не ждет.
+     *
+     * @param wait ждать освобождения слота
+     * @return ограничитель ноды, слот которого нужно освободить после вызова
+     * @throws NodeUnavailableException если слот не получен
+     */
+    private NodeBulkhead acquireBulkhead(boolean wait) {
+        NodeBulkhead bulkhead = NodeBulkheadRegistry.get(server);
+        if (!(wait ? bulkhead.tryAcquire() : bulkhead.tryAcquireNow())) {
+            throw new NodeUnavailableException(server.getId(),
+                    String.format("Сервер с ID %s перегружен", server.getId()));
+        }
+        return bulkhead;
+    }
 
-        try {
-            Response response = client.newCall(request).execute();
-            log.debug("Ответ от сервера с кодом: {}", response.code());
+    /**
+     * Получение разрешения предохранителя ноды на вызов.
+     *
+     * @return предохранитель ноды
+     * @throws NodeUnavailableException если предохранитель разомкнут
+     */
+    private NodeCircuitBreaker acquireBreaker() {
+        NodeCircuitBreaker breaker = NodeCircuitBreakerRegistry.get(server.getId());
+        if (!breaker.tryAcquirePermission()) {
+            log.warn("Предохранитель ноды с ID {} разомкнут, запрос отклонен", server.getId());
+            throw new NodeUnavailableException(server.getId(),
+                    String.format("Сервер с ID %s временно недоступен", server.getId()));
+        }
+        return breaker;
+    }
 
-            if (response.body() != null) {
-                log.trace("Тело ответа: {}", response.peekBody(Long.MAX_VALUE).string());
-            }
+    private static void recordOutcome(NodeCircuitBreaker breaker, int code, long durationMs) {
+        if (code >= 500) {
+            breaker.onError(durationMs);
+        } else {
+            breaker.onSuccess(durationMs);
+        }
+    }
 
-            if (!response.isSuccessful()) {
-                log.warn("Неожиданный код ответа: {}", response.code());
-                throw new IOException("Unexpected code " + response);
-            }
-            return response;
-        } catch (IOException e) {
-            LogUtil.logError(log, e);
-            return null;
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Ожидание результата асинхронного вызова в синхронном коде.
+     * Недоступность ноды пробрасывается как {@link NodeUnavailableException}.
+     *
+     * @param future Future вызова
+     * @return результат вызова
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            NodeUnavailableException.propagate(e);
+            throw e;
+        }
+    }
+
+    private static void withMdc(Map<String, String> mdc, Runnable action) {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            action.run();
+        } finally {
+            MDC.clear();
         }
     }
 }
@@ -0,0 +1,98 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничитель одновременных запросов к одной VPN ноде.
+ * Запрос, не получивший слот за время ожидания, отклоняется; асинхронный запрос отклоняется сразу.
+ */
+@Log4j2
+public class NodeBulkhead {
+
+    /**
+     * Снимок счетчиков ограничителя для отображения.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final long serverId;
+        private final int limit;
+        private final int active;
+        private final int waiting;
+        private final long acquired;
+        private final long rejected;
+    }
+
+    private final long serverId;
+    @Getter
+    private final int limit;
+    private final long waitTimeout;
+    private final Semaphore semaphore;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public NodeBulkhead(long serverId, int limit, long waitTimeout) {
+        this.serverId = serverId;
+        this.limit = limit;
+        this.waitTimeout = waitTimeout;
+        this.semaphore = new Semaphore(limit, true);
+    }
+
+    /**
+     * Получение слота для запроса к ноде с ожиданием.
+     *
+     * @return true, если слот получен; false, если время ожидания истекло
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(waitTimeout);
+    }
+
+    /**
+     * Получение слота без ожидания, для асинхронных запросов, которые не должны блокировать вызывающий поток.
+     *
+     * @return true, если слот получен; false, если свободных слотов нет
+     */
+    public boolean tryAcquireNow() {
+        return tryAcquire(0);
+    }
+
+    private boolean tryAcquire(long timeout) {
+        waiting.incrementAndGet();
+        try {
+            // С нулевым таймаутом семафор тоже соблюдает очередь ожидающих, в отличие от tryAcquire()
+            if (semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                acquired.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        rejected.incrementAndGet();
+        log.warn("Нет свободных слотов для запроса к ноде с ID {} (лимит {})", serverId, limit);
+        return false;
+    }
+
+    /**
+     * Освобождение слота после завершения запроса.
+     */
+    public void release() {
+        semaphore.release();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(serverId, limit, limit - semaphore.availablePermits(), waiting.get(),
+                acquired.get(), rejected.get());
+    }
+}
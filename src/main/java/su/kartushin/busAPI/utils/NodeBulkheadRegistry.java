@@ -0,0 +1,75 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.extern.log4j.Log4j2;
+import su.kartushin.busAPI.config.Config;
+import su.kartushin.busAPI.objects.VPNProxy;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр ограничителей одновременных запросов к VPN нодам.
+ * Лимит ограничителя берется из {@link VPNProxy#getMaxConnection()}.
+ */
+@Log4j2
+public class NodeBulkheadRegistry {
+
+    private static final Map<Long, NodeBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * Получение ограничителя ноды. Создается при первом обращении
+     * и пересоздается, если у ноды изменился maxConnection.
+     *
+     * @param server нода
+     * @return ограничитель ноды
+     */
+    public static NodeBulkhead get(VPNProxy server) {
+        int limit = limitOf(server);
+        return bulkheads.compute(server.getId(), (id, existing) -> {
+            if (existing != null && existing.getLimit() == limit) {
+                return existing;
+            }
+
+            log.info("Ограничитель ноды с ID {} создан с лимитом {}", id, limit);
+            return new NodeBulkhead(id, limit, Config.getBulkheadWaitTimeout());
+        });
+    }
+
+    /**
+     * Счетчики ограничителей всех нод, к которым были запросы.
+     *
+     * @return список снимков, отсортированный по ID ноды
+     */
+    public static List<NodeBulkhead.Snapshot> snapshots() {
+        return bulkheads.values().stream()
+                .map(NodeBulkhead::snapshot)
+                .sorted(Comparator.comparingLong(NodeBulkhead.Snapshot::getServerId))
+                .toList();
+    }
+
+    /**
+     * Счетчики ограничителя ноды.
+     *
+     * @param serverId ID ноды
+     * @return снимок или null, если к ноде еще не было запросов
+     */
+    public static NodeBulkhead.Snapshot snapshot(long serverId) {
+        var bulkhead = bulkheads.get(serverId);
+        return bulkhead == null ? null : bulkhead.snapshot();
+    }
+
+    /**
+     * Удаление ограничителя ноды.
+     *
+     * @param serverId ID ноды
+     */
+    public static void remove(long serverId) {
+        bulkheads.remove(serverId);
+    }
+
+    private static int limitOf(VPNProxy server) {
+        return server.getMaxConnection() > 0 ? server.getMaxConnection() : Config.getBulkheadDefaultLimit();
+    }
+}
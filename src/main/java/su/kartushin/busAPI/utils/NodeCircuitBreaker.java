@@ -0,0 +1,186 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import su.kartushin.busAPI.config.Config;
+
+import java.time.Instant;
+
+/**
+ * Предохранитель вызовов одной VPN ноды.
+ * Считает долю ошибочных и медленных вызовов в скользящем окне последних вызовов
+ * и при превышении порогов размыкается, отклоняя вызовы без обращения к ноде.
+ * После паузы пропускает несколько пробных вызовов и по их результату замыкается или размыкается снова.
+ */
+@Log4j2
+public class NodeCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Снимок состояния предохранителя для отображения.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final long serverId;
+        private final State state;
+        private final int bufferedCalls;
+        private final double failureRate;
+        private final double slowCallRate;
+        private final long rejectedCalls;
+        private final Instant openUntil;
+    }
+
+    private final long serverId;
+    private final int windowSize = Math.max(1, Config.getBreakerWindowSize());
+    private final int minimumCalls = Math.max(1, Math.min(windowSize, Config.getBreakerMinimumCalls()));
+    private final int failureRateThreshold = Config.getBreakerFailureRateThreshold();
+    private final long slowCallDuration = Config.getBreakerSlowCallDuration();
+    private final int slowCallRateThreshold = Config.getBreakerSlowCallRateThreshold();
+    private final long openDuration = Config.getBreakerOpenDuration();
+    private final int halfOpenCalls = Math.max(1, Config.getBreakerHalfOpenCalls());
+
+    // Скользящее окно: бит 1 - ошибка, бит 2 - медленный вызов
+    private final byte[] window = new byte[windowSize];
+    private int position;
+    private int buffered;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int halfOpenPermits;
+    private long rejectedCalls;
+
+    public NodeCircuitBreaker(long serverId) {
+        this.serverId = serverId;
+    }
+
+    /**
+     * Проверка, можно ли выполнить вызов ноды.
+     *
+     * @return true, если вызов разрешен
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            transitionTo(State.HALF_OPEN);
+        }
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits < halfOpenCalls) {
+                    halfOpenPermits++;
+                    return true;
+                }
+                rejectedCalls++;
+                return false;
+            default:
+                rejectedCalls++;
+                return false;
+        }
+    }
+
+    /**
+     * Фиксация успешного вызова.
+     *
+     * @param durationMs длительность вызова в миллисекундах
+     */
+    public synchronized void onSuccess(long durationMs) {
+        record(false, durationMs >= slowCallDuration);
+    }
+
+    /**
+     * Фиксация ошибочного вызова.
+     *
+     * @param durationMs длительность вызова в миллисекундах
+     */
+    public synchronized void onError(long durationMs) {
+        record(true, durationMs >= slowCallDuration);
+    }
+
+    /**
+     * Фиксация вызова, отмененного вызывающим до ответа ноды: о ноде он ничего не говорит,
+     * поэтому в окно не попадает, а разрешение пробного вызова возвращается.
+     */
+    public synchronized void onCancel() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Проверка, что предохранитель разомкнут и пауза еще не истекла.
+     *
+     * @return true, если вызовы сейчас будут отклонены
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() < openUntil;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(serverId, state, buffered, failureRate(), slowCallRate(), rejectedCalls,
+                state == State.OPEN ? Instant.ofEpochMilli(openUntil) : null);
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (state == State.OPEN) {
+            // Ответ на вызов, начатый до размыкания
+            return;
+        }
+
+        byte outcome = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        if (buffered == window.length) {
+            byte evicted = window[position];
+            failures -= evicted & 1;
+            slowCalls -= (evicted >> 1) & 1;
+        } else {
+            buffered++;
+        }
+        window[position] = outcome;
+        position = (position + 1) % window.length;
+        failures += failed ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+
+        if (state == State.HALF_OPEN) {
+            if (buffered >= halfOpenCalls) {
+                transitionTo(thresholdExceeded() ? State.OPEN : State.CLOSED);
+            }
+        } else if (buffered >= minimumCalls && thresholdExceeded()) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private boolean thresholdExceeded() {
+        return failureRate() >= failureRateThreshold || slowCallRate() >= slowCallRateThreshold;
+    }
+
+    private double failureRate() {
+        return buffered == 0 ? 0 : failures * 100.0 / buffered;
+    }
+
+    private double slowCallRate() {
+        return buffered == 0 ? 0 : slowCalls * 100.0 / buffered;
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("Предохранитель ноды с ID {}: {} -> {} (ошибок {}%, медленных {}%)",
+                serverId, state, newState, failureRate(), slowCallRate());
+        state = newState;
+        position = 0;
+        buffered = 0;
+        failures = 0;
+        slowCalls = 0;
+        halfOpenPermits = 0;
+        if (newState == State.OPEN) {
+            openUntil = System.currentTimeMillis() + openDuration;
+        }
+    }
+}
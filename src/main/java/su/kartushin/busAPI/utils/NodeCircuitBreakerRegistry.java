@@ -0,0 +1,67 @@
+package su.kartushin.busAPI.utils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр предохранителей VPN нод, по одному на ноду.
+ */
+public class NodeCircuitBreakerRegistry {
+
+    private static final Map<Long, NodeCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Получение предохранителя ноды, создается при первом обращении.
+     *
+     * @param serverId ID ноды
+     * @return предохранитель ноды
+     */
+    public static NodeCircuitBreaker get(long serverId) {
+        return breakers.computeIfAbsent(serverId, NodeCircuitBreaker::new);
+    }
+
+    /**
+     * Состояние предохранителя ноды без его создания.
+     *
+     * @param serverId ID ноды
+     * @return снимок или null, если к ноде еще не было запросов
+     */
+    public static NodeCircuitBreaker.Snapshot snapshot(long serverId) {
+        var breaker = breakers.get(serverId);
+        return breaker == null ? null : breaker.snapshot();
+    }
+
+    /**
+     * Проверка, что предохранитель ноды разомкнут.
+     *
+     * @param serverId ID ноды
+     * @return true, если вызовы ноды сейчас отклоняются
+     */
+    public static boolean isOpen(long serverId) {
+        var breaker = breakers.get(serverId);
+        return breaker != null && breaker.isOpen();
+    }
+
+    /**
+     * Состояние предохранителей всех нод, к которым были вызовы.
+     *
+     * @return список снимков состояния, отсортированный по ID ноды
+     */
+    public static List<NodeCircuitBreaker.Snapshot> snapshots() {
+        return breakers.values().stream()
+                .map(NodeCircuitBreaker::snapshot)
+                .sorted(Comparator.comparingLong(NodeCircuitBreaker.Snapshot::getServerId))
+                .toList();
+    }
+
+    /**
+     * Удаление предохранителя ноды.
+     *
+     * @param serverId ID ноды
+     */
+    public static void remove(long serverId) {
+        breakers.remove(serverId);
+    }
+}
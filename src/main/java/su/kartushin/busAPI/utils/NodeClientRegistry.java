@@ -0,0 +1,116 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.extern.log4j.Log4j2;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import su.kartushin.busAPI.config.Config;
+import su.kartushin.busAPI.objects.VPNProxy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Реестр долгоживущих HTTP-клиентов к VPN нодам.
+ * На каждую ноду (по {@link VPNProxy#getId()}) создается один клиент со своим пулом соединений,
+ * который переиспользуется всеми запросами и пересоздается только при смене url/token ноды.
+ */
+@Log4j2
+public class NodeClientRegistry {
+
+    private static final ExecutorService dispatcherExecutor = Executors.newCachedThreadPool();
+
+    private static final OkHttpClient baseClient = new OkHttpClient.Builder()
+            .connectTimeout(Config.getNodeConnectTimeout(), TimeUnit.MILLISECONDS)
+            .readTimeout(Config.getNodeReadTimeout(), TimeUnit.MILLISECONDS)
+            .writeTimeout(Config.getNodeWriteTimeout(), TimeUnit.MILLISECONDS)
+            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .retryOnConnectionFailure(true)
+            .build();
+
+    private static final Map<Long, NodeClient> clients = new ConcurrentHashMap<>();
+
+    private record NodeClient(String url, String token, OkHttpClient client) {
+        boolean matches(VPNProxy server) {
+            return Objects.equals(url, server.getUrl()) && Objects.equals(token, server.getToken());
+        }
+    }
+
+    /**
+     * Получение клиента для ноды. Клиент создается при первом обращении
+     * и пересоздается, если url или token ноды изменились.
+     *
+     * @param server нода
+     * @return HTTP-клиент ноды
+     */
+    public static OkHttpClient getClient(VPNProxy server) {
+        return clients.compute(server.getId(), (id, existing) -> {
+            if (existing != null && existing.matches(server)) {
+                return existing;
+            }
+
+            if (existing != null) {
+                log.info("Параметры ноды с ID {} изменились, клиент будет пересоздан", id);
+                close(existing);
+            }
+
+            return new NodeClient(server.getUrl(), server.getToken(), build(server));
+        }).client();
+    }
+
+    /**
+     * Обновление клиента ноды после изменения её параметров.
+     * Клиент пересоздается только если изменились url или token.
+     *
+     * @param server обновленная нода
+     */
+    public static void refresh(VPNProxy server) {
+        clients.computeIfPresent(server.getId(), (id, existing) -> {
+            if (existing.matches(server)) {
+                return existing;
+            }
+
+            log.info("Параметры ноды с ID {} изменились, клиент удален из реестра", id);
+            close(existing);
+            return null;
+        });
+    }
+
+    /**
+     * Удаление клиента ноды из реестра с закрытием его соединений.
+     *
+     * @param serverId ID ноды
+     */
+    public static void remove(long serverId) {
+        var existing = clients.remove(serverId);
+        if (existing != null) {
+            log.info("Клиент ноды с ID {} удален из реестра", serverId);
+            close(existing);
+        }
+    }
+
+    private static OkHttpClient build(VPNProxy server) {
+        log.info("Создание HTTP-клиента для ноды с ID {} и URL {}", server.getId(), server.getUrl());
+
+        Dispatcher dispatcher = new Dispatcher(dispatcherExecutor);
+        dispatcher.setMaxRequestsPerHost(Config.getNodeMaxRequestsPerHost());
+
+        return baseClient.newBuilder()
+                .connectionPool(new ConnectionPool(
+                        Config.getNodeMaxIdleConnections(),
+                        Config.getNodeKeepAlive(),
+                        TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .build();
+    }
+
+    private static void close(NodeClient nodeClient) {
+        nodeClient.client().connectionPool().evictAll();
+    }
+}
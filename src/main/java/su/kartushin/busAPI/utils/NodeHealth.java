@@ -0,0 +1,173 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Состояние доступности одной VPN ноды по результатам фоновых проверок.
+ * Хранит скользящее окно последних проверок, по которому считаются перцентили задержки и доля ошибок.
+ * Нода становится недоступной после нескольких неудачных проверок подряд
+ * и снова доступной после нескольких успешных.
+ */
+@Log4j2
+public class NodeHealth {
+
+    public enum State {
+        UNKNOWN,
+        UP,
+        DOWN
+    }
+
+    /**
+     * Снимок состояния ноды для отображения.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final long serverId;
+        private final State state;
+        private final int samples;
+        private final double errorRate;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final int consecutiveFailures;
+        private final Instant lastCheck;
+        private final String lastError;
+    }
+
+    private final long serverId;
+    private final int failureThreshold;
+    private final int recoveryThreshold;
+
+    // Скользящее окно проверок: задержка в миллисекундах или -1 для неудачной проверки
+    private final long[] window;
+    private int position;
+    private int buffered;
+    private int failures;
+
+    private State state = State.UNKNOWN;
+    private int consecutiveFailures;
+    private int consecutiveSuccesses;
+    private long lastCheck;
+    private String lastError;
+    // Экспоненциально сглаженная задержка успешных проверок
+    private double averageLatency;
+
+    /**
+     * @param serverId ID ноды
+     * @param windowSize количество последних проверок, по которым считаются задержки и доля ошибок
+     * @param failureThreshold количество неудачных проверок подряд, после которого нода недоступна
+     * @param recoveryThreshold количество успешных проверок подряд, после которого нода снова доступна
+     */
+    public NodeHealth(long serverId, int windowSize, int failureThreshold, int recoveryThreshold) {
+        this.serverId = serverId;
+        this.window = new long[Math.max(1, windowSize)];
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.recoveryThreshold = Math.max(1, recoveryThreshold);
+    }
+
+    /**
+     * Фиксация успешной проверки.
+     *
+     * @param latencyMs задержка ответа в миллисекундах
+     */
+    public synchronized void onSuccess(long latencyMs) {
+        record(latencyMs);
+        averageLatency = averageLatency == 0 ? latencyMs : averageLatency * 0.8 + latencyMs * 0.2;
+        consecutiveFailures = 0;
+        consecutiveSuccesses++;
+        if (state != State.DOWN || consecutiveSuccesses >= recoveryThreshold) {
+            transitionTo(State.UP);
+        }
+    }
+
+    /**
+     * Фиксация неудачной проверки.
+     *
+     * @param error описание ошибки
+     */
+    public synchronized void onFailure(String error) {
+        record(-1);
+        lastError = error;
+        consecutiveSuccesses = 0;
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            transitionTo(State.DOWN);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Сглаженная задержка ответа ноды без сортировки окна.
+     *
+     * @return задержка в миллисекундах, 0 если успешных проверок не было
+     */
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Проверка, можно ли направлять на ноду новые запросы.
+     * Нода без проверок считается доступной.
+     *
+     * @return false, если нода недоступна
+     */
+    public synchronized boolean isHealthy() {
+        return state != State.DOWN;
+    }
+
+    public synchronized Snapshot snapshot() {
+        long[] latencies = new long[buffered - failures];
+        int count = 0;
+        for (int i = 0; i < buffered; i++) {
+            if (window[i] >= 0) {
+                latencies[count++] = window[i];
+            }
+        }
+        Arrays.sort(latencies);
+
+        return new Snapshot(serverId, state, buffered,
+                buffered == 0 ? 0 : failures * 100.0 / buffered,
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                consecutiveFailures,
+                lastCheck == 0 ? null : Instant.ofEpochMilli(lastCheck),
+                lastError);
+    }
+
+    private void record(long latencyMs) {
+        if (buffered == window.length) {
+            failures -= window[position] < 0 ? 1 : 0;
+        } else {
+            buffered++;
+        }
+        window[position] = latencyMs;
+        position = (position + 1) % window.length;
+        failures += latencyMs < 0 ? 1 : 0;
+        lastCheck = System.currentTimeMillis();
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState) {
+            return;
+        }
+        log.warn("Состояние ноды с ID {}: {} -> {}", serverId, state, newState);
+        state = newState;
+    }
+
+    // Перцентиль по методу ближайшего ранга, 0 если успешных проверок нет
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,98 @@
+package su.kartushin.busAPI.utils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица доступности VPN нод, заполняется фоновыми проверками.
+ * Параметры окна и порогов задает {@link su.kartushin.busAPI.services.NodeHealthService} из настроек node.health.*.
+ */
+public class NodeHealthRegistry {
+
+    private static final Map<Long, NodeHealth> nodes = new ConcurrentHashMap<>();
+
+    private static volatile int windowSize = 100;
+    private static volatile int failureThreshold = 3;
+    private static volatile int recoveryThreshold = 2;
+
+    /**
+     * Параметры состояния нод, применяются к нодам, состояние которых еще не создано.
+     *
+     * @param window количество последних проверок, по которым считаются задержки и доля ошибок
+     * @param failures количество неудачных проверок подряд, после которого нода недоступна
+     * @param recoveries количество успешных проверок подряд, после которого нода снова доступна
+     */
+    public static void configure(int window, int failures, int recoveries) {
+        windowSize = window;
+        failureThreshold = failures;
+        recoveryThreshold = recoveries;
+    }
+
+    /**
+     * Получение состояния ноды, создается при первом обращении.
+     *
+     * @param serverId ID ноды
+     * @return состояние ноды
+     */
+    public static NodeHealth get(long serverId) {
+        return nodes.computeIfAbsent(serverId,
+                id -> new NodeHealth(id, windowSize, failureThreshold, recoveryThreshold));
+    }
+
+    /**
+     * Проверка, можно ли направлять на ноду новые запросы.
+     * Нода, которую еще не проверяли, считается доступной.
+     *
+     * @param serverId ID ноды
+     * @return false, если нода недоступна
+     */
+    public static boolean isHealthy(long serverId) {
+        var health = nodes.get(serverId);
+        return health == null || health.isHealthy();
+    }
+
+    /**
+     * Сглаженная задержка ответа ноды.
+     *
+     * @param serverId ID ноды
+     * @return задержка в миллисекундах, 0 если нода еще не проверялась
+     */
+    public static double averageLatency(long serverId) {
+        var health = nodes.get(serverId);
+        return health == null ? 0 : health.getAverageLatency();
+    }
+
+    /**
+     * Состояние всех проверенных нод.
+     *
+     * @return список снимков, отсортированный по ID ноды
+     */
+    public static List<NodeHealth.Snapshot> snapshots() {
+        return nodes.values().stream()
+                .map(NodeHealth::snapshot)
+                .sorted(Comparator.comparingLong(NodeHealth.Snapshot::getServerId))
+                .toList();
+    }
+
+    /**
+     * Состояние ноды.
+     *
+     * @param serverId ID ноды
+     * @return снимок или null, если нода еще не проверялась
+     */
+    public static NodeHealth.Snapshot snapshot(long serverId) {
+        var health = nodes.get(serverId);
+        return health == null ? null : health.snapshot();
+    }
+
+    /**
+     * Удаление состояния ноды.
+     *
+     * @param serverId ID ноды
+     */
+    public static void remove(long serverId) {
+        nodes.remove(serverId);
+    }
+}
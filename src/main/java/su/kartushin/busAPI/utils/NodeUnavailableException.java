@@ -0,0 +1,35 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Исключение быстрого отказа: нода временно не принимает запросы.
+ * Обрабатывается контроллерами как 503.
+ */
+@Getter
+public class NodeUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long serverId;
+
+    public NodeUnavailableException(long serverId, String message) {
+        super(message);
+        this.serverId = serverId;
+    }
+
+    /**
+     * Пробрасывает исключение дальше, если ошибка вызвана недоступностью ноды.
+     * Используется в обработчиках ошибок, которые иначе превращают ошибку в пустой результат.
+     *
+     * @param e Ошибка
+     */
+    public static void propagate(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof NodeUnavailableException unavailable) {
+            throw unavailable;
+        }
+    }
+}
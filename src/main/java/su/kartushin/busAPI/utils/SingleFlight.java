@@ -0,0 +1,65 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных вызовов.
+ * Пока вызов с ключом выполняется, повторные вызовы с тем же ключом не запускаются,
+ * а получают результат уже выполняющегося вызова. После завершения ключ освобождается,
+ * так что следующий вызов всегда идет за свежим результатом.
+ *
+ * @param <K> Тип ключа
+ * @param <V> Тип результата
+ */
+@Log4j2
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Выполнение вызова или присоединение к уже выполняющемуся вызову с тем же ключом.
+     * Каждый вызывающий получает свою копию Future: ее отмена не отменяет общий вызов.
+     *
+     * @param key Ключ вызова
+     * @param call Вызов, запускается только первым из одновременных вызывающих
+     * @return Future с результатом вызова
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            log.debug("Вызов {} объединен с уже выполняющимся", key);
+            return existing.copy();
+        }
+
+        try {
+            call.get().whenComplete((result, e) -> {
+                inFlight.remove(key, promise);
+                if (e != null) {
+                    promise.completeExceptionally(e);
+                } else {
+                    promise.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+
+        return promise.copy();
+    }
+
+    /**
+     * Количество выполняющихся вызовов.
+     *
+     * @return количество уникальных ключей в работе
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
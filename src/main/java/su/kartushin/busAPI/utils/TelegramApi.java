@@ -0,0 +1,128 @@
+package su.kartushin.busAPI.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Клиент Telegram Bot API поверх OkHttp.
+ * Адрес API задается при создании, поэтому бота можно запустить против локальной заглушки API.
+ * Токен входит в путь запросов и не пишется в логи.
+ * Ошибки API выбрасываются как {@link TelegramApiException} с кодом ответа и retry_after.
+ */
+@Log4j2
+public class TelegramApi {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final ObjectMapper objectMapper;
+    private final String baseUrl;
+    private final OkHttpClient client;
+
+    /**
+     * @param apiUrl адрес Bot API, например https://api.telegram.org
+     * @param token токен бота
+     * @param pollTimeoutSec время ожидания обновлений в getUpdates, таймаут чтения клиента больше него
+     * @param objectMapper разбор ответов
+     */
+    public TelegramApi(String apiUrl, String token, int pollTimeoutSec, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.baseUrl = apiUrl.replaceAll("/+$", "") + "/bot" + token + "/";
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(pollTimeoutSec + 10L, TimeUnit.SECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Длинный опрос обновлений. Обновления с ID меньше offset считаются подтвержденными
+     * и больше не возвращаются.
+     *
+     * @param offset ID первого нужного обновления
+     * @param timeoutSec сколько секунд ждать обновлений на стороне Telegram
+     * @param limit максимум обновлений в ответе
+     * @return обновления в исходном виде, по возрастанию ID
+     * @throws IOException при сетевой ошибке или ошибке API
+     */
+    public List<JsonNode> getUpdates(long offset, int timeoutSec, int limit) throws IOException {
+        var body = objectMapper.createObjectNode()
+                .put("offset", offset)
+                .put("timeout", timeoutSec)
+                .put("limit", limit);
+        body.putArray("allowed_updates").add("message").add("callback_query");
+
+        var result = call("getUpdates", body);
+        var updates = new ArrayList<JsonNode>(result.size());
+        result.forEach(updates::add);
+        return updates;
+    }
+
+    /**
+     * Отправка текстового сообщения.
+     *
+     * @param chatId ID чата
+     * @param text текст сообщения
+     * @throws IOException при сетевой ошибке или ошибке API
+     */
+    public void sendMessage(long chatId, String text) throws IOException {
+        call("sendMessage", objectMapper.createObjectNode()
+                .put("chat_id", chatId)
+                .put("text", text));
+    }
+
+    /**
+     * Ответ на нажатие кнопки, чтобы клиент убрал индикатор ожидания.
+     *
+     * @param callbackQueryId ID нажатия
+     * @throws IOException при сетевой ошибке или ошибке API
+     */
+    public void answerCallbackQuery(String callbackQueryId) throws IOException {
+        call("answerCallbackQuery", objectMapper.createObjectNode()
+                .put("callback_query_id", callbackQueryId));
+    }
+
+    /**
+     * Данные бота, используется для проверки токена.
+     *
+     * @return объект User бота
+     * @throws IOException при сетевой ошибке или ошибке API
+     */
+    public JsonNode getMe() throws IOException {
+        return call("getMe", objectMapper.createObjectNode());
+    }
+
+    /**
+     * Остановка клиента: прерывание текущих запросов и закрытие соединений.
+     */
+    public void close() {
+        client.dispatcher().cancelAll();
+        client.connectionPool().evictAll();
+    }
+
+    private JsonNode call(String method, ObjectNode body) throws IOException {
+        var request = new Request.Builder()
+                .url(baseUrl + method)
+                .post(RequestBody.create(objectMapper.writeValueAsString(body), JSON))
+                .build();
+
+        try (var response = client.newCall(request).execute()) {
+            var responseBody = response.body();
+            var json = responseBody == null ? null : objectMapper.readTree(responseBody.string());
+            if (json == null || !json.path("ok").asBoolean(false)) {
+                var description = json == null ? "пустой ответ" : json.path("description").asText("");
+                var retryAfter = json == null ? 0 : json.path("parameters").path("retry_after").asLong(0);
+                throw new TelegramApiException(response.code(),
+                        String.format("Telegram API %s вернул %d: %s", method, response.code(), description), retryAfter);
+            }
+            return json.path("result");
+        }
+    }
+}
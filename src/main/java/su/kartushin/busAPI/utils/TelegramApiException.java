@@ -0,0 +1,29 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Ошибка, которую вернул Telegram Bot API.
+ */
+@Getter
+public class TelegramApiException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    // HTTP-код ответа
+    private final int code;
+    // Сколько секунд не отправлять запросы при ответе 429, 0 если не задано
+    private final long retryAfter;
+
+    public TelegramApiException(int code, String message, long retryAfter) {
+        super(message);
+        this.code = code;
+        this.retryAfter = retryAfter;
+    }
+
+    public boolean isRateLimited() {
+        return code == 429;
+    }
+}
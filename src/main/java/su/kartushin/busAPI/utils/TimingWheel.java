@@ -0,0 +1,242 @@
+package su.kartushin.busAPI.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Иерархическое колесо таймеров.
+ * Задачи раскладываются по ячейкам колеса с шагом tickMs; задача дальше одного оборота
+ * попадает в колесо следующего уровня с шагом, равным обороту предыдущего, и по мере приближения срока
+ * спускается на нижние уровни. Постановка и отмена стоят O(1), поток колеса просыпается
+ * только к сроку ближайшей непустой ячейки, а не на каждый шаг.
+ * Срок задачи соблюдается с точностью до tickMs. Обработчик вызывается в потоке колеса
+ * и должен быстро передавать работу дальше.
+ *
+ * @param <T> Тип задачи
+ */
+@Log4j2
+public class TimingWheel<T> implements AutoCloseable {
+
+    private final String name;
+    private final long tickMs;
+    private final int wheelSize;
+    private final Consumer<T> onExpire;
+
+    private final Object lock = new Object();
+    // Непустые ячейки всех уровней по сроку
+    private final DelayQueue<Bucket<T>> queue = new DelayQueue<>();
+    private final Map<Long, Task<T>> tasks = new ConcurrentHashMap<>();
+    private final Level root;
+    private final Thread driver;
+    private volatile boolean running = true;
+
+    private static class Task<T> {
+        final long key;
+        final T value;
+        final long expiration;
+        Bucket<T> bucket;
+
+        Task(long key, T value, long expiration) {
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+
+    private static class Bucket<T> implements Delayed {
+        final Set<Task<T>> tasks = new LinkedHashSet<>();
+        volatile long expiration = -1;
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(0, expiration - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket<?>) other).expiration);
+        }
+    }
+
+    /**
+     * Уровень колеса. Доступ только под lock.
+     */
+    private class Level {
+        final long tick;
+        final long interval;
+        final List<Bucket<T>> buckets;
+        long currentTime;
+        Level overflow;
+
+        Level(long tick, long startMs) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.currentTime = startMs - startMs % tick;
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new Bucket<>());
+            }
+        }
+
+        /**
+         * @return false, если срок задачи уже наступил
+         */
+        boolean add(Task<T> task) {
+            if (task.expiration < currentTime + tick) {
+                return false;
+            }
+            if (task.expiration < currentTime + interval) {
+                long virtualId = task.expiration / tick;
+                var bucket = buckets.get((int) (virtualId % wheelSize));
+                bucket.tasks.add(task);
+                task.bucket = bucket;
+                long bucketExpiration = virtualId * tick;
+                if (bucket.expiration != bucketExpiration) {
+                    bucket.expiration = bucketExpiration;
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, currentTime);
+            }
+            return overflow.add(task);
+        }
+
+        void advance(long timeMs) {
+            if (timeMs >= currentTime + tick) {
+                currentTime = timeMs - timeMs % tick;
+                if (overflow != null) {
+                    overflow.advance(currentTime);
+                }
+            }
+        }
+    }
+
+    public TimingWheel(String name, long tickMs, int wheelSize, Consumer<T> onExpire) {
+        this.name = name;
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.onExpire = onExpire;
+        this.root = new Level(tickMs, System.currentTimeMillis());
+        this.driver = Thread.ofPlatform().daemon().name("timing-wheel-" + name).start(this::drive);
+    }
+
+    /**
+     * Постановка задачи. Задача с тем же ключом заменяется.
+     * Задача с наступившим сроком выполняется сразу в вызывающем потоке.
+     *
+     * @param key ключ задачи для отмены
+     * @param value задача
+     * @param expirationMs срок в миллисекундах от начала эпохи
+     */
+    public void schedule(long key, T value, long expirationMs) {
+        var task = new Task<>(key, value, expirationMs);
+        boolean added;
+        synchronized (lock) {
+            remove(key);
+            added = root.add(task);
+            if (added) {
+                tasks.put(key, task);
+            }
+        }
+        if (!added) {
+            expire(task);
+        }
+    }
+
+    /**
+     * Отмена задачи.
+     *
+     * @param key ключ задачи
+     * @return true, если задача была в колесе
+     */
+    public boolean cancel(long key) {
+        synchronized (lock) {
+            return remove(key);
+        }
+    }
+
+    public boolean contains(long key) {
+        return tasks.containsKey(key);
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        driver.interrupt();
+    }
+
+    private boolean remove(long key) {
+        var task = tasks.remove(key);
+        if (task == null) {
+            return false;
+        }
+        if (task.bucket != null) {
+            task.bucket.tasks.remove(task);
+        }
+        return true;
+    }
+
+    private void drive() {
+        while (running) {
+            try {
+                var bucket = queue.poll(tickMs, TimeUnit.MILLISECONDS);
+                while (bucket != null) {
+                    for (var task : flush(bucket)) {
+                        expire(task);
+                    }
+                    bucket = queue.poll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка в колесе таймеров {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * Разбор наступившей ячейки: задачи с верхних уровней спускаются ниже, наступившие возвращаются.
+     */
+    private List<Task<T>> flush(Bucket<T> bucket) {
+        var expired = new ArrayList<Task<T>>();
+        synchronized (lock) {
+            root.advance(bucket.expiration);
+            var bucketTasks = new ArrayList<>(bucket.tasks);
+            bucket.tasks.clear();
+            bucket.expiration = -1;
+            for (var task : bucketTasks) {
+                task.bucket = null;
+                if (!root.add(task)) {
+                    tasks.remove(task.key, task);
+                    expired.add(task);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void expire(Task<T> task) {
+        try {
+            onExpire.accept(task.value);
+        } catch (Exception e) {
+            log.error("Ошибка при обработке задачи {} колеса таймеров {}", task.key, name, e);
+        }
+    }
+}
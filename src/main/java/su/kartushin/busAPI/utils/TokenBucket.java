@@ -0,0 +1,78 @@
+package su.kartushin.busAPI.utils;
+
+/**
+ * Корзина токенов: не больше rate событий в секунду в среднем и не больше burst подряд.
+ * Корзину можно приостановить, например на время retry_after от Telegram.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    /**
+     * @param ratePerSecond средняя скорость в токенах в секунду
+     * @param burst емкость корзины, корзина создается полной
+     */
+    public TokenBucket(double ratePerSecond, double burst) {
+        this.capacity = Math.max(1, burst);
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * Попытка взять токен.
+     *
+     * @return 0, если токен взят, иначе через сколько наносекунд токен появится
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        if (now - pausedUntil < 0) {
+            return pausedUntil - now;
+        }
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Приостановка корзины: токенов не будет pauseNanos, после паузы корзина наполняется с нуля.
+     *
+     * @param pauseNanos длительность паузы в наносекундах
+     */
+    public synchronized void pause(long pauseNanos) {
+        long until = System.nanoTime() + pauseNanos;
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        tokens = 0;
+        lastRefill = pausedUntil;
+    }
+
+    /**
+     * Корзина полна и не на паузе: ее можно удалить и создать заново без потери ограничения.
+     */
+    public synchronized boolean isIdle() {
+        long now = System.nanoTime();
+        if (now - pausedUntil < 0) {
+            return false;
+        }
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now - lastRefill > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
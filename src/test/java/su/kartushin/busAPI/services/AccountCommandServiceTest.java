@@ -0,0 +1,382 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import su.kartushin.busAPI.enums.Action;
+import su.kartushin.busAPI.enums.CommandStatus;
+import su.kartushin.busAPI.enums.CommandType;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.AccountCommand;
+import su.kartushin.busAPI.objects.User;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountCommandRepository;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.UserRepository;
+import su.kartushin.busAPI.repositories.VPNProxyRepository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static su.kartushin.busAPI.utils.TestSupport.await;
+import static su.kartushin.busAPI.utils.TestSupport.setField;
+
+/**
+ * Выполнение команд очереди (outbox) фоновым обработчиком.
+ * Команда выбирается опросом и выполняется в виртуальном потоке, где нет сессии JPA:
+ * всё, что нужно для вызова ноды, обработчик загружает сам. Нода заменена локальным HTTP-сервером,
+ * репозитории - моками, поэтому обращение к ленивым связям или getById здесь не сработает.
+ */
+@ExtendWith(MockitoExtension.class)
+class AccountCommandServiceTest {
+
+    private static final long SERVER_ID = 3;
+    private static final String CHAT_ID = "100";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BACKOFF = 1000;
+    private static final long STALE_TIMEOUT = 300_000;
+
+    /**
+     * Ответ ноды: HTTP-код и поле data в JSON.
+     */
+    private record NodeReply(int code, String data) {
+    }
+
+    private static HttpServer node;
+    private static final Map<String, NodeReply> replies = new ConcurrentHashMap<>();
+    private static final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @Mock
+    private AccountCommandRepository commandRepository;
+    @Mock
+    private AccountRepository accountRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private VPNProxyRepository serverRepository;
+    @Mock
+    private CapacityIndex capacityIndex;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @InjectMocks
+    private AccountCommandService commandService;
+
+    private VPNProxy server;
+    // Сохранения команды обработчиком и потоки, в которых они выполнены
+    private final List<AccountCommand> saved = new CopyOnWriteArrayList<>();
+    private final List<Thread> savedOn = new CopyOnWriteArrayList<>();
+
+    @BeforeAll
+    static void startNode() throws IOException {
+        node = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        node.createContext("/api/account/", AccountCommandServiceTest::handle);
+        node.start();
+    }
+
+    @AfterAll
+    static void stopNode() {
+        node.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        replies.clear();
+        calls.clear();
+
+        var accountService = new AccountService();
+        setField(accountService, "objectMapper", new ObjectMapper());
+        setField(accountService, "capacityIndex", capacityIndex);
+        setField(accountService, "accountRepository", accountRepository);
+        setField(accountService, "userRepository", userRepository);
+        setField(accountService, "serverRepository", serverRepository);
+        setField(commandService, "accountService", accountService);
+        setField(commandService, "batchSize", 100);
+        setField(commandService, "nodeParallelism", 4);
+        setField(commandService, "maxAttempts", MAX_ATTEMPTS);
+        setField(commandService, "backoff", BACKOFF);
+        setField(commandService, "maxBackoff", 60_000L);
+        setField(commandService, "staleTimeout", STALE_TIMEOUT);
+
+        server = VPNProxy.builder()
+                .id(SERVER_ID)
+                .url("http://127.0.0.1:" + node.getAddress().getPort())
+                .token("token")
+                .status(Status.ACTIVE)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        commandService.shutdown();
+    }
+
+    @Test
+    void createOnWorkerCreatesAccountOnNode() {
+        var user = user();
+        when(userRepository.findByChatId(CHAT_ID)).thenReturn(Optional.of(user));
+        when(serverRepository.findById(SERVER_ID)).thenReturn(Optional.of(server));
+        when(accountRepository.findNotDeletedByChatId(CHAT_ID, Status.DELETED)).thenReturn(List.of());
+        when(transactionTemplate.execute(any())).thenAnswer(inTransaction());
+        when(accountRepository.save(any())).thenAnswer(invocation -> {
+            Account account = invocation.getArgument(0);
+            account.setId(55);
+            return account;
+        });
+        replies.put("POST /api/account/" + CHAT_ID, new NodeReply(200, "\"acc-1\""));
+
+        var command = runOnWorker(create());
+
+        assertEquals(CommandStatus.DONE, command.getStatus());
+        assertEquals(Long.valueOf(55), command.getAccountId());
+        assertEquals(List.of("GET /api/account/" + CHAT_ID, "POST /api/account/" + CHAT_ID), calls);
+        assertEquals(1, user.getAccountIds().size());
+        assertEquals("acc-1", user.getAccountIds().get(0).getIdOnServer());
+        verify(capacityIndex).accountAdded(SERVER_ID, Status.ACTIVE);
+    }
+
+    @Test
+    void createAdoptsAccountAlreadyOnNode() {
+        // Прошлая попытка создала аккаунт на ноде, но упала до сохранения
+        var user = user();
+        when(userRepository.findByChatId(CHAT_ID)).thenReturn(Optional.of(user));
+        when(serverRepository.findById(SERVER_ID)).thenReturn(Optional.of(server));
+        when(accountRepository.findNotDeletedByChatId(CHAT_ID, Status.DELETED)).thenReturn(List.of());
+        when(transactionTemplate.execute(any())).thenAnswer(inTransaction());
+        when(accountRepository.save(any())).thenAnswer(invocation -> {
+            Account account = invocation.getArgument(0);
+            account.setId(56);
+            return account;
+        });
+        replies.put("GET /api/account/" + CHAT_ID, new NodeReply(200, "\"acc-1\""));
+
+        var command = runOnWorker(create());
+
+        assertEquals(CommandStatus.DONE, command.getStatus());
+        assertEquals(Long.valueOf(56), command.getAccountId());
+        assertEquals(List.of("GET /api/account/" + CHAT_ID), calls);
+        assertEquals("acc-1", user.getAccountIds().get(0).getIdOnServer());
+    }
+
+    @Test
+    void createAdoptsSavedAccountWithoutCallingNode() {
+        // Прошлая попытка сохранила аккаунт, но не успела отметить команду выполненной
+        var existing = Account.builder().id(57).chatId(CHAT_ID).server(server).status(Status.ACTIVE).build();
+        when(userRepository.findByChatId(CHAT_ID)).thenReturn(Optional.of(user()));
+        when(serverRepository.findById(SERVER_ID)).thenReturn(Optional.of(server));
+        when(accountRepository.findNotDeletedByChatId(CHAT_ID, Status.DELETED)).thenReturn(List.of(existing));
+
+        var command = runOnWorker(create());
+
+        assertEquals(CommandStatus.DONE, command.getStatus());
+        assertEquals(Long.valueOf(57), command.getAccountId());
+        assertTrue(calls.isEmpty());
+        verify(accountRepository, never()).save(any());
+    }
+
+    @Test
+    void actionOnWorkerCallsNodeWithLoadedServer() {
+        when(accountRepository.findWithServerById(7L)).thenReturn(Optional.of(account()));
+        replies.put("POST /api/account/block/acc-7", new NodeReply(200, "true"));
+
+        var command = runOnWorker(action(0));
+
+        assertEquals(CommandStatus.DONE, command.getStatus());
+        assertNull(command.getLastError());
+        assertEquals(List.of("POST /api/account/block/acc-7"), calls);
+    }
+
+    @Test
+    void deleteOnWorkerMarksAccountDeleted() {
+        var account = account();
+        when(accountRepository.findWithServerById(7L)).thenReturn(Optional.of(account));
+        when(accountRepository.save(account)).thenReturn(account);
+        replies.put("DELETE /api/account/acc-7", new NodeReply(200, "true"));
+
+        var command = runOnWorker(AccountCommand.builder()
+                .id(2)
+                .type(CommandType.DELETE)
+                .chatId(CHAT_ID)
+                .serverId(SERVER_ID)
+                .accountId(7L)
+                .status(CommandStatus.PENDING)
+                .requestId("test")
+                .build());
+
+        assertEquals(CommandStatus.DONE, command.getStatus());
+        assertEquals(Status.DELETED, account.getStatus());
+        assertEquals(List.of("DELETE /api/account/acc-7"), calls);
+        verify(capacityIndex).accountChanged(SERVER_ID, Status.ACTIVE, SERVER_ID, Status.DELETED);
+    }
+
+    @Test
+    void failedAttemptIsRetriedWithBackoff() {
+        when(accountRepository.findWithServerById(7L)).thenReturn(Optional.of(account()));
+        replies.put("POST /api/account/block/acc-7", new NodeReply(400, "false"));
+
+        var before = Instant.now();
+        var command = runOnWorker(action(0));
+
+        assertEquals(CommandStatus.PENDING, command.getStatus());
+        assertEquals(1, command.getAttempts());
+        assertEquals("Действие не выполнено", command.getLastError());
+        assertNull(command.getFinishedAt());
+        // Первая задержка - backoff со случайной добавкой до четверти
+        assertTrue(!command.getNextAttemptAt().isBefore(before.plusMillis(BACKOFF)));
+        assertTrue(command.getNextAttemptAt().isBefore(Instant.now().plusMillis(BACKOFF * 5 / 4 + 1)));
+    }
+
+    @Test
+    void lastFailedAttemptFailsCommand() {
+        when(accountRepository.findWithServerById(7L)).thenReturn(Optional.of(account()));
+        replies.put("POST /api/account/block/acc-7", new NodeReply(400, "false"));
+
+        var command = runOnWorker(action(MAX_ATTEMPTS - 1));
+
+        assertEquals(CommandStatus.FAILED, command.getStatus());
+        assertEquals(MAX_ATTEMPTS, command.getAttempts());
+        assertEquals("Действие не выполнено", command.getLastError());
+        assertNotNull(command.getFinishedAt());
+    }
+
+    @Test
+    void staleRunningCommandsAreRequeued() {
+        when(commandRepository.findDue(eq(CommandStatus.PENDING), any(), any())).thenReturn(List.of());
+
+        var before = Instant.now();
+        commandService.poll();
+
+        verify(commandRepository).requeueStale(eq(CommandStatus.RUNNING), eq(CommandStatus.PENDING),
+                argThat(cutoff -> !cutoff.isBefore(before.minusMillis(STALE_TIMEOUT))
+                        && !cutoff.isAfter(Instant.now().minusMillis(STALE_TIMEOUT))),
+                any());
+    }
+
+    @Test
+    void commandClaimedElsewhereIsNotRun() {
+        var command = action(0);
+        when(commandRepository.findDue(eq(CommandStatus.PENDING), any(), any())).thenReturn(List.of(command));
+        when(commandRepository.claim(eq(command.getId()), eq(CommandStatus.PENDING), eq(CommandStatus.RUNNING), any()))
+                .thenReturn(0);
+
+        commandService.poll();
+
+        assertEquals(CommandStatus.PENDING, command.getStatus());
+        verify(commandRepository, never()).save(any());
+        assertTrue(calls.isEmpty());
+    }
+
+    /**
+     * Выборка команды опросом и ожидание её сохранения обработчиком.
+     */
+    private AccountCommand runOnWorker(AccountCommand command) {
+        when(commandRepository.findDue(eq(CommandStatus.PENDING), any(), any())).thenReturn(List.of(command));
+        when(commandRepository.claim(eq(command.getId()), eq(CommandStatus.PENDING), eq(CommandStatus.RUNNING), any()))
+                .thenReturn(1);
+        when(commandRepository.save(command)).thenAnswer(invocation -> {
+            saved.add(invocation.getArgument(0));
+            savedOn.add(Thread.currentThread());
+            return invocation.getArgument(0);
+        });
+
+        commandService.poll();
+        await(() -> !saved.isEmpty());
+
+        assertTrue(savedOn.get(0).isVirtual(), "Команда выполнена не в виртуальном потоке обработчика");
+        assertTrue(savedOn.get(0) != Thread.currentThread());
+        return saved.get(0);
+    }
+
+    private AccountCommand create() {
+        return AccountCommand.builder()
+                .id(1)
+                .type(CommandType.CREATE)
+                .chatId(CHAT_ID)
+                .serverId(SERVER_ID)
+                .status(CommandStatus.PENDING)
+                .requestId("test")
+                .build();
+    }
+
+    private AccountCommand action(int attempts) {
+        return AccountCommand.builder()
+                .id(3)
+                .type(CommandType.ACTION)
+                .action(Action.BLOCK)
+                .chatId(CHAT_ID)
+                .serverId(SERVER_ID)
+                .accountId(7L)
+                .status(CommandStatus.PENDING)
+                .attempts(attempts)
+                .requestId("test")
+                .build();
+    }
+
+    private User user() {
+        var user = new User();
+        user.setChatId(CHAT_ID);
+        user.setAccountIds(new ArrayList<>());
+        return user;
+    }
+
+    private Account account() {
+        return Account.builder()
+                .id(7)
+                .chatId(CHAT_ID)
+                .idOnServer("acc-7")
+                .server(server)
+                .status(Status.ACTIVE)
+                .build();
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        var call = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+        calls.add(call);
+
+        var reply = replies.getOrDefault(call, new NodeReply(404, "null"));
+        var body = ("{\"status\":\"" + (reply.code() < 300 ? "success" : "error") + "\",\"message\":\"test\"," +
+                "\"data\":" + reply.data() + "}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.code(), body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Answer<Object> inTransaction() {
+        return invocation -> invocation.<TransactionCallback<?>>getArgument(0)
+                .doInTransaction(mock(TransactionStatus.class));
+    }
+}
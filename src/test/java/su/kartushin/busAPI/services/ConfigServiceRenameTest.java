@@ -0,0 +1,160 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.Config;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.ConfigRepository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static su.kartushin.busAPI.utils.TestSupport.setField;
+
+/**
+ * Количество вызовов ноды при переименовании конфига.
+ * Нода заменена локальным HTTP-сервером, который считает вызовы по эндпоинтам;
+ * раньше переименование делало 4 вызова, теперь не больше 2: список конфигов, если локальной копии нет, и PUT.
+ */
+@ExtendWith(MockitoExtension.class)
+class ConfigServiceRenameTest {
+
+    private static final long ACCOUNT_ID = 7;
+    private static final String CONFIGS = "{\"status\":\"success\",\"message\":\"ok\"," +
+            "\"data\":[{\"id\":\"c1\",\"name\":\"home\"},{\"id\":\"c2\",\"name\":\"work\"}]}";
+    private static final String DONE = "{\"status\":\"success\",\"message\":\"ok\",\"data\":null}";
+
+    private static HttpServer node;
+    private static final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    @Mock
+    private AccountRepository accountRepository;
+    @Mock
+    private ConfigRepository configRepository;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+    @InjectMocks
+    private ConfigService configService;
+
+    private Account account;
+
+    @BeforeAll
+    static void startNode() throws IOException {
+        node = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        node.createContext("/api/user/", ConfigServiceRenameTest::handle);
+        node.start();
+    }
+
+    @AfterAll
+    static void stopNode() {
+        node.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        calls.clear();
+        setField(configService, "fileCacheMaxBytes", 1L << 20);
+        setField(configService, "fileCacheTtl", 60_000L);
+        configService.init();
+
+        var server = VPNProxy.builder()
+                .id(1)
+                .url("http://127.0.0.1:" + node.getAddress().getPort())
+                .token("token")
+                .build();
+        account = Account.builder()
+                .id(ACCOUNT_ID)
+                .idOnServer("u1")
+                .status(Status.ACTIVE)
+                .server(server)
+                .build();
+    }
+
+    @Test
+    void renameWithoutLocalCopyCallsNodeTwice() {
+        when(accountRepository.findWithServerById(ACCOUNT_ID)).thenReturn(Optional.of(account));
+        when(transactionTemplate.execute(any())).thenAnswer(inTransaction());
+        when(configRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.setConfigsSyncedAt(eq(ACCOUNT_ID), eq(0L), any())).thenReturn(1);
+
+        var renamed = configService.update(ACCOUNT_ID, "office", Config.builder().name("work").build(), "test");
+
+        assertTrue(renamed.isPresent());
+        assertEquals("office", renamed.get().getName());
+        assertEquals(Map.of(
+                "GET /api/user/{id}", 1,
+                "PUT /api/user/{id}/{config}/{name}", 1), counts());
+    }
+
+    @Test
+    void renameWithLocalCopyCallsNodeOnce() {
+        account.setConfigsSyncedAt(Instant.now());
+        when(accountRepository.findWithServerById(ACCOUNT_ID)).thenReturn(Optional.of(account));
+        when(configRepository.findByAccountIdAndName(ACCOUNT_ID, "work")).thenReturn(Optional.of(
+                Config.builder().id(2).idOnServer("c2").name("work").account(account).build()));
+
+        var renamed = configService.update(ACCOUNT_ID, "office", Config.builder().name("work").build(), "test");
+
+        assertTrue(renamed.isPresent());
+        assertEquals("c2", renamed.get().getIdOnServer());
+        assertEquals(Map.of("PUT /api/user/{id}/{config}/{name}", 1), counts());
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        var method = exchange.getRequestMethod();
+        // Эндпоинт без значений: /api/user/{id}, /api/user/{id}/{config}, /api/user/{id}/{config}/{name}
+        var segments = exchange.getRequestURI().getPath().split("/").length - 3;
+        var endpoint = method + " /api/user/{id}" + (segments > 1 ? "/{config}" : "") + (segments > 2 ? "/{name}" : "");
+        calls.computeIfAbsent(endpoint, key -> new AtomicInteger()).incrementAndGet();
+
+        var body = ("GET".equals(method) && segments == 1 ? CONFIGS : DONE).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, Integer> counts() {
+        var result = new TreeMap<String, Integer>();
+        calls.forEach((endpoint, count) -> result.put(endpoint, count.get()));
+        return result;
+    }
+
+    private static Answer<Object> inTransaction() {
+        return invocation -> invocation.<TransactionCallback<?>>getArgument(0)
+                .doInTransaction(mock(TransactionStatus.class));
+    }
+}
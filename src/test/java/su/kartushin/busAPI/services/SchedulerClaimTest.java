@@ -0,0 +1,140 @@
+package su.kartushin.busAPI.services;
+
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import su.kartushin.busAPI.objects.Scheduler;
+
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static su.kartushin.busAPI.utils.TestSupport.setField;
+
+/**
+ * Захват наступивших задач планировщика несколькими экземплярами сервиса на одной базе MySQL.
+ * Каждый экземпляр захватывает пачки через SELECT ... FOR UPDATE SKIP LOCKED, пока задачи не кончатся;
+ * ни одна задача не должна достаться двум экземплярам. Время захвата для 1, 2 и 4 экземпляров пишется в лог.
+ */
+@Log4j2
+@Testcontainers
+class SchedulerClaimTest {
+
+    private static final int TASKS = 5000;
+    private static final int BATCH_SIZE = 100;
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void createTable() {
+        var dataSource = new DriverManagerDataSource(mysql.getJdbcUrl(), mysql.getUsername(), mysql.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        // Только колонки, которые читает и пишет захват, и индекс выборки наступивших задач
+        jdbcTemplate.execute("create table scheduler (id bigint primary key auto_increment, status varchar(16), " +
+                "due_bucket bigint not null, run_at datetime(6), lease_owner varchar(64), lease_until datetime(6), " +
+                "updated_at datetime(6), index scheduler_due (status, due_bucket, run_at))");
+    }
+
+    @BeforeEach
+    void fillTasks() {
+        jdbcTemplate.execute("delete from scheduler");
+        var runAt = Instant.now().minusSeconds(120);
+        var rows = IntStream.range(0, TASKS).boxed().toList();
+        jdbcTemplate.batchUpdate("insert into scheduler (status, due_bucket, run_at) values ('SCHEDULED', ?, ?)",
+                rows, 1000, (ps, i) -> {
+                    var taskRunAt = runAt.plusMillis(i);
+                    ps.setLong(1, Scheduler.dueBucket(taskRunAt));
+                    ps.setTimestamp(2, Timestamp.from(taskRunAt));
+                });
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    void eachTaskIsClaimedByOneInstance(int instances) throws Exception {
+        var claimed = new ConcurrentHashMap<Long, String>();
+        var duplicates = new ConcurrentLinkedQueue<Long>();
+        var start = new CountDownLatch(1);
+
+        long began;
+        try (var executor = Executors.newFixedThreadPool(instances)) {
+            var results = new ArrayList<Future<?>>();
+            for (int i = 0; i < instances; i++) {
+                var owner = "instance-" + i;
+                var service = instance(owner);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<Long> ids;
+                    while (!(ids = claim(service)).isEmpty()) {
+                        for (var id : ids) {
+                            if (claimed.putIfAbsent(id, owner) != null) {
+                                duplicates.add(id);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            began = System.nanoTime();
+            start.countDown();
+            for (var result : results) {
+                result.get(2, TimeUnit.MINUTES);
+            }
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+        log.info("Экземпляров {}: захвачено {} задач за {} мс, {} задач/с",
+                instances, claimed.size(), elapsedMs, claimed.size() * 1000L / Math.max(1, elapsedMs));
+
+        assertTrue(duplicates.isEmpty(), "Задачи захвачены дважды: " + duplicates);
+        assertEquals(TASKS, claimed.size());
+
+        // Аренда в базе записана на тот экземпляр, которому задача вернулась
+        Map<Long, String> owners = new ConcurrentHashMap<>();
+        jdbcTemplate.query("select id, lease_owner from scheduler where status = 'RUNNING'",
+                rs -> {
+                    owners.put(rs.getLong("id"), rs.getString("lease_owner"));
+                });
+        assertEquals(claimed, owners);
+    }
+
+    private static SchedulerService instance(String owner) {
+        var service = new SchedulerService();
+        setField(service, "jdbcTemplate", jdbcTemplate);
+        setField(service, "transactionTemplate", transactionTemplate);
+        setField(service, "instanceId", owner);
+        setField(service, "lease", 300_000L);
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> claim(SchedulerService service) throws ReflectiveOperationException {
+        Method claim = SchedulerService.class.getDeclaredMethod("claim", int.class);
+        claim.setAccessible(true);
+        return (List<Long>) claim.invoke(service, BATCH_SIZE);
+    }
+}
@@ -0,0 +1,204 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import su.kartushin.busAPI.enums.Status;
+import su.kartushin.busAPI.objects.Account;
+import su.kartushin.busAPI.objects.TelegramUpdate;
+import su.kartushin.busAPI.objects.VPNProxy;
+import su.kartushin.busAPI.repositories.AccountRepository;
+import su.kartushin.busAPI.repositories.ConfigRepository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static su.kartushin.busAPI.utils.TestSupport.setField;
+
+/**
+ * Команды Telegram бота против настоящих {@link AccountService} и {@link ConfigService}
+ * с замоканными репозиториями и нодой на локальном HTTP-сервере.
+ * Команда выполняется в виртуальном потоке, как в очереди чата бота, где нет сессии JPA.
+ */
+@ExtendWith(MockitoExtension.class)
+class TelegramBotHandlerTest {
+
+    private static final long CHAT_ID = 100;
+    private static final long ACCOUNT_ID = 7;
+    private static final String CONFIGS = "{\"status\":\"success\",\"message\":\"ok\"," +
+            "\"data\":[{\"id\":\"c1\",\"name\":\"home\"},{\"id\":\"c2\",\"name\":\"work\"}]}";
+    private static final String FILE = "{\"status\":\"success\",\"message\":\"ok\",\"data\":\"[Interface]\"}";
+
+    private static HttpServer node;
+    private static final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @Mock
+    private AccountRepository accountRepository;
+    @Mock
+    private ConfigRepository configRepository;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private TelegramBotHandler handler;
+    private Account account;
+
+    @BeforeAll
+    static void startNode() throws IOException {
+        node = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        node.createContext("/api/user/", TelegramBotHandlerTest::handle);
+        node.start();
+    }
+
+    @AfterAll
+    static void stopNode() {
+        node.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        calls.clear();
+
+        var accountService = new AccountService();
+        setField(accountService, "accountRepository", accountRepository);
+
+        var configService = new ConfigService();
+        setField(configService, "accountRepository", accountRepository);
+        setField(configService, "configRepository", configRepository);
+        setField(configService, "transactionTemplate", transactionTemplate);
+        setField(configService, "objectMapper", new ObjectMapper());
+        setField(configService, "fileCacheMaxBytes", 1L << 20);
+        setField(configService, "fileCacheTtl", 60_000L);
+        configService.init();
+
+        handler = new TelegramBotHandler();
+        setField(handler, "accountService", accountService);
+        setField(handler, "configService", configService);
+
+        var server = VPNProxy.builder()
+                .id(1)
+                .url("http://127.0.0.1:" + node.getAddress().getPort())
+                .token("token")
+                .build();
+        account = Account.builder()
+                .id(ACCOUNT_ID)
+                .chatId(String.valueOf(CHAT_ID))
+                .idOnServer("u1")
+                .status(Status.ACTIVE)
+                .server(server)
+                .build();
+    }
+
+    @Test
+    void configsLoadsListFromNode() throws InterruptedException {
+        ownsAccount();
+        when(accountRepository.findWithServerById(ACCOUNT_ID)).thenReturn(Optional.of(account));
+        when(transactionTemplate.execute(any())).thenAnswer(inTransaction());
+        when(configRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.setConfigsSyncedAt(eq(ACCOUNT_ID), eq(0L), any())).thenReturn(1);
+
+        assertEquals("home\nwork", run("/configs 7"));
+        assertEquals(List.of("GET /api/user/u1"), calls);
+    }
+
+    @Test
+    void configSendsFileFromNode() throws InterruptedException {
+        ownsAccount();
+        when(accountRepository.findWithServerById(ACCOUNT_ID)).thenReturn(Optional.of(account));
+        when(transactionTemplate.execute(any())).thenAnswer(inTransaction());
+        when(configRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(accountRepository.setConfigsSyncedAt(eq(ACCOUNT_ID), eq(0L), any())).thenReturn(1);
+
+        assertEquals("[Interface]", run("/config 7 work"));
+        assertEquals(List.of("GET /api/user/u1", "GET /api/user/config/u1/c2"), calls);
+    }
+
+    @Test
+    void foreignAccountIsNotFound() throws InterruptedException {
+        ownsAccount();
+        assertEquals("Аккаунт не найден.", run("/configs 8"));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    void commandWithoutArgumentsAsksForThem() throws InterruptedException {
+        assertEquals("Укажите ID аккаунта: /configs <ID аккаунта>", run("/configs"));
+        assertTrue(calls.isEmpty());
+    }
+
+    /**
+     * Список аккаунтов пользователя. Для проверки владельца нужен только ID, нода не загружается.
+     */
+    private void ownsAccount() {
+        when(accountRepository.findNotDeletedByChatId(String.valueOf(CHAT_ID), Status.DELETED))
+                .thenReturn(List.of(Account.builder().id(ACCOUNT_ID).status(Status.ACTIVE).build()));
+    }
+
+    /**
+     * Выбор и выполнение команды, как в очереди чата: выполнение в отдельном виртуальном потоке.
+     */
+    private String run(String text) throws InterruptedException {
+        var update = new TelegramUpdate();
+        var message = new TelegramUpdate.Message();
+        var chat = new TelegramUpdate.Chat();
+        chat.setId(CHAT_ID);
+        message.setChat(chat);
+        message.setText(text);
+        update.setUpdateId(1);
+        update.setMessage(message);
+
+        var command = handler.route(update, "test");
+        var reply = new AtomicReference<String>();
+        var error = new AtomicReference<Throwable>();
+        var thread = Thread.ofVirtual().start(() -> {
+            try {
+                reply.set(command.get());
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        thread.join();
+        if (error.get() != null) {
+            throw new AssertionError("Команда завершилась ошибкой", error.get());
+        }
+        return reply.get();
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        var path = exchange.getRequestURI().getPath();
+        calls.add(exchange.getRequestMethod() + " " + path);
+
+        var body = (path.startsWith("/api/user/config/") ? FILE : CONFIGS).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Answer<Object> inTransaction() {
+        return invocation -> invocation.<TransactionCallback<?>>getArgument(0)
+                .doInTransaction(mock(TransactionStatus.class));
+    }
+}
@@ -0,0 +1,130 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import su.kartushin.busAPI.objects.TelegramUpdate;
+import su.kartushin.busAPI.utils.TelegramApiStub;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static su.kartushin.busAPI.utils.TelegramApiStub.ok;
+import static su.kartushin.busAPI.utils.TestSupport.await;
+import static su.kartushin.busAPI.utils.TestSupport.setField;
+import static su.kartushin.busAPI.utils.TestSupport.sleep;
+
+/**
+ * Конвейер обновлений Telegram бота против заглушки Bot API:
+ * offset следующего опроса, отсев повторов и порядок обработки внутри чата.
+ */
+class TelegramBotServiceTest {
+
+    private static final String TOKEN = "42:test";
+
+    private TelegramApiStub api;
+    private TelegramBotService bot;
+
+    // Обработанные обновления по чатам в порядке обработки
+    private final Map<Long, List<Long>> handledByChat = new ConcurrentHashMap<>();
+    // Обработчики, выполняющиеся сейчас, по чатам
+    private final Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+    private final AtomicInteger maxRunningPerChat = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        api = new TelegramApiStub(TOKEN);
+        api.on("getMe", body -> ok("{\"id\":42,\"is_bot\":true,\"username\":\"test_bot\"}"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (bot != null) {
+            bot.stop();
+        }
+        api.close();
+    }
+
+    @Test
+    void pollsFromNextOffsetDropsDuplicatesAndKeepsChatOrder() {
+        // Пачки по очереди запросов getUpdates; 2 и 3 приходят повторно, как при повторной доставке
+        var batches = new ConcurrentLinkedQueue<List<String>>(List.of(
+                List.of(update(1, 100), update(2, 200), update(3, 100), update(2, 200)),
+                List.of(update(3, 100), update(4, 200), update(5, 100), update(6, 100))));
+        api.on("getUpdates", body -> {
+            var batch = batches.poll();
+            if (batch == null) {
+                sleep(50);
+                return ok("[]");
+            }
+            return ok("[" + String.join(",", batch) + "]");
+        });
+
+        bot = start();
+        await(() -> bot.status().getHandled() == 6);
+        await(() -> api.calls("getUpdates").size() >= 3);
+
+        var offsets = api.calls("getUpdates").stream()
+                .limit(3)
+                .map(call -> call.body().path("offset").asLong())
+                .toList();
+        assertEquals(List.of(0L, 4L, 7L), offsets);
+
+        var status = bot.status();
+        assertEquals(8, status.getReceived());
+        assertEquals(2, status.getDuplicates());
+        assertEquals(6, status.getHandled());
+
+        assertEquals(List.of(1L, 3L, 5L, 6L), handledByChat.get(100L));
+        assertEquals(List.of(2L, 4L), handledByChat.get(200L));
+        assertEquals(1, maxRunningPerChat.get());
+    }
+
+    private TelegramBotService start() {
+        // Ранние обновления обрабатываются дольше поздних: без очереди чата порядок бы нарушился
+        var handler = new TelegramBotHandler() {
+            @Override
+            public Supplier<String> route(TelegramUpdate update, String requestId) {
+                return () -> {
+                    long chatId = update.chatId();
+                    int active = running.computeIfAbsent(chatId, id -> new AtomicInteger()).incrementAndGet();
+                    maxRunningPerChat.accumulateAndGet(active, Math::max);
+                    sleep((7 - update.getUpdateId()) * 20);
+                    handledByChat.computeIfAbsent(chatId, id -> new CopyOnWriteArrayList<>()).add(update.getUpdateId());
+                    running.get(chatId).decrementAndGet();
+                    return null;
+                };
+            }
+        };
+
+        var service = new TelegramBotService();
+        setField(service, "objectMapper", new ObjectMapper());
+        setField(service, "handler", handler);
+        setField(service, "sender", new TelegramSender());
+        setField(service, "enabled", true);
+        setField(service, "token", TOKEN);
+        setField(service, "apiUrl", api.url());
+        setField(service, "pollTimeout", 1);
+        setField(service, "pollLimit", 100);
+        setField(service, "retryDelay", 100L);
+        setField(service, "queueCapacity", 10);
+        setField(service, "maxInFlight", 10);
+        setField(service, "dedupeWindow", 100);
+        service.start();
+        return service;
+    }
+
+    private static String update(long updateId, long chatId) {
+        return "{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId + "," +
+                "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}," +
+                "\"from\":{\"id\":" + chatId + ",\"username\":\"user" + chatId + "\"},\"text\":\"/help\"}}";
+    }
+}
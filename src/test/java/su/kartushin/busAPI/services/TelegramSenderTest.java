@@ -0,0 +1,188 @@
+package su.kartushin.busAPI.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import su.kartushin.busAPI.enums.MessagePriority;
+import su.kartushin.busAPI.utils.TelegramApiStub;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static su.kartushin.busAPI.utils.TelegramApiStub.error;
+import static su.kartushin.busAPI.utils.TelegramApiStub.ok;
+import static su.kartushin.busAPI.utils.TestSupport.await;
+import static su.kartushin.busAPI.utils.TestSupport.setField;
+
+/**
+ * Очередь исходящих сообщений Telegram против заглушки Bot API:
+ * пауза на 429 по retry_after, транзакционные сообщения раньше рассылок,
+ * общее ограничение скорости и ограничение скорости чата.
+ */
+class TelegramSenderTest {
+
+    private static final String TOKEN = "42:test";
+    private static final String MESSAGE = "{\"message_id\":1}";
+
+    private TelegramApiStub api;
+    private TelegramSender sender;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        api = new TelegramApiStub(TOKEN);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (sender != null) {
+            sender.shutdown();
+        }
+        api.close();
+    }
+
+    @Test
+    void pausesForRetryAfterOn429() throws Exception {
+        var attempts = new AtomicInteger();
+        api.on("sendMessage", body -> attempts.incrementAndGet() == 1
+                ? error(429, "Too Many Requests: retry after 1", 1)
+                : ok(MESSAGE));
+        sender = start(1000, 1000, 1000, 1000, 16);
+
+        var first = sender.send(1, "first", MessagePriority.TRANSACTIONAL);
+        // Сообщение откладывается после паузы корзин
+        await(() -> sender.stats().getDelayed() == 1);
+        // Пауза общая: сообщение другого чата тоже ждет retry_after
+        var other = sender.send(2, "other", MessagePriority.TRANSACTIONAL);
+
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(other.get(10, TimeUnit.SECONDS));
+
+        var calls = api.calls("sendMessage");
+        assertEquals(3, calls.size());
+        long limitedAt = calls.get(0).receivedAt();
+        for (var call : calls.subList(1, 3)) {
+            assertTrue(call.receivedAt() - limitedAt >= TimeUnit.MILLISECONDS.toNanos(950),
+                    "Сообщение " + call.body().path("text").asText() + " отправлено раньше retry_after");
+        }
+
+        var stats = sender.stats();
+        assertEquals(1, stats.getRateLimited());
+        assertEquals(2, stats.getSent());
+        assertEquals(0, stats.getFailed());
+    }
+
+    @Test
+    void sendsTransactionalBeforeQueuedBroadcast() throws Exception {
+        var release = new CountDownLatch(1);
+        api.on("sendMessage", body -> {
+            if ("blocker".equals(body.path("text").asText())) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ok(MESSAGE);
+        });
+        // Одна отправка за раз: пока висит blocker, остальные сообщения копятся в очередях
+        sender = start(1000, 1000, 1000, 1000, 1);
+
+        var results = new ArrayList<CompletableFuture<Boolean>>();
+        results.add(sender.send(1, "blocker", MessagePriority.TRANSACTIONAL));
+        await(() -> api.calls("sendMessage").size() == 1);
+
+        for (int i = 1; i <= 5; i++) {
+            results.add(sender.send(10 + i, "b" + i, MessagePriority.BROADCAST));
+        }
+        // b1 уже взят очередью и ждет свободной отправки, остальные рассылки в очереди
+        await(() -> sender.stats().getBroadcast() == 4);
+        results.add(sender.send(2, "t", MessagePriority.TRANSACTIONAL));
+        release.countDown();
+
+        for (var result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of("blocker", "b1", "t", "b2", "b3", "b4", "b5"), texts());
+    }
+
+    @Test
+    void limitsGlobalRate() throws Exception {
+        api.on("sendMessage", body -> ok(MESSAGE));
+        sender = start(10, 1, 1000, 1000, 16);
+
+        var results = new ArrayList<CompletableFuture<Boolean>>();
+        for (int chatId = 1; chatId <= 11; chatId++) {
+            results.add(sender.send(chatId, "m" + chatId, MessagePriority.BROADCAST));
+        }
+        for (var result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+
+        // 11 сообщений при 10 в секунду без запаса: 10 интервалов по 100 мс
+        var calls = api.calls("sendMessage");
+        assertEquals(11, calls.size());
+        long span = calls.get(10).receivedAt() - calls.get(0).receivedAt();
+        assertTrue(span >= TimeUnit.MILLISECONDS.toNanos(900), "11 сообщений отправлены за " + span / 1_000_000 + " мс");
+    }
+
+    @Test
+    void limitsChatRateWithoutHoldingOtherChats() throws Exception {
+        api.on("sendMessage", body -> ok(MESSAGE));
+        sender = start(1000, 1000, 2, 1, 16);
+
+        var results = new ArrayList<CompletableFuture<Boolean>>();
+        for (int i = 1; i <= 3; i++) {
+            results.add(sender.send(1, "c1-" + i, MessagePriority.TRANSACTIONAL));
+        }
+        results.add(sender.send(2, "c2", MessagePriority.TRANSACTIONAL));
+        for (var result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+
+        // Чат 1: 2 сообщения в секунду без запаса, сообщения по порядку с интервалом 500 мс
+        var chat = api.calls("sendMessage").stream()
+                .filter(call -> call.body().path("chat_id").asLong() == 1)
+                .toList();
+        assertEquals(List.of("c1-1", "c1-2", "c1-3"), chat.stream().map(call -> call.body().path("text").asText()).toList());
+        for (int i = 1; i < chat.size(); i++) {
+            long gap = chat.get(i).receivedAt() - chat.get(i - 1).receivedAt();
+            assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(450), "Интервал сообщений чата " + gap / 1_000_000 + " мс");
+        }
+
+        // Отложенные сообщения чата 1 не задерживают чат 2
+        var texts = texts();
+        assertTrue(texts.indexOf("c2") < texts.indexOf("c1-2"), "Порядок отправки: " + texts);
+    }
+
+    private TelegramSender start(double globalRate, double globalBurst, double chatRate, double chatBurst,
+                                 int maxConcurrency) {
+        var service = new TelegramSender();
+        setField(service, "objectMapper", new ObjectMapper());
+        setField(service, "enabled", true);
+        setField(service, "token", TOKEN);
+        setField(service, "apiUrl", api.url());
+        setField(service, "globalRate", globalRate);
+        setField(service, "globalBurst", globalBurst);
+        setField(service, "chatRate", chatRate);
+        setField(service, "chatBurst", chatBurst);
+        setField(service, "maxConcurrency", maxConcurrency);
+        setField(service, "maxAttempts", 3);
+        setField(service, "retryDelay", 50L);
+        setField(service, "transactionalCapacity", 100);
+        setField(service, "broadcastCapacity", 100);
+        service.init();
+        return service;
+    }
+
+    private List<String> texts() {
+        return api.calls("sendMessage").stream().map(call -> call.body().path("text").asText()).toList();
+    }
+}
@@ -0,0 +1,105 @@
+package su.kartushin.busAPI.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Заглушка Telegram Bot API на локальном HTTP-сервере.
+ * Ответ на метод задается функцией от тела запроса, все запросы записываются по порядку поступления.
+ * Метод без ответа возвращает 404, как Bot API на неизвестный метод.
+ */
+public class TelegramApiStub implements AutoCloseable {
+
+    /**
+     * Запрос к заглушке: метод, тело и время поступления по System.nanoTime().
+     */
+    public record Call(String method, JsonNode body, long receivedAt) {
+    }
+
+    /**
+     * Ответ заглушки: HTTP-код и тело.
+     */
+    public record Reply(int code, String body) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    // Длинный опрос и параллельные отправки не должны ждать друг друга
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final String prefix;
+    private final Map<String, Function<JsonNode, Reply>> handlers = new ConcurrentHashMap<>();
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+
+    public TelegramApiStub(String token) throws IOException {
+        prefix = "/bot" + token + "/";
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(prefix, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Адрес API для {@link TelegramApi}.
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void on(String method, Function<JsonNode, Reply> handler) {
+        handlers.put(method, handler);
+    }
+
+    /**
+     * Запросы к методу по порядку поступления.
+     */
+    public List<Call> calls(String method) {
+        return calls.stream().filter(call -> call.method().equals(method)).toList();
+    }
+
+    public static Reply ok(String resultJson) {
+        return new Reply(200, "{\"ok\":true,\"result\":" + resultJson + "}");
+    }
+
+    public static Reply error(int code, String description, long retryAfter) {
+        var parameters = retryAfter > 0 ? ",\"parameters\":{\"retry_after\":" + retryAfter + "}" : "";
+        return new Reply(code, "{\"ok\":false,\"error_code\":" + code + ",\"description\":\"" + description + "\""
+                + parameters + "}");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        var method = exchange.getRequestURI().getPath().substring(prefix.length());
+        JsonNode body;
+        try (var in = exchange.getRequestBody()) {
+            body = objectMapper.readTree(in.readAllBytes());
+        }
+        calls.add(new Call(method, body, System.nanoTime()));
+
+        var handler = handlers.get(method);
+        var reply = handler == null ? error(404, "Not Found", 0) : handler.apply(body);
+        var bytes = reply.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.code(), bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package su.kartushin.busAPI.utils;
+
+import org.springframework.util.ReflectionUtils;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Общие помощники тестов: запись полей сервисов без Spring и ожидание фоновых потоков.
+ */
+public final class TestSupport {
+
+    private static final long AWAIT_TIMEOUT_MS = 10_000;
+
+    private TestSupport() {
+    }
+
+    /**
+     * Запись поля объекта, в том числе приватного поля родительского класса.
+     */
+    public static void setField(Object target, String name, Object value) {
+        var field = ReflectionUtils.findField(target.getClass(), name);
+        if (field == null) {
+            throw new IllegalArgumentException("Поле " + name + " не найдено в " + target.getClass().getName());
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    /**
+     * Ожидание условия, которое выполнит фоновый поток. Тест падает, если условие не выполнилось за 10 с.
+     */
+    public static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Условие не выполнилось за " + AWAIT_TIMEOUT_MS / 1000 + " с");
+            }
+            sleep(10);
+        }
+    }
+
+    /**
+     * Пауза без проверяемого исключения, для обработчиков заглушек и фоновых задач.
+     */
+    public static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
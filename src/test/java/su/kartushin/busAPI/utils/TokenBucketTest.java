@@ -0,0 +1,76 @@
+package su.kartushin.busAPI.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Корзина токенов: запас на старте, пополнение со скоростью rate, пауза и признак простоя.
+ */
+class TokenBucketTest {
+
+    @Test
+    void fullBucketAllowsBurstThenAsksToWait() {
+        var bucket = new TokenBucket(10, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0, "Запас исчерпан, нужно ждать");
+        assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(100), "Токен появляется не позже чем через 1/rate: " + wait);
+    }
+
+    @Test
+    void tokenAppearsAfterReturnedWait() throws InterruptedException {
+        var bucket = new TokenBucket(10, 1);
+        assertEquals(0, bucket.tryAcquire());
+
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0);
+        TimeUnit.NANOSECONDS.sleep(wait);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void pauseBlocksAndEmptiesBucket() throws InterruptedException {
+        var bucket = new TokenBucket(10, 5);
+
+        bucket.pause(TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(bucket.tryAcquire() > TimeUnit.MILLISECONDS.toNanos(150), "Во время паузы токенов нет");
+        assertFalse(bucket.isIdle());
+
+        // После паузы корзина наполняется с нуля, а не сразу до burst
+        TimeUnit.MILLISECONDS.sleep(250);
+        int acquired = 0;
+        while (bucket.tryAcquire() == 0) {
+            acquired++;
+        }
+        assertTrue(acquired < 5, "После паузы выдано " + acquired + " токенов");
+    }
+
+    @Test
+    void shorterPauseDoesNotCutLongerOne() {
+        var bucket = new TokenBucket(10, 1);
+
+        bucket.pause(TimeUnit.SECONDS.toNanos(1));
+        bucket.pause(TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(bucket.tryAcquire() > TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    void idleOnlyWhenFull() throws InterruptedException {
+        var bucket = new TokenBucket(100, 1);
+        assertTrue(bucket.isIdle());
+
+        assertEquals(0, bucket.tryAcquire());
+        assertFalse(bucket.isIdle());
+
+        TimeUnit.MILLISECONDS.sleep(20);
+        assertTrue(bucket.isIdle());
+    }
+}